@@ -0,0 +1,255 @@
+package cn.xiangxinai;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Concurrency limit that tunes itself from observed round-trip times and overload responses
+ *
+ * <p>A fixed limit is either too low while the API is healthy or too high once it slows down, when extra calls in
+ * flight only queue up and raise latency for everyone. This limit follows the service instead:
+ * <ul>
+ *   <li>Every HTTP attempt is a sample. Comparing its round-trip time with the lowest one seen estimates how many
+ *       calls are queued at the server (Vegas). A short queue lets the limit grow by one when the limit is actually
+ *       used, a long queue shrinks it by one.</li>
+ *   <li>429 and 5xx responses, timeouts and network errors cut the limit by {@code backoffRatio} (multiplicative
+ *       decrease).</li>
+ * </ul>
+ *
+ * <p>Once the calls in flight reach the limit, further attempts are rejected at once with
+ * {@link cn.xiangxinai.exception.ConcurrencyLimitException} instead of queueing, which keeps tail latency bounded
+ * while the upstream is degraded. Share one limit between all clients calling the same API.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * AdaptiveConcurrencyLimit concurrencyLimit = AdaptiveConcurrencyLimit.builder()
+ *     .initialLimit(20)
+ *     .minLimit(2)
+ *     .maxLimit(200)
+ *     .build();
+ *
+ * AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("your-api-key")
+ *     .concurrencyLimit(concurrencyLimit)
+ *     .build();
+ * }</pre>
+ */
+public final class AdaptiveConcurrencyLimit {
+
+    // The lowest round-trip time is re-measured this often so that a lasting change of the path is picked up
+    private static final int MIN_RTT_PROBE_INTERVAL = 1000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final LongSupplier ticker;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    // Guarded by this, limit is also read without the lock
+    private volatile double limit;
+    private long minRttNanos;
+    private int samplesSinceProbe;
+
+    private AdaptiveConcurrencyLimit(Builder builder) {
+        this.minLimit = builder.minLimit;
+        this.maxLimit = Math.max(builder.minLimit, builder.maxLimit);
+        this.backoffRatio = builder.backoffRatio;
+        this.ticker = builder.ticker;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, builder.initialLimit));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Current limit of calls in flight
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return Number of calls in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return Number of attempts rejected because the limit was reached
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * Reserve a slot for one HTTP attempt
+     *
+     * @return The permit to complete with the attempt's outcome, null when the limit is reached
+     */
+    Permit tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejectedCount.increment();
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Permit(ticker.getAsLong(), current + 1);
+            }
+        }
+    }
+
+    private synchronized void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+        if (dropped) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+            return;
+        }
+        if (rttNanos <= 0) {
+            return;
+        }
+        if (minRttNanos == 0 || rttNanos < minRttNanos || ++samplesSinceProbe >= MIN_RTT_PROBE_INTERVAL) {
+            minRttNanos = rttNanos;
+            samplesSinceProbe = 0;
+        }
+
+        double current = limit;
+        double queue = current * (1 - (double) minRttNanos / rttNanos);
+        double threshold = Math.max(1, Math.log10(current));
+        if (queue < 3 * threshold) {
+            // Only grow while the limit is actually used, an idle client says nothing about capacity
+            if (inFlightAtStart * 2 >= current) {
+                limit = Math.min(maxLimit, current + 1);
+            }
+        } else if (queue > 6 * threshold) {
+            limit = Math.max(minLimit, current - 1);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveConcurrencyLimit{" +
+                "limit=" + getLimit() +
+                ", inFlight=" + getInFlight() +
+                ", minLimit=" + minLimit +
+                ", maxLimit=" + maxLimit +
+                ", backoffRatio=" + backoffRatio +
+                '}';
+    }
+
+    /**
+     * Slot of one HTTP attempt, completed exactly once with the attempt's outcome
+     */
+    final class Permit {
+
+        private final long startNanos;
+        private final int inFlightAtStart;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long startNanos, int inFlightAtStart) {
+            this.startNanos = startNanos;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /**
+         * The attempt got a response, 429 and 5xx count as overload
+         */
+        void onResponse(int code) {
+            complete(code == 429 || code >= 500);
+        }
+
+        /**
+         * The attempt failed with a timeout or network error
+         */
+        void onDropped() {
+            complete(true);
+        }
+
+        /**
+         * The attempt ended without a usable sample, e.g. it was cancelled
+         */
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        private void complete(boolean dropped) {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                onSample(ticker.getAsLong() - startNanos, inFlightAtStart, dropped);
+            }
+        }
+    }
+
+    /**
+     * Builder of {@link AdaptiveConcurrencyLimit}
+     */
+    public static final class Builder {
+
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private double backoffRatio = 0.9;
+        private LongSupplier ticker = System::nanoTime;
+
+        private Builder() {
+        }
+
+        /**
+         * @param initialLimit Limit before any sample was observed
+         */
+        public Builder initialLimit(int initialLimit) {
+            if (initialLimit < 1) {
+                throw new IllegalArgumentException("initialLimit must be at least 1");
+            }
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * @param minLimit Lower bound of the limit
+         */
+        public Builder minLimit(int minLimit) {
+            if (minLimit < 1) {
+                throw new IllegalArgumentException("minLimit must be at least 1");
+            }
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        /**
+         * @param maxLimit Upper bound of the limit
+         */
+        public Builder maxLimit(int maxLimit) {
+            if (maxLimit < 1) {
+                throw new IllegalArgumentException("maxLimit must be at least 1");
+            }
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * @param backoffRatio Factor applied to the limit on overload responses and timeouts
+         */
+        public Builder backoffRatio(double backoffRatio) {
+            if (!(backoffRatio >= 0.5 && backoffRatio < 1.0)) {
+                throw new IllegalArgumentException("backoffRatio must be between 0.5 and 1.0");
+            }
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        Builder ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public AdaptiveConcurrencyLimit build() {
+            return new AdaptiveConcurrencyLimit(this);
+        }
+    }
+}
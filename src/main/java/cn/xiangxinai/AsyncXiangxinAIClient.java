@@ -2,15 +2,23 @@ package cn.xiangxinai;
 
 import cn.xiangxinai.model.*;
 import cn.xiangxinai.exception.*;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
 import okhttp3.*;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * XiangxinAI Guardrails asynchronous client - Context-aware AI security guardrails based on LLM
@@ -45,19 +53,48 @@ import java.util.concurrent.TimeUnit;
  * );
  * CompletableFuture<GuardrailResponse> conversationFuture = client.checkConversationAsync(messages);
  * }</pre>
+ *
+ * <p>For high concurrency, use the builder to raise the dispatcher and connection pool limits:
+ * <pre>{@code
+ * AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("your-api-key")
+ *     .concurrency(ConcurrencyConfig.builder()
+ *         .maxRequests(256)
+ *         .maxRequestsPerHost(256)
+ *         .maxPendingRequests(1024)
+ *         .build())
+ *     .build();
+ * }</pre>
  */
 public class AsyncXiangxinAIClient implements AutoCloseable {
     
     private static final String DEFAULT_BASE_URL = "https://api.xiangxinai.cn/v1";
     private static final String DEFAULT_MODEL = "Xiangxin-Guardrails-Text";
+    private static final String DEFAULT_VL_MODEL = "Xiangxin-Guardrails-VL";
     private static final int DEFAULT_TIMEOUT = 30;
     private static final int DEFAULT_MAX_RETRIES = 3;
     private static final String USER_AGENT = "xiangxinai-java-async/2.6.1";
     
     private final OkHttpClient httpClient;
-    private final ObjectMapper objectMapper;
+    private final JsonCodec codec;
     private final String baseUrl;
     private final int maxRetries;
+    private final RetryPolicy retryPolicy;
+    private final RateLimiter rateLimiter;
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private final CircuitBreaker circuitBreaker;
+    private final Hedger hedger;
+    private final EndpointGroup endpointGroup;
+    private final ScheduledFuture<?> healthChecks;
+    private final ConnectionWarmer warmer;
+    private final ScheduledFuture<?> keepWarm;
+    private final ImageLoader imageLoader;
+    private final XiangxinAITransport transport;
+    private final boolean ownsTransport;
+    private final String authorization;
+    private final ResultCache resultCache;
+    private final SingleFlight singleFlight;
+    private final MicroBatcher microBatcher;
+    private volatile ExecutorService workers;
     
     /**
      * Constructor, using default configuration
@@ -77,28 +114,68 @@ public class AsyncXiangxinAIClient implements AutoCloseable {
      * @param maxRetries Maximum retry times
      */
     public AsyncXiangxinAIClient(String apiKey, String baseUrl, int timeoutSeconds, int maxRetries) {
+        this(builder(apiKey)
+                .baseUrl(baseUrl)
+                .timeout(timeoutSeconds, TimeUnit.SECONDS)
+                .maxRetries(maxRetries));
+    }
+    
+    private AsyncXiangxinAIClient(Builder builder) {
+        String apiKey = builder.apiKey;
         if (apiKey == null || apiKey.trim().isEmpty()) {
             throw new IllegalArgumentException("API key cannot be null or empty");
         }
         
-        this.baseUrl = baseUrl != null ? baseUrl.replaceAll("/$", "") : DEFAULT_BASE_URL;
-        this.maxRetries = Math.max(0, maxRetries);
-        this.objectMapper = new ObjectMapper();
+        this.endpointGroup = builder.endpointGroup;
+        if (endpointGroup != null) {
+            this.baseUrl = endpointGroup.primaryBaseUrl();
+        } else {
+            this.baseUrl = builder.baseUrl != null ? builder.baseUrl.replaceAll("/$", "") : DEFAULT_BASE_URL;
+        }
+        this.maxRetries = Math.max(0, builder.maxRetries);
+        this.retryPolicy = builder.retryPolicy;
+        this.rateLimiter = builder.rateLimiter;
+        this.concurrencyLimit = builder.concurrencyLimit;
+        this.circuitBreaker = builder.circuitBreaker;
+        this.codec = builder.codec;
+        this.authorization = "Bearer " + apiKey;
+        this.resultCache = builder.resultCache;
+        this.singleFlight = builder.singleFlight ? new SingleFlight() : null;
+        
+        // Without a shared transport the client owns a private one and closes it with the client
+        this.ownsTransport = builder.transport == null;
+        HttpProtocol protocol = ownsTransport ? builder.transportBuilder.protocol() : builder.transport.protocol();
+        protocol.checkBaseUrls(baseUrl, endpointGroup);
+        this.transport = ownsTransport ? builder.transportBuilder.build() : builder.transport;
+        this.hedger = builder.hedging != null ? new Hedger(builder.hedging, transport::scheduler, System::nanoTime) : null;
+        this.httpClient = transport.httpClient();
+        // File reads and downscaling run on the client's workers, downloads stay on the dispatcher
+        this.imageLoader = new ImageLoader(builder.images,
+                new ImageFetcher(httpClient, builder.images, retryPolicy, transport::scheduler), this::workers);
+        this.healthChecks = endpointGroup != null
+                ? endpointGroup.scheduleHealthChecks(httpClient, authorization, USER_AGENT, transport::scheduler)
+                : null;
+        this.warmer = new ConnectionWarmer(httpClient, baseUrl, endpointGroup, authorization, USER_AGENT);
+        this.keepWarm = builder.keepWarmConnections > 0
+                ? warmer.keepWarm(builder.keepWarmConnections, builder.keepWarmIntervalNanos, transport.scheduler())
+                : null;
         
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(timeoutSeconds, TimeUnit.SECONDS)
-                .readTimeout(timeoutSeconds, TimeUnit.SECONDS)
-                .writeTimeout(timeoutSeconds, TimeUnit.SECONDS)
-                .addInterceptor(chain -> {
-                    Request original = chain.request();
-                    Request request = original.newBuilder()
-                            .header("Authorization", "Bearer " + apiKey)
-                            .header("Content-Type", "application/json")
-                            .header("User-Agent", USER_AGENT)
-                            .build();
-                    return chain.proceed(request);
-                })
-                .build();
+        MicroBatchConfig microBatch = builder.microBatch;
+        this.microBatcher = microBatch == null ? null : new MicroBatcher(microBatch, codec, transport.scheduler(),
+                (body, deadline) -> makeRequestAsync("POST", microBatch.getEncoder().getEndpoint(), body,
+                        JsonNode.class, deadline),
+                (request, deadline) -> makeRequestAsync("POST", "/guardrails", request,
+                        GuardrailResponse.class, deadline));
+    }
+    
+    /**
+     * Create a builder for custom configuration
+     * 
+     * @param apiKey API key
+     * @return Client builder
+     */
+    public static Builder builder(String apiKey) {
+        return new Builder(apiKey);
     }
     
     /**
@@ -148,6 +225,31 @@ public class AsyncXiangxinAIClient implements AutoCloseable {
      * @return CompletableFuture<GuardrailResponse> Async check result
      */
     public CompletableFuture<GuardrailResponse> checkPromptAsync(String content, String model) {
+        return checkPromptAsync(content, model, CallOptions.DEFAULT);
+    }
+    
+    /**
+     * Async check prompt security with per-call options
+     * 
+     * @param content The prompt content to check
+     * @param options Per-call options, e.g. a total deadline across all retries
+     * @return CompletableFuture<GuardrailResponse> Async check result, completes with
+     *         {@link DeadlineExceededException} when the deadline is exceeded
+     */
+    public CompletableFuture<GuardrailResponse> checkPromptAsync(String content, CallOptions options) {
+        return checkPromptAsync(content, DEFAULT_MODEL, options);
+    }
+    
+    /**
+     * Async check prompt security, specify model and per-call options
+     * 
+     * @param content The prompt content to check
+     * @param model The model name to use
+     * @param options Per-call options, e.g. a total deadline across all retries
+     * @return CompletableFuture<GuardrailResponse> Async check result, completes with
+     *         {@link DeadlineExceededException} when the deadline is exceeded
+     */
+    public CompletableFuture<GuardrailResponse> checkPromptAsync(String content, String model, CallOptions options) {
         // If content is an empty string, return no risk
         if (content == null || content.trim().isEmpty()) {
             return CompletableFuture.completedFuture(createSafeResponse());
@@ -157,7 +259,54 @@ public class AsyncXiangxinAIClient implements AutoCloseable {
         messages.add(new Message("user", content.trim()));
         
         GuardrailRequest request = new GuardrailRequest(model, messages);
-        return makeRequestAsync("POST", "/guardrails", request);
+        return makeGuardrailRequestAsync("/guardrails", request, null, Deadline.of(options), true);
+    }
+    
+    /**
+     * Async check a batch of prompts with bounded parallelism
+     * 
+     * @param contents The prompt contents to check
+     * @return CompletableFuture<List<BatchItemResult>> Results in input order, one per item
+     */
+    public CompletableFuture<List<BatchItemResult>> checkPromptsAsync(List<String> contents) {
+        return checkPromptsAsync(contents, BatchOptions.DEFAULT);
+    }
+    
+    /**
+     * Async check a batch of prompts with bounded parallelism
+     * 
+     * <p>At most {@code maxParallelism} checks are in flight at a time. A failing item does not fail the batch,
+     * its error is captured in its {@link BatchItemResult}. Keep {@code maxParallelism} within the client's
+     * {@link ConcurrencyConfig} limits, items rejected by those limits fail with
+     * {@link ConcurrencyLimitException}.
+     * 
+     * @param contents The prompt contents to check
+     * @param options Batch options, e.g. max parallelism and per-item call options
+     * @return CompletableFuture<List<BatchItemResult>> Results in input order, one per item
+     * 
+     * <p>Example:
+     * <pre>{@code
+     * client.checkPromptsAsync(prompts, BatchOptions.builder().maxParallelism(32).build())
+     *     .thenAccept(results -> {
+     *         for (BatchItemResult item : results) {
+     *             if (item.isSuccess()) {
+     *                 System.out.println(item.getIndex() + ": " + item.getResponse().getSuggestAction());
+     *             } else {
+     *                 System.err.println(item.getIndex() + " failed: " + item.getError().getMessage());
+     *             }
+     *         }
+     *     });
+     * }</pre>
+     */
+    public CompletableFuture<List<BatchItemResult>> checkPromptsAsync(List<String> contents, BatchOptions options) {
+        if (contents == null) {
+            CompletableFuture<List<BatchItemResult>> future = new CompletableFuture<>();
+            future.completeExceptionally(new ValidationException("Contents cannot be null"));
+            return future;
+        }
+        BatchOptions batchOptions = options != null ? options : BatchOptions.DEFAULT;
+        return BatchExecutor.run(contents.size(), batchOptions.getMaxParallelism(),
+                index -> checkPromptAsync(contents.get(index), DEFAULT_MODEL, batchOptions.getCallOptions()));
     }
     
     /**
@@ -201,6 +350,19 @@ public class AsyncXiangxinAIClient implements AutoCloseable {
      * @return CompletableFuture<GuardrailResponse> Async check result
      */
     public CompletableFuture<GuardrailResponse> checkConversationAsync(List<Message> messages, String model) {
+        return checkConversationAsync(messages, model, CallOptions.DEFAULT);
+    }
+    
+    /**
+     * Async check conversation context security, specify model and per-call options
+     * 
+     * @param messages The conversation message list, containing the complete conversation of user and assistant
+     * @param model The model name to use
+     * @param options Per-call options, e.g. a total deadline across all retries
+     * @return CompletableFuture<GuardrailResponse> Async check result, completes with
+     *         {@link DeadlineExceededException} when the deadline is exceeded
+     */
+    public CompletableFuture<GuardrailResponse> checkConversationAsync(List<Message> messages, String model, CallOptions options) {
         if (messages == null || messages.isEmpty()) {
             CompletableFuture<GuardrailResponse> future = new CompletableFuture<>();
             future.completeExceptionally(new ValidationException("Messages cannot be empty"));
@@ -239,7 +401,7 @@ public class AsyncXiangxinAIClient implements AutoCloseable {
             }
             
             GuardrailRequest request = new GuardrailRequest(model, validatedMessages);
-            return makeRequestAsync("POST", "/guardrails", request);
+            return makeGuardrailRequestAsync("/guardrails", request, null, Deadline.of(options), false);
             
         } catch (Exception e) {
             CompletableFuture<GuardrailResponse> future = new CompletableFuture<>();
@@ -248,6 +410,126 @@ public class AsyncXiangxinAIClient implements AutoCloseable {
         }
     }
     
+    /**
+     * Async check the security of text prompt and image, multimodal detection
+     * 
+     * @param prompt Text prompt (can be empty)
+     * @param image Image local path or HTTP(S) link (cannot be empty)
+     * @return CompletableFuture<GuardrailResponse> Async check result
+     * 
+     * <p>Example:
+     * <pre>{@code
+     * client.checkPromptImageAsync("Is this image safe?", "https://example.com/image.jpg")
+     *     .thenAccept(result -> System.out.println(result.getSuggestAction()));
+     * }</pre>
+     */
+    public CompletableFuture<GuardrailResponse> checkPromptImageAsync(String prompt, String image) {
+        return checkPromptImageAsync(prompt, image, DEFAULT_VL_MODEL, null);
+    }
+    
+    /**
+     * Async check the security of text prompt and image, specify model and user ID
+     * 
+     * @param prompt Text prompt (can be empty)
+     * @param image Image local path or HTTP(S) link (cannot be empty)
+     * @param model The model name to use
+     * @param userId Optional, user ID of the tenant AI application, for user-level risk control and audit tracking
+     * @return CompletableFuture<GuardrailResponse> Async check result
+     */
+    public CompletableFuture<GuardrailResponse> checkPromptImageAsync(String prompt, String image, String model,
+                                                                     String userId) {
+        return checkPromptImageAsync(prompt, image, model, userId, null);
+    }
+    
+    /**
+     * Async check the security of text prompt and image with image options of this call
+     * 
+     * @param prompt Text prompt (can be empty)
+     * @param image Image local path or HTTP(S) link (cannot be empty)
+     * @param model The model name to use
+     * @param userId Optional, user ID of the tenant AI application, for user-level risk control and audit tracking
+     * @param imageOptions Image options of this call, null for the client's {@link Builder#images(ImageOptions)}
+     * @return CompletableFuture<GuardrailResponse> Async check result
+     */
+    public CompletableFuture<GuardrailResponse> checkPromptImageAsync(String prompt, String image, String model,
+                                                                     String userId, ImageOptions imageOptions) {
+        if (image == null || image.trim().isEmpty()) {
+            CompletableFuture<GuardrailResponse> future = new CompletableFuture<>();
+            future.completeExceptionally(new ValidationException("Image path cannot be empty"));
+            return future;
+        }
+        return checkPromptImagesAsync(prompt, Collections.singletonList(image), model, userId, imageOptions);
+    }
+    
+    /**
+     * Async check the security of text prompt and multiple images, multimodal detection
+     * 
+     * <p>Image links are downloaded without blocking, at most {@link ImageOptions#getMaxParallelism()} at a time,
+     * and the images are sent in input order.
+     * 
+     * @param prompt Text prompt (can be empty)
+     * @param images Image local path or HTTP(S) link list (cannot be empty)
+     * @return CompletableFuture<GuardrailResponse> Async check result
+     */
+    public CompletableFuture<GuardrailResponse> checkPromptImagesAsync(String prompt, List<String> images) {
+        return checkPromptImagesAsync(prompt, images, DEFAULT_VL_MODEL, null);
+    }
+    
+    /**
+     * Async check the security of text prompt and multiple images, specify model and user ID
+     * 
+     * @param prompt Text prompt (can be empty)
+     * @param images Image local path or HTTP(S) link list (cannot be empty)
+     * @param model The model name to use
+     * @param userId Optional, user ID of the tenant AI application, for user-level risk control and audit tracking
+     * @return CompletableFuture<GuardrailResponse> Async check result, fails with
+     *         {@link DeadlineExceededException} when the images are not loaded within the load timeout
+     */
+    public CompletableFuture<GuardrailResponse> checkPromptImagesAsync(String prompt, List<String> images,
+                                                                      String model, String userId) {
+        return checkPromptImagesAsync(prompt, images, model, userId, null);
+    }
+    
+    /**
+     * Async check the security of text prompt and multiple images with image options of this call
+     * 
+     * <p>Example:
+     * <pre>{@code
+     * // Let the server fetch the image links instead of downloading them here
+     * client.checkPromptImagesAsync("Is this image safe?", links, "Xiangxin-Guardrails-VL", null,
+     *         ImageOptions.builder().passThroughLinks(true).build())
+     *     .thenAccept(result -> System.out.println(result.getSuggestAction()));
+     * }</pre>
+     * 
+     * @param prompt Text prompt (can be empty)
+     * @param images Image local path or HTTP(S) link list (cannot be empty)
+     * @param model The model name to use
+     * @param userId Optional, user ID of the tenant AI application, for user-level risk control and audit tracking
+     * @param imageOptions Image options of this call, null for the client's {@link Builder#images(ImageOptions)}
+     * @return CompletableFuture<GuardrailResponse> Async check result, fails with
+     *         {@link DeadlineExceededException} when the images are not loaded within the load timeout
+     */
+    public CompletableFuture<GuardrailResponse> checkPromptImagesAsync(String prompt, List<String> images,
+                                                                      String model, String userId,
+                                                                      ImageOptions imageOptions) {
+        if (images == null || images.isEmpty()) {
+            CompletableFuture<GuardrailResponse> future = new CompletableFuture<>();
+            future.completeExceptionally(new ValidationException("Images list cannot be empty"));
+            return future;
+        }
+        CompletableFuture<List<ImageData>> loading = imageLoader.withOptions(imageOptions)
+                .loadAllAsync(images, transport.scheduler());
+        CompletableFuture<GuardrailResponse> result = loading.thenCompose(loaded -> makeGuardrailRequestAsync(
+                "/guardrails", ImageLoader.newRequest(prompt, loaded, model, userId), userId, Deadline.NONE, false));
+        // Cancelling the check stops the downloads still in flight
+        result.whenComplete((response, throwable) -> {
+            if (result.isCancelled()) {
+                loading.cancel(false);
+            }
+        });
+        return result;
+    }
+    
     /**
      * Async check API service health status
      * 
@@ -255,16 +537,29 @@ public class AsyncXiangxinAIClient implements AutoCloseable {
      */
     @SuppressWarnings("unchecked")
     public CompletableFuture<Map<String, Object>> healthCheckAsync() {
-        return makeRequestAsync("GET", "/guardrails/health", null)
-                .thenApply(response -> {
-                    // Here we need special handling, because the health check returns not GuardrailResponse
-                    try {
-                        String json = objectMapper.writeValueAsString(response);
-                        return objectMapper.readValue(json, Map.class);
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
-                });
+        return makeRequestAsync("GET", "/guardrails/health", null, Map.class)
+                .thenApply(response -> (Map<String, Object>) response);
+    }
+    
+    /**
+     * Open connections to the API ahead of the first check, e.g. on startup before reporting ready, so that
+     * DNS, TCP and TLS setup do not add to the latency of real requests. Sends {@code connections} concurrent
+     * health calls to the API, or to every replica of {@link Builder#endpoints(EndpointGroup)}. Over HTTP/2 the
+     * calls share one connection per host.
+     * 
+     * @param connections Number of connections to open per host
+     * @return CompletableFuture<Integer> Number of health calls answered, fewer than requested means some hosts
+     *         could not be reached
+     */
+    public CompletableFuture<Integer> warmUpAsync(int connections) {
+        return warmer.warmUp(connections);
+    }
+    
+    /**
+     * @return Number of idle connections in the pool, of all clients sharing the transport
+     */
+    public int getIdleConnectionCount() {
+        return httpClient.connectionPool().idleConnectionCount();
     }
     
     /**
@@ -274,159 +569,471 @@ public class AsyncXiangxinAIClient implements AutoCloseable {
      */
     @SuppressWarnings("unchecked")
     public CompletableFuture<Map<String, Object>> getModelsAsync() {
-        return makeRequestAsync("GET", "/guardrails/models", null)
-                .thenApply(response -> {
-                    // Here we need special handling, because the model list returns not GuardrailResponse
-                    try {
-                        String json = objectMapper.writeValueAsString(response);
-                        return objectMapper.readValue(json, Map.class);
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
-                });
+        return makeRequestAsync("GET", "/guardrails/models", null, Map.class)
+                .thenApply(response -> (Map<String, Object>) response);
     }
     
     /**
-     * Send asynchronous HTTP request
+     * Send asynchronous POST request, answered from the result cache or joined with an identical in-flight
+     * request when those are enabled
+     * 
+     * @param userId User ID charged against the rate limiter's per-user budget, null when the check has none
+     * @param batchable Whether the request may be coalesced into a micro-batch
      */
-    private CompletableFuture<GuardrailResponse> makeRequestAsync(String method, String endpoint, GuardrailRequest requestBody) {
-        return makeRequestAsync(method, endpoint, requestBody, 0);
+    private CompletableFuture<GuardrailResponse> makeGuardrailRequestAsync(String endpoint, GuardrailRequest requestBody,
+                                                                        String userId, Deadline deadline,
+                                                                        boolean batchable) {
+        CompletableFuture<GuardrailResponse> future = lookupOrSendAsync(endpoint, requestBody, userId, deadline,
+                batchable);
+        if (circuitBreaker == null || !circuitBreaker.hasFallbackResponse()) {
+            return future;
+        }
+        
+        // Answer with the breaker's fallback decision while it is open, cancellation still reaches the request
+        CompletableFuture<GuardrailResponse> result = new CompletableFuture<>();
+        future.whenComplete((response, throwable) -> {
+            Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+            if (cause == null) {
+                result.complete(response);
+            } else if (cause instanceof CircuitBreakerOpenException) {
+                result.complete(circuitBreaker.fallback((CircuitBreakerOpenException) cause));
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
+        result.whenComplete((response, throwable) -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        return result;
     }
     
-    private CompletableFuture<GuardrailResponse> makeRequestAsync(String method, String endpoint, GuardrailRequest requestBody, int attempt) {
-        String url = baseUrl + endpoint;
+    /**
+     * Answer from the result cache or join an identical in-flight request when those are enabled, send otherwise
+     */
+    private CompletableFuture<GuardrailResponse> lookupOrSendAsync(String endpoint, GuardrailRequest requestBody,
+                                                                   String userId, Deadline deadline, boolean batchable) {
+        if (resultCache == null && singleFlight == null) {
+            if (!tryAcquireUserPermit(userId)) {
+                return userRateLimited();
+            }
+            return sendGuardrailRequestAsync(endpoint, requestBody, deadline, batchable);
+        }
         
+        RequestKey key;
         try {
-            Request.Builder requestBuilder = new Request.Builder().url(url);
-            
-            if ("GET".equals(method)) {
-                requestBuilder.get();
-            } else if ("POST".equals(method)) {
-                String jsonBody = requestBody != null ? objectMapper.writeValueAsString(requestBody) : "{}";
-                RequestBody body = RequestBody.create(jsonBody, MediaType.get("application/json"));
-                requestBuilder.post(body);
-            } else {
-                CompletableFuture<GuardrailResponse> future = new CompletableFuture<>();
-                future.completeExceptionally(new XiangxinAIException("Unsupported HTTP method: " + method));
-                return future;
-            }
-            
+            key = RequestKey.of(codec, authorization + baseUrl, endpoint, requestBody);
+        } catch (IOException e) {
             CompletableFuture<GuardrailResponse> future = new CompletableFuture<>();
-            
-            httpClient.newCall(requestBuilder.build()).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    if (attempt < maxRetries) {
-                        // Retry
-                        CompletableFuture.delayedExecutor(1, TimeUnit.SECONDS)
-                                .execute(() -> {
-                                    makeRequestAsync(method, endpoint, requestBody, attempt + 1)
-                                            .whenComplete((result, throwable) -> {
-                                                if (throwable != null) {
-                                                    future.completeExceptionally(throwable);
-                                                } else {
-                                                    future.complete(result);
-                                                }
-                                            });
-                                });
-                    } else {
-                        future.completeExceptionally(new NetworkException("Network error: " + e.getMessage(), e));
-                    }
-                }
-                
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    try (Response responseToClose = response) {
-                        handleAsyncResponse(responseToClose, endpoint, future, method, requestBody, attempt);
-                    }
+            future.completeExceptionally(new XiangxinAIException("Failed to serialize request: " + e.getMessage(), e));
+            return future;
+        }
+        
+        if (resultCache != null) {
+            GuardrailResponse cached = resultCache.get(key);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        
+        if (!tryAcquireUserPermit(userId)) {
+            return userRateLimited();
+        }
+        CompletableFuture<GuardrailResponse> future = singleFlight != null
+                ? singleFlight.executeAsync(key,
+                        () -> sendGuardrailRequestAsync(endpoint, requestBody, deadline, batchable))
+                : sendGuardrailRequestAsync(endpoint, requestBody, deadline, batchable);
+        if (resultCache != null) {
+            future.thenAccept(result -> resultCache.put(key, result));
+        }
+        return future;
+    }
+    
+    /**
+     * Pool of the blocking image work of this client, file reads, decoding and re-encoding, started on first use.
+     * Its threads are bounded by the dispatcher's maximum number of requests and never run on
+     * {@code ForkJoinPool.commonPool()}.
+     */
+    private ExecutorService workers() {
+        ExecutorService current = workers;
+        if (current == null) {
+            synchronized (this) {
+                current = workers;
+                if (current == null) {
+                    int threads = Math.max(1, httpClient.dispatcher().getMaxRequests());
+                    AtomicInteger threadNumber = new AtomicInteger();
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(), runnable -> {
+                                Thread thread = new Thread(runnable,
+                                        "xiangxinai-worker-" + threadNumber.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+                    // Idle threads exit, a client that rarely checks images does not keep them around
+                    executor.allowCoreThreadTimeOut(true);
+                    workers = current = executor;
                 }
-            });
-            
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * Take a permit of the user's budget of the rate limiter, cached results are not charged
+     */
+    private boolean tryAcquireUserPermit(String userId) {
+        return rateLimiter == null || rateLimiter.tryAcquireUser(userId != null ? userId.trim() : null);
+    }
+    
+    private static CompletableFuture<GuardrailResponse> userRateLimited() {
+        CompletableFuture<GuardrailResponse> future = new CompletableFuture<>();
+        future.completeExceptionally(
+                new RateLimitException("Client-side rate limit exceeded for this user, request not sent"));
+        return future;
+    }
+    
+    /**
+     * Send a guardrail request, through the micro-batcher when it is enabled and the request is batchable
+     */
+    private CompletableFuture<GuardrailResponse> sendGuardrailRequestAsync(String endpoint, GuardrailRequest requestBody,
+                                                                        Deadline deadline, boolean batchable) {
+        if (batchable && microBatcher != null) {
+            return microBatcher.submit(requestBody, deadline);
+        }
+        // Prompt checks only read, they are safe to send twice
+        return makeRequestAsync("POST", endpoint, requestBody, GuardrailResponse.class, deadline,
+                batchable && hedger != null);
+    }
+    
+    /**
+     * Send asynchronous HTTP request
+     */
+    private <T> CompletableFuture<T> makeRequestAsync(String method, String endpoint, Object requestBody,
+                                                      Class<T> responseType) {
+        return makeRequestAsync(method, endpoint, requestBody, responseType, Deadline.NONE);
+    }
+    
+    private <T> CompletableFuture<T> makeRequestAsync(String method, String endpoint, Object requestBody,
+                                                      Class<T> responseType, Deadline deadline) {
+        return makeRequestAsync(method, endpoint, requestBody, responseType, deadline, false);
+    }
+    
+    /**
+     * @param hedged Whether a slow attempt is raced by a duplicate request
+     */
+    private <T> CompletableFuture<T> makeRequestAsync(String method, String endpoint, Object requestBody,
+                                                      Class<T> responseType, Deadline deadline, boolean hedged) {
+        if (!"GET".equals(method) && !"POST".equals(method)) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(new XiangxinAIException("Unsupported HTTP method: " + method));
             return future;
-            
-        } catch (Exception e) {
-            CompletableFuture<GuardrailResponse> future = new CompletableFuture<>();
-            future.completeExceptionally(new XiangxinAIException("Request setup failed: " + e.getMessage(), e));
+        }
+        
+        if (!transport.tryAcquireSlot()) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(new ConcurrencyLimitException(
+                    "Too many outstanding requests (limit " + transport.maxOutstandingRequests() + ")"));
             return future;
         }
+        
+        AsyncCall<T> call = new AsyncCall<>(method, endpoint, requestBody, responseType, deadline, hedged);
+        call.future.whenComplete((result, throwable) -> transport.releaseSlot());
+        call.execute();
+        return call.future;
     }
     
     /**
      * Handle asynchronous HTTP response
      */
-    private void handleAsyncResponse(Response response, String endpoint, CompletableFuture<GuardrailResponse> future,
-                                   String method, GuardrailRequest requestBody, int attempt) throws IOException {
-        String responseBody = response.body() != null ? response.body().string() : "";
+    private <T> void handleAsyncResponse(Response response, AsyncCall<T> call) throws IOException {
+        ResponseBody body = response.body();
+        if (rateLimiter != null) {
+            rateLimiter.onResponse(response);
+        }
         
         if (response.isSuccessful()) {
-            try {
-                GuardrailResponse result = objectMapper.readValue(responseBody, GuardrailResponse.class);
-                future.complete(result);
+            // Parse straight from the stream, the body is never buffered as a String
+            try (InputStream in = body.byteStream()) {
+                T result = codec.readerFor(call.responseType).readValue(in);
+                call.future.complete(result);
             } catch (Exception e) {
-                future.completeExceptionally(new XiangxinAIException("Failed to parse response", e));
+                call.future.completeExceptionally(new XiangxinAIException("Failed to parse response", e));
             }
             return;
         }
         
+        // Only error bodies are buffered, they are small and needed for the error message
+        String responseBody = body != null ? body.string() : "";
+        
         switch (response.code()) {
             case 401:
-                future.completeExceptionally(new AuthenticationException("Invalid API key"));
+                call.future.completeExceptionally(new AuthenticationException("Invalid API key"));
                 break;
             case 422:
-                try {
-                    JsonNode errorNode = objectMapper.readTree(responseBody);
-                    String detail = errorNode.has("detail") ? errorNode.get("detail").asText() : "Validation error";
-                    future.completeExceptionally(new ValidationException("Validation error: " + detail));
-                } catch (Exception e) {
-                    future.completeExceptionally(new ValidationException("Validation error: " + responseBody));
-                }
+                call.future.completeExceptionally(new ValidationException("Validation error: " + errorDetail(responseBody)));
                 break;
             case 429:
-                if (attempt < maxRetries) {
-                    // Exponential backoff retry
-                    int waitTime = (int) Math.pow(2, attempt) * 1000 + 1000;
-                    CompletableFuture.delayedExecutor(waitTime, TimeUnit.MILLISECONDS)
-                            .execute(() -> {
-                                makeRequestAsync(method, endpoint, requestBody, attempt + 1)
-                                        .whenComplete((result, throwable) -> {
-                                            if (throwable != null) {
-                                                future.completeExceptionally(throwable);
-                                            } else {
-                                                future.complete(result);
-                                            }
-                                        });
-                            });
-                } else {
-                    future.completeExceptionally(new RateLimitException("Rate limit exceeded"));
-                }
+                long retryAfterMillis = RateLimitHeaders.retryAfterMillis(response.header(RateLimitHeaders.RETRY_AFTER));
+                call.retryOrFail(new RateLimitException("Rate limit exceeded", retryAfterMillis), retryAfterMillis);
                 break;
             default:
-                String errorMsg = responseBody;
-                try {
-                    JsonNode errorNode = objectMapper.readTree(responseBody);
-                    errorMsg = errorNode.has("detail") ? errorNode.get("detail").asText() : responseBody;
-                } catch (Exception ignored) {
-                    // Use original response body
+                call.retryOrFail(new XiangxinAIException(
+                        "API request failed with status " + response.code() + ": " + errorDetail(responseBody)), 0);
+                break;
+        }
+    }
+    
+    /**
+     * Extract the "detail" field of an error body, falling back to the raw body
+     */
+    private String errorDetail(String responseBody) {
+        try {
+            JsonNode errorNode = codec.readTree(responseBody);
+            if (errorNode != null && errorNode.has("detail")) {
+                return errorNode.get("detail").asText();
+            }
+        } catch (Exception ignored) {
+            // Use original response body
+        }
+        return responseBody;
+    }
+    
+    /**
+     * State of one asynchronous request across all of its attempts
+     * 
+     * <p>Every attempt completes the same future. Retries wait on the transport's timer thread, and cancelling
+     * the future cancels the HTTP call in flight or the pending retry.
+     */
+    private final class AsyncCall<T> {
+        
+        final String method;
+        final String endpoint;
+        final Object requestBody;
+        final Class<T> responseType;
+        final Deadline deadline;
+        final boolean hedged;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        
+        // Attempts run one after another, each one is started by the completion of the previous one
+        private int attempt;
+        private long totalDelayMillis;
+        private boolean permitReserved;
+        private volatile Call httpCall;
+        private volatile Hedger.HedgedCall hedgedCall;
+        private volatile ScheduledFuture<?> pendingTask;
+        
+        AsyncCall(String method, String endpoint, Object requestBody, Class<T> responseType, Deadline deadline,
+                  boolean hedged) {
+            this.method = method;
+            this.endpoint = endpoint;
+            this.requestBody = requestBody;
+            this.responseType = responseType;
+            this.deadline = deadline;
+            this.hedged = hedged;
+            future.whenComplete((result, throwable) -> {
+                if (future.isCancelled()) {
+                    cancel();
+                }
+            });
+        }
+        
+        /**
+         * Start the current attempt
+         */
+        void execute() {
+            if (future.isDone()) {
+                return;
+            }
+            if (deadline.isExpired()) {
+                future.completeExceptionally(new DeadlineExceededException(
+                        "Request deadline exceeded after " + attempt + " attempts"));
+                return;
+            }
+            if (rateLimiter != null && !permitReserved) {
+                long waitNanos = rateLimiter.reserve(deadline);
+                if (waitNanos < 0) {
+                    future.completeExceptionally(new RateLimitException(
+                            "Client-side rate limit exceeded, request not sent"));
+                    return;
+                }
+                if (waitNanos > 0) {
+                    // Come back once the permit is due instead of blocking the calling thread
+                    permitReserved = true;
+                    schedule(waitNanos);
+                    return;
                 }
+            }
+            permitReserved = false;
+            
+            try {
+                // Every attempt picks a replica of its own, so a retry fails over to another one
+                Endpoint target = endpointGroup != null ? endpointGroup.select() : null;
+                Request.Builder requestBuilder = new Request.Builder()
+                        .url((target != null ? target.getBaseUrl() : baseUrl) + endpoint)
+                        .header("Authorization", authorization)
+                        .header("Content-Type", "application/json")
+                        .header("User-Agent", USER_AGENT);
                 
-                if (attempt < maxRetries) {
-                    // Retry other errors
-                    CompletableFuture.delayedExecutor(1, TimeUnit.SECONDS)
-                            .execute(() -> {
-                                makeRequestAsync(method, endpoint, requestBody, attempt + 1)
-                                        .whenComplete((result, throwable) -> {
-                                            if (throwable != null) {
-                                                future.completeExceptionally(throwable);
-                                            } else {
-                                                future.complete(result);
-                                            }
-                                        });
-                            });
+                if ("GET".equals(method)) {
+                    requestBuilder.get();
                 } else {
-                    future.completeExceptionally(new XiangxinAIException(
-                            "API request failed with status " + response.code() + ": " + errorMsg));
+                    requestBuilder.post(new JsonRequestBody(codec, requestBody));
                 }
-                break;
+                
+                Call call = httpClient.newCall(requestBuilder.build());
+                if (deadline.isBounded()) {
+                    // Per-call deadline overrides the client call timeout when it is shorter
+                    long timeoutNanos = deadline.remainingNanos();
+                    if (transport.callTimeoutMillis() > 0) {
+                        timeoutNanos = Math.min(timeoutNanos, TimeUnit.MILLISECONDS.toNanos(transport.callTimeoutMillis()));
+                    }
+                    call.timeout().timeout(timeoutNanos, TimeUnit.NANOSECONDS);
+                }
+                
+                httpCall = call;
+                if (future.isCancelled()) {
+                    call.cancel();
+                    return;
+                }
+                
+                CircuitBreaker.Permit breakerPermit = null;
+                if (circuitBreaker != null) {
+                    breakerPermit = circuitBreaker.tryAcquire();
+                    if (breakerPermit == null) {
+                        future.completeExceptionally(new CircuitBreakerOpenException(
+                                "Circuit breaker is open, request not sent"));
+                        return;
+                    }
+                }
+                AdaptiveConcurrencyLimit.Permit limitPermit = null;
+                if (concurrencyLimit != null) {
+                    limitPermit = concurrencyLimit.tryAcquire();
+                    if (limitPermit == null) {
+                        if (breakerPermit != null) {
+                            breakerPermit.release();
+                        }
+                        future.completeExceptionally(new ConcurrencyLimitException("Adaptive concurrency limit of "
+                                + concurrencyLimit.getLimit() + " requests in flight reached, request not sent"));
+                        return;
+                    }
+                }
+                CircuitBreaker.Permit attemptBreakerPermit = breakerPermit;
+                AdaptiveConcurrencyLimit.Permit attemptPermit = limitPermit;
+                long targetStartNanos = target != null ? target.onStart() : 0;
+                
+                Callback callback = new Callback() {
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        // A cancelled attempt says nothing about the server
+                        boolean cancelled = call.isCanceled();
+                        if (attemptPermit != null) {
+                            if (cancelled) {
+                                attemptPermit.release();
+                            } else {
+                                attemptPermit.onDropped();
+                            }
+                        }
+                        if (attemptBreakerPermit != null) {
+                            if (cancelled) {
+                                attemptBreakerPermit.release();
+                            } else {
+                                attemptBreakerPermit.onError();
+                            }
+                        }
+                        if (target != null) {
+                            if (cancelled) {
+                                target.release();
+                            } else {
+                                target.onError();
+                            }
+                        }
+                        if (future.isDone()) {
+                            return;
+                        }
+                        if (deadline.isExpired()) {
+                            future.completeExceptionally(new DeadlineExceededException(
+                                    "Request deadline exceeded: " + e.getMessage(), e));
+                        } else {
+                            retryOrFail(new NetworkException("Network error: " + e.getMessage(), e), 0);
+                        }
+                    }
+                    
+                    @Override
+                    public void onResponse(Call call, Response response) throws IOException {
+                        if (attemptPermit != null) {
+                            attemptPermit.onResponse(response.code());
+                        }
+                        if (attemptBreakerPermit != null) {
+                            attemptBreakerPermit.onResponse(response.code());
+                        }
+                        if (target != null) {
+                            target.onResponse(response.code(), targetStartNanos);
+                        }
+                        try (Response responseToClose = response) {
+                            handleAsyncResponse(responseToClose, AsyncCall.this);
+                        }
+                    }
+                };
+                
+                if (hedged) {
+                    Hedger.HedgedCall hedgedAttempt = hedger.enqueue(call, deadline, callback);
+                    hedgedCall = hedgedAttempt;
+                    if (future.isCancelled()) {
+                        hedgedAttempt.cancel();
+                    }
+                } else {
+                    call.enqueue(callback);
+                }
+                
+            } catch (Exception e) {
+                future.completeExceptionally(new XiangxinAIException("Request setup failed: " + e.getMessage(), e));
+            }
+        }
+        
+        /**
+         * Schedule the next attempt after the retry policy's backoff, or fail with the error of this attempt when
+         * no retries, total delay or deadline are left, or the server asked to wait longer than the maximum backoff
+         * 
+         * @param minDelayMillis Lower bound of the backoff, e.g. the server's Retry-After
+         */
+        void retryOrFail(XiangxinAIException error, long minDelayMillis) {
+            if (attempt >= maxRetries) {
+                future.completeExceptionally(error);
+                return;
+            }
+            long delayMillis = retryPolicy.retryDelayMillis(attempt, minDelayMillis);
+            if (delayMillis < 0 || !retryPolicy.allowsTotalDelay(totalDelayMillis + delayMillis)
+                    || !deadline.allows(delayMillis)) {
+                future.completeExceptionally(error);
+                return;
+            }
+            
+            totalDelayMillis += delayMillis;
+            attempt++;
+            schedule(TimeUnit.MILLISECONDS.toNanos(delayMillis));
+        }
+        
+        private void schedule(long delayNanos) {
+            pendingTask = transport.scheduler().schedule(this::execute, delayNanos, TimeUnit.NANOSECONDS);
+            if (future.isCancelled()) {
+                pendingTask.cancel(false);
+            }
+        }
+        
+        private void cancel() {
+            Call call = httpCall;
+            if (call != null) {
+                call.cancel();
+            }
+            Hedger.HedgedCall hedgedAttempt = hedgedCall;
+            if (hedgedAttempt != null) {
+                hedgedAttempt.cancel();
+            }
+            ScheduledFuture<?> task = pendingTask;
+            if (task != null) {
+                task.cancel(false);
+            }
         }
     }
     
@@ -435,9 +1042,326 @@ public class AsyncXiangxinAIClient implements AutoCloseable {
      */
     @Override
     public void close() {
-        if (httpClient != null) {
-            httpClient.dispatcher().executorService().shutdown();
-            httpClient.connectionPool().evictAll();
+        if (healthChecks != null) {
+            healthChecks.cancel(false);
+        }
+        if (keepWarm != null) {
+            keepWarm.cancel(false);
+        }
+        if (microBatcher != null) {
+            microBatcher.close();
+        }
+        ExecutorService current = workers;
+        if (current != null) {
+            current.shutdownNow();
+        }
+        if (ownsTransport) {
+            transport.close();
+        }
+    }
+    
+    /**
+     * Builder of {@link AsyncXiangxinAIClient}
+     * 
+     * <p>Example:
+     * <pre>{@code
+     * AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("your-api-key")
+     *     .baseUrl("https://api.xiangxinai.cn/v1")
+     *     .connectTimeout(100, TimeUnit.MILLISECONDS)
+     *     .readTimeout(500, TimeUnit.MILLISECONDS)
+     *     .maxRetries(2)
+     *     .concurrency(ConcurrencyConfig.builder().maxRequests(256).maxRequestsPerHost(256).build())
+     *     .build();
+     * }</pre>
+     */
+    public static final class Builder {
+        
+        private final String apiKey;
+        private String baseUrl = DEFAULT_BASE_URL;
+        private final XiangxinAITransport.Builder transportBuilder = XiangxinAITransport.builder();
+        private XiangxinAITransport transport;
+        private int maxRetries = DEFAULT_MAX_RETRIES;
+        private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+        private RateLimiter rateLimiter;
+        private AdaptiveConcurrencyLimit concurrencyLimit;
+        private CircuitBreaker circuitBreaker;
+        private HedgingPolicy hedging;
+        private EndpointGroup endpointGroup;
+        private int keepWarmConnections;
+        private ImageOptions images = ImageOptions.DEFAULT;
+        private long keepWarmIntervalNanos;
+        private JsonCodec codec = JsonCodec.defaultCodec();
+        private ResultCache resultCache;
+        private boolean singleFlight;
+        private MicroBatchConfig microBatch;
+        
+        private Builder(String apiKey) {
+            this.apiKey = apiKey;
+        }
+        
+        /**
+         * @param baseUrl API base URL
+         */
+        public Builder baseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+            return this;
+        }
+        
+        /**
+         * Set connect, read and write timeouts at once
+         * 
+         * @param timeout Timeout value
+         * @param unit Time unit of timeout
+         */
+        public Builder timeout(long timeout, TimeUnit unit) {
+            transportBuilder.timeout(timeout, unit);
+            return this;
+        }
+        
+        /**
+         * @param timeout Timeout for establishing a connection, 0 means no timeout
+         * @param unit Time unit of timeout
+         */
+        public Builder connectTimeout(long timeout, TimeUnit unit) {
+            transportBuilder.connectTimeout(timeout, unit);
+            return this;
+        }
+        
+        /**
+         * @param timeout Timeout between reads of the response, 0 means no timeout
+         * @param unit Time unit of timeout
+         */
+        public Builder readTimeout(long timeout, TimeUnit unit) {
+            transportBuilder.readTimeout(timeout, unit);
+            return this;
+        }
+        
+        /**
+         * @param timeout Timeout between writes of the request, 0 means no timeout
+         * @param unit Time unit of timeout
+         */
+        public Builder writeTimeout(long timeout, TimeUnit unit) {
+            transportBuilder.writeTimeout(timeout, unit);
+            return this;
+        }
+        
+        /**
+         * @param timeout Timeout of a single HTTP attempt from start to end, 0 means no timeout
+         * @param unit Time unit of timeout
+         */
+        public Builder callTimeout(long timeout, TimeUnit unit) {
+            transportBuilder.callTimeout(timeout, unit);
+            return this;
+        }
+        
+        /**
+         * @param maxRetries Maximum retry times
+         */
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+        
+        /**
+         * @param retryPolicy Backoff between retries, jittered exponential backoff by default
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            if (retryPolicy == null) {
+                throw new IllegalArgumentException("retryPolicy cannot be null");
+            }
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+        
+        /**
+         * Pace requests with a client-side rate limiter that follows the server's rate-limit headers,
+         * disabled by default
+         * 
+         * @param rateLimiter Rate limiter, share it between clients using the same API key
+         */
+        public Builder rateLimiter(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+        
+        /**
+         * Limit the requests in flight with a limit that adapts to latency and overload responses,
+         * disabled by default; applies on top of the fixed limit of {@link #concurrency(ConcurrencyConfig)}
+         * 
+         * @param concurrencyLimit Adaptive concurrency limit, share it between clients calling the same API
+         */
+        public Builder concurrencyLimit(AdaptiveConcurrencyLimit concurrencyLimit) {
+            this.concurrencyLimit = concurrencyLimit;
+            return this;
+        }
+        
+        /**
+         * Stop sending requests while the API is failing, guardrail checks return the breaker's fallback decision
+         * meanwhile; disabled by default
+         * 
+         * @param circuitBreaker Circuit breaker, share it between clients calling the same API
+         */
+        public Builder circuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+        
+        /**
+         * Race slow prompt checks with a duplicate request, disabled by default; prompt checks that are
+         * micro-batched are not hedged
+         * 
+         * @param hedging Hedging policy
+         */
+        public Builder hedging(HedgingPolicy hedging) {
+            this.hedging = hedging;
+            return this;
+        }
+        
+        /**
+         * Spread requests over several replicas of the API instead of the single base URL, which is ignored then
+         * 
+         * @param endpointGroup Replicas and load balancing settings
+         */
+        public Builder endpoints(EndpointGroup endpointGroup) {
+            this.endpointGroup = endpointGroup;
+            return this;
+        }
+        
+        /**
+         * @param images Parallelism, size limit, timeouts and retries of loading the images of multimodal checks
+         */
+        public Builder images(ImageOptions images) {
+            if (images == null) {
+                throw new IllegalArgumentException("images cannot be null");
+            }
+            this.images = images;
+            return this;
+        }
+        
+        /**
+         * Keep connections to the API from going idle between bursts of traffic, disabled by default. Every
+         * interval, {@code connections} concurrent health calls are sent to every host. Pick an interval shorter
+         * than the pool's keep-alive of {@link ConcurrencyConfig} and the idle timeout of the server, and keep
+         * {@code connections} within the pool's idle connections.
+         * 
+         * @param connections Number of connections to keep open per host
+         * @param interval Time between two rounds of health calls
+         * @param unit Time unit of interval
+         */
+        public Builder keepWarm(int connections, long interval, TimeUnit unit) {
+            if (connections < 1) {
+                throw new IllegalArgumentException("connections must be at least 1");
+            }
+            if (interval <= 0) {
+                throw new IllegalArgumentException("interval must be positive");
+            }
+            this.keepWarmConnections = connections;
+            this.keepWarmIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+        
+        /**
+         * @param concurrency Dispatcher, connection pool and pending queue limits
+         */
+        public Builder concurrency(ConcurrencyConfig concurrency) {
+            if (concurrency == null) {
+                throw new IllegalArgumentException("concurrency cannot be null");
+            }
+            transportBuilder.concurrency(concurrency);
+            return this;
+        }
+        
+        /**
+         * Talk HTTP/2 to the API, e.g. {@link HttpProtocol#H2_PRIOR_KNOWLEDGE} for a self-hosted server on
+         * plain HTTP, so concurrent checks share a few multiplexed connections
+         * 
+         * @param protocol HTTP protocol, {@link HttpProtocol#HTTP_2} with HTTP/1.1 fallback by default
+         */
+        public Builder protocol(HttpProtocol protocol) {
+            transportBuilder.protocol(protocol);
+            return this;
+        }
+        
+        /**
+         * Gzip large request bodies such as long conversations and base64 images, disabled by default
+         * 
+         * @param compression Compression settings, e.g. {@link RequestCompression#gzip()}
+         */
+        public Builder compression(RequestCompression compression) {
+            transportBuilder.compression(compression);
+            return this;
+        }
+        
+        /**
+         * Schedule retry backoff and other delayed work on an application scheduler instead of the transport's
+         * own timer thread
+         * 
+         * @param scheduler Scheduler, not shut down when the client is closed
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            transportBuilder.scheduler(scheduler);
+            return this;
+        }
+        
+        /**
+         * Use a transport shared with other clients, the timeout, concurrency, protocol, compression and
+         * scheduler settings of this builder are ignored in that case
+         * 
+         * @param transport Shared transport, not closed when the client is closed
+         */
+        public Builder transport(XiangxinAITransport transport) {
+            if (transport == null) {
+                throw new IllegalArgumentException("transport cannot be null");
+            }
+            this.transport = transport;
+            return this;
+        }
+        
+        /**
+         * @param codec JSON codec, clients share {@link JsonCodec#defaultCodec()} by default
+         */
+        public Builder codec(JsonCodec codec) {
+            if (codec == null) {
+                throw new IllegalArgumentException("codec cannot be null");
+            }
+            this.codec = codec;
+            return this;
+        }
+        
+        /**
+         * Enable the client-side result cache, disabled by default
+         * 
+         * @param resultCache Result cache, can be shared with other clients
+         */
+        public Builder resultCache(ResultCache resultCache) {
+            this.resultCache = resultCache;
+            return this;
+        }
+        
+        /**
+         * Coalesce identical concurrent requests (same endpoint, body and user ID) into one network call,
+         * disabled by default
+         * 
+         * @param singleFlight Whether to de-duplicate in-flight requests
+         */
+        public Builder singleFlight(boolean singleFlight) {
+            this.singleFlight = singleFlight;
+            return this;
+        }
+        
+        /**
+         * Coalesce prompt checks into batch calls, disabled by default. The API server has to expose the
+         * batch endpoint of the configured {@link BatchEncoder}
+         * 
+         * @param microBatch Batch size, linger and wire format of the batch calls
+         */
+        public Builder microBatching(MicroBatchConfig microBatch) {
+            this.microBatch = microBatch;
+            return this;
+        }
+        
+        public AsyncXiangxinAIClient build() {
+            return new AsyncXiangxinAIClient(this);
         }
     }
 }
\ No newline at end of file
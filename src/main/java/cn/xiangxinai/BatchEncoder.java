@@ -0,0 +1,65 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.model.GuardrailRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.List;
+
+/**
+ * Wire format of a server batch call used by micro-batching
+ *
+ * <p>The encoder turns the requests gathered by the coalescer into one request body and splits the batch
+ * response back into one result per request. The default {@link #jsonArray(String)} encoder sends a JSON array
+ * of guardrail requests and expects a JSON array of guardrail responses in the same order. Implement this
+ * interface to match a different server batch format.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * BatchEncoder encoder = new BatchEncoder() {
+ *     public String getEndpoint() {
+ *         return "/guardrails/batch";
+ *     }
+ *
+ *     public Object encode(List<GuardrailRequest> requests) {
+ *         return Collections.singletonMap("requests", requests);
+ *     }
+ *
+ *     public List<JsonNode> decode(JsonNode response) {
+ *         List<JsonNode> results = new ArrayList<>();
+ *         response.get("results").forEach(results::add);
+ *         return results;
+ *     }
+ * };
+ * }</pre>
+ */
+public interface BatchEncoder {
+
+    /**
+     * @return Endpoint of the batch call, relative to the client base URL
+     */
+    String getEndpoint();
+
+    /**
+     * Build the request body of a batch call
+     *
+     * @param requests Requests of the batch, in submission order
+     * @return Request body, serialized with the client's {@link JsonCodec}
+     */
+    Object encode(List<GuardrailRequest> requests);
+
+    /**
+     * Split the response of a batch call into one result per request
+     *
+     * @param response Parsed response body of the batch call
+     * @return One guardrail response node per request, in the order of {@link #encode(List)}
+     */
+    List<JsonNode> decode(JsonNode response);
+
+    /**
+     * Encoder sending a JSON array of requests and reading a JSON array of responses
+     *
+     * @param endpoint Endpoint of the batch call, relative to the client base URL
+     */
+    static BatchEncoder jsonArray(String endpoint) {
+        return new JsonArrayBatchEncoder(endpoint);
+    }
+}
@@ -0,0 +1,107 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.model.GuardrailResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Runs the items of a batch with a bounded number of checks in flight
+ * 
+ * <p>At most {@code maxParallelism} items are in flight; each completion starts the next item. Every item's
+ * outcome is captured separately and the results are returned in input order. Cancelling the returned future
+ * stops starting further items.
+ */
+final class BatchExecutor {
+    
+    private final int size;
+    private final IntFunction<CompletableFuture<GuardrailResponse>> check;
+    private final BatchItemResult[] results;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final AtomicInteger remaining;
+    private final CompletableFuture<List<BatchItemResult>> done = new CompletableFuture<>();
+    
+    private BatchExecutor(int size, IntFunction<CompletableFuture<GuardrailResponse>> check) {
+        this.size = size;
+        this.check = check;
+        this.results = new BatchItemResult[size];
+        this.remaining = new AtomicInteger(size);
+    }
+    
+    /**
+     * @param size Number of items
+     * @param maxParallelism Maximum number of items in flight
+     * @param check Starts the check of the item at the given index
+     * @return Results of all items in input order, never completes exceptionally
+     */
+    static CompletableFuture<List<BatchItemResult>> run(int size, int maxParallelism,
+                                                        IntFunction<CompletableFuture<GuardrailResponse>> check) {
+        if (size == 0) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        BatchExecutor executor = new BatchExecutor(size, check);
+        for (int i = 0, workers = Math.min(maxParallelism, size); i < workers; i++) {
+            executor.drain();
+        }
+        return executor.done;
+    }
+    
+    /**
+     * Start items until one of them completes asynchronously, its completion continues the loop
+     */
+    private void drain() {
+        while (!done.isDone()) {
+            int index = nextIndex.getAndIncrement();
+            if (index >= size) {
+                return;
+            }
+            
+            CompletableFuture<GuardrailResponse> future;
+            try {
+                future = check.apply(index);
+            } catch (RuntimeException e) {
+                record(index, null, e);
+                continue;
+            }
+            
+            if (future.isDone()) {
+                // Completed inline (e.g. cache hit or empty content), iterate instead of recursing
+                record(future, index);
+                continue;
+            }
+            future.whenComplete((response, throwable) -> {
+                record(index, response, throwable);
+                drain();
+            });
+            return;
+        }
+    }
+    
+    private void record(CompletableFuture<GuardrailResponse> future, int index) {
+        try {
+            record(index, future.get(), null);
+        } catch (ExecutionException e) {
+            record(index, null, e.getCause());
+        } catch (Exception e) {
+            record(index, null, e);
+        }
+    }
+    
+    private void record(int index, GuardrailResponse response, Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        results[index] = throwable != null
+                ? BatchItemResult.failure(index, throwable)
+                : BatchItemResult.success(index, response);
+        if (remaining.decrementAndGet() == 0) {
+            // The final decrement happens after every result was written, which publishes the array safely
+            done.complete(new ArrayList<>(Arrays.asList(results)));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.model.GuardrailResponse;
+
+/**
+ * Result of one item of a batch check, either a response or the error of that item
+ */
+public final class BatchItemResult {
+    
+    private final int index;
+    private final GuardrailResponse response;
+    private final Throwable error;
+    
+    private BatchItemResult(int index, GuardrailResponse response, Throwable error) {
+        this.index = index;
+        this.response = response;
+        this.error = error;
+    }
+    
+    static BatchItemResult success(int index, GuardrailResponse response) {
+        return new BatchItemResult(index, response, null);
+    }
+    
+    static BatchItemResult failure(int index, Throwable error) {
+        return new BatchItemResult(index, null, error);
+    }
+    
+    /**
+     * @return Position of the item in the input list
+     */
+    public int getIndex() {
+        return index;
+    }
+    
+    /**
+     * @return Whether the item was checked successfully
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+    
+    /**
+     * @return Check result, null if the item failed
+     */
+    public GuardrailResponse getResponse() {
+        return response;
+    }
+    
+    /**
+     * @return Error of the item, null if it was checked successfully
+     */
+    public Throwable getError() {
+        return error;
+    }
+    
+    @Override
+    public String toString() {
+        return "BatchItemResult{" +
+                "index=" + index +
+                ", response=" + response +
+                ", error=" + error +
+                '}';
+    }
+}
@@ -0,0 +1,93 @@
+package cn.xiangxinai;
+
+/**
+ * Options of batch checks
+ * 
+ * <p>Example:
+ * <pre>{@code
+ * BatchOptions options = BatchOptions.builder()
+ *     .maxParallelism(32)
+ *     .callOptions(CallOptions.withTimeout(5, TimeUnit.SECONDS))
+ *     .build();
+ * List<BatchItemResult> results = client.checkPrompts(prompts, options);
+ * }</pre>
+ */
+public final class BatchOptions {
+    
+    /**
+     * 16 requests in flight at a time, no per-item deadline
+     */
+    public static final BatchOptions DEFAULT = builder().build();
+    
+    private final int maxParallelism;
+    private final CallOptions callOptions;
+    
+    private BatchOptions(Builder builder) {
+        this.maxParallelism = builder.maxParallelism;
+        this.callOptions = builder.callOptions;
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    /**
+     * @return Maximum number of items checked at the same time
+     */
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
+    
+    /**
+     * @return Options applied to the check of every single item
+     */
+    public CallOptions getCallOptions() {
+        return callOptions;
+    }
+    
+    @Override
+    public String toString() {
+        return "BatchOptions{" +
+                "maxParallelism=" + maxParallelism +
+                ", callOptions=" + callOptions +
+                '}';
+    }
+    
+    /**
+     * Builder of {@link BatchOptions}
+     */
+    public static final class Builder {
+        
+        private int maxParallelism = 16;
+        private CallOptions callOptions = CallOptions.DEFAULT;
+        
+        private Builder() {
+        }
+        
+        /**
+         * @param maxParallelism Maximum number of items checked at the same time
+         */
+        public Builder maxParallelism(int maxParallelism) {
+            if (maxParallelism < 1) {
+                throw new IllegalArgumentException("maxParallelism must be at least 1");
+            }
+            this.maxParallelism = maxParallelism;
+            return this;
+        }
+        
+        /**
+         * @param callOptions Options applied to the check of every single item, e.g. a per-item deadline
+         */
+        public Builder callOptions(CallOptions callOptions) {
+            if (callOptions == null) {
+                throw new IllegalArgumentException("callOptions cannot be null");
+            }
+            this.callOptions = callOptions;
+            return this;
+        }
+        
+        public BatchOptions build() {
+            return new BatchOptions(this);
+        }
+    }
+}
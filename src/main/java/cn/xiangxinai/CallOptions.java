@@ -0,0 +1,57 @@
+package cn.xiangxinai;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call options
+ * 
+ * <p>The timeout is a deadline for the whole call: connection, request, response and all retries must complete
+ * within it, otherwise the call fails with {@link cn.xiangxinai.exception.DeadlineExceededException}.
+ * 
+ * <p>Example:
+ * <pre>{@code
+ * // Input guard on the chat hot path with a 150 ms budget
+ * GuardrailResponse result = client.checkPrompt("User question", CallOptions.withTimeout(150, TimeUnit.MILLISECONDS));
+ * }</pre>
+ */
+public final class CallOptions {
+    
+    /**
+     * No per-call deadline, only the client level timeouts apply
+     */
+    public static final CallOptions DEFAULT = new CallOptions(0);
+    
+    private final long timeoutMillis;
+    
+    private CallOptions(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+    
+    /**
+     * Create options with a total deadline for the call
+     * 
+     * @param timeout Total time budget of the call, including retries
+     * @param unit Time unit of timeout
+     * @return Call options
+     */
+    public static CallOptions withTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+        return new CallOptions(Math.max(1, unit.toMillis(timeout)));
+    }
+    
+    /**
+     * @return Total time budget of the call in milliseconds, 0 if there is no deadline
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+    
+    @Override
+    public String toString() {
+        return "CallOptions{" +
+                "timeoutMillis=" + timeoutMillis +
+                '}';
+    }
+}
@@ -0,0 +1,500 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.CircuitBreakerOpenException;
+import cn.xiangxinai.model.ComplianceResult;
+import cn.xiangxinai.model.GuardrailResponse;
+import cn.xiangxinai.model.GuardrailResult;
+import cn.xiangxinai.model.SecurityResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker that stops sending requests while the API is failing
+ *
+ * <p>Without a breaker every check made during an outage waits through all of its attempts and their timeouts.
+ * The breaker records the outcome of every HTTP attempt in a sliding window of the last {@code slidingWindowSize}
+ * attempts. 5xx responses, timeouts and network errors are failures; attempts slower than {@code slowCallDuration}
+ * are slow calls. Once the window holds at least {@code minimumNumberOfCalls} outcomes and the failure rate or the
+ * slow call rate reaches its threshold, the breaker opens:
+ * <ul>
+ *   <li>{@link State#OPEN}: no request is sent, guardrail checks return the configured {@link Fallback} at once</li>
+ *   <li>{@link State#HALF_OPEN}: after {@code waitDurationInOpenState}, {@code permittedCallsInHalfOpenState}
+ *       trial attempts are let through; the breaker closes when their rates are below the thresholds and opens
+ *       again otherwise</li>
+ *   <li>{@link State#CLOSED}: requests flow normally</li>
+ * </ul>
+ *
+ * <p>Example:
+ * <pre>{@code
+ * CircuitBreaker circuitBreaker = CircuitBreaker.builder()
+ *     .failureRateThreshold(50)
+ *     .slowCallDuration(2, TimeUnit.SECONDS)
+ *     .waitDurationInOpenState(30, TimeUnit.SECONDS)
+ *     .fallback(CircuitBreaker.Fallback.PASS)
+ *     .listener((from, to) -> log.warn("Guardrails circuit {} -> {}", from, to))
+ *     .build();
+ *
+ * XiangxinAIClient client = XiangxinAIClient.builder("your-api-key")
+ *     .circuitBreaker(circuitBreaker)
+ *     .build();
+ * }</pre>
+ */
+public final class CircuitBreaker {
+
+    /**
+     * State of the breaker
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Decision returned by guardrail checks while the breaker rejects requests
+     */
+    public enum Fallback {
+        /**
+         * Throw {@link CircuitBreakerOpenException}, the caller decides
+         */
+        EXCEPTION,
+        /**
+         * Fail open, return a synthetic no-risk response with suggested action "pass"
+         */
+        PASS,
+        /**
+         * Fail closed, return a synthetic high-risk response with suggested action "reject"
+         */
+        REJECT
+    }
+
+    /**
+     * Listener of state transitions, called on the thread that completed the transition
+     */
+    @FunctionalInterface
+    public interface StateListener {
+
+        void onStateTransition(State from, State to);
+    }
+
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallDurationNanos;
+    private final int minimumNumberOfCalls;
+    private final long waitDurationNanos;
+    private final int permittedCallsInHalfOpenState;
+    private final Fallback fallback;
+    private final List<StateListener> listeners;
+    private final LongSupplier ticker;
+    private final LongAdder notPermittedCount = new LongAdder();
+
+    // Guarded by this
+    private final byte[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int failureCount;
+    private int slowCount;
+    private volatile State state = State.CLOSED;
+    private long openUntilNanos;
+    private int halfOpenPermits;
+    private int halfOpenCalls;
+    private int halfOpenFailures;
+    private int halfOpenSlow;
+
+    private CircuitBreaker(Builder builder) {
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallDurationNanos = builder.slowCallDurationNanos;
+        this.minimumNumberOfCalls = Math.min(builder.minimumNumberOfCalls, builder.slidingWindowSize);
+        this.waitDurationNanos = builder.waitDurationNanos;
+        this.permittedCallsInHalfOpenState = builder.permittedCallsInHalfOpenState;
+        this.fallback = builder.fallback;
+        this.listeners = new ArrayList<>(builder.listeners);
+        this.ticker = builder.ticker;
+        this.window = new byte[builder.slidingWindowSize];
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Current state, an open breaker whose wait is over reports OPEN until the next request moves it to
+     *         HALF_OPEN
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return Failure rate in percent over the sliding window, -1 while fewer than minimumNumberOfCalls were recorded
+     */
+    public synchronized double getFailureRate() {
+        return windowCount < minimumNumberOfCalls ? -1 : failureCount * 100.0 / windowCount;
+    }
+
+    /**
+     * @return Slow call rate in percent over the sliding window, -1 while fewer than minimumNumberOfCalls were
+     *         recorded
+     */
+    public synchronized double getSlowCallRate() {
+        return windowCount < minimumNumberOfCalls ? -1 : slowCount * 100.0 / windowCount;
+    }
+
+    /**
+     * @return Number of attempts rejected because the breaker was open
+     */
+    public long getNotPermittedCount() {
+        return notPermittedCount.sum();
+    }
+
+    /**
+     * Let one HTTP attempt through
+     *
+     * @return The permit to complete with the attempt's outcome, null when the breaker rejects the attempt
+     */
+    Permit tryAcquire() {
+        State from = null;
+        boolean trial = false;
+        boolean permitted = true;
+        synchronized (this) {
+            if (state == State.OPEN) {
+                if (ticker.getAsLong() - openUntilNanos < 0) {
+                    notPermittedCount.increment();
+                    return null;
+                }
+                from = transitionTo(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                trial = halfOpenPermits < permittedCallsInHalfOpenState;
+                permitted = trial;
+                if (trial) {
+                    halfOpenPermits++;
+                } else {
+                    notPermittedCount.increment();
+                }
+            }
+        }
+        notify(from, State.HALF_OPEN);
+        return permitted ? new Permit(ticker.getAsLong(), trial) : null;
+    }
+
+    /**
+     * Decision for a guardrail check that was rejected by the breaker
+     *
+     * @throws CircuitBreakerOpenException When the fallback is {@link Fallback#EXCEPTION}
+     */
+    GuardrailResponse fallback(CircuitBreakerOpenException e) {
+        switch (fallback) {
+            case PASS:
+                return new GuardrailResponse(
+                        "guardrails-circuit-open",
+                        new GuardrailResult(
+                                new ComplianceResult("no_risk", new ArrayList<>()),
+                                new SecurityResult("no_risk", new ArrayList<>())
+                        ),
+                        "no_risk",
+                        "pass",
+                        null
+                );
+            case REJECT:
+                return new GuardrailResponse(
+                        "guardrails-circuit-open",
+                        new GuardrailResult(
+                                new ComplianceResult("high_risk", new ArrayList<>()),
+                                new SecurityResult("high_risk", new ArrayList<>())
+                        ),
+                        "high_risk",
+                        "reject",
+                        null
+                );
+            default:
+                throw e;
+        }
+    }
+
+    /**
+     * @return Whether guardrail checks get a synthetic decision instead of the exception
+     */
+    boolean hasFallbackResponse() {
+        return fallback != Fallback.EXCEPTION;
+    }
+
+    private void onResult(long durationNanos, boolean failure, boolean trial) {
+        byte outcome = (byte) ((failure ? FAILURE : 0) | (durationNanos >= slowCallDurationNanos ? SLOW : 0));
+        State from = null;
+        State to = null;
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                record(outcome);
+                if (windowCount >= minimumNumberOfCalls && exceedsThresholds(failureCount, slowCount, windowCount)) {
+                    to = State.OPEN;
+                    from = transitionTo(to);
+                }
+            } else if (state == State.HALF_OPEN && trial) {
+                // Attempts started before the breaker opened say nothing about the recovery
+                halfOpenCalls++;
+                halfOpenFailures += outcome & FAILURE;
+                halfOpenSlow += (outcome & SLOW) >> 1;
+                if (halfOpenCalls >= permittedCallsInHalfOpenState) {
+                    to = exceedsThresholds(halfOpenFailures, halfOpenSlow, halfOpenCalls) ? State.OPEN : State.CLOSED;
+                    from = transitionTo(to);
+                }
+            }
+        }
+        notify(from, to);
+    }
+
+    private synchronized void releaseHalfOpenPermit() {
+        if (state == State.HALF_OPEN && halfOpenPermits > halfOpenCalls) {
+            halfOpenPermits--;
+        }
+    }
+
+    private boolean exceedsThresholds(int failures, int slow, int calls) {
+        return failures * 100.0 / calls >= failureRateThreshold || slow * 100.0 / calls >= slowCallRateThreshold;
+    }
+
+    private void record(byte outcome) {
+        if (windowCount == window.length) {
+            byte evicted = window[windowIndex];
+            failureCount -= evicted & FAILURE;
+            slowCount -= (evicted & SLOW) >> 1;
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = outcome;
+        failureCount += outcome & FAILURE;
+        slowCount += (outcome & SLOW) >> 1;
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    /**
+     * Switch to the given state under the lock
+     *
+     * @return The previous state, to be passed to the listeners once the lock is released
+     */
+    private State transitionTo(State to) {
+        State from = state;
+        state = to;
+        if (to == State.OPEN) {
+            openUntilNanos = ticker.getAsLong() + waitDurationNanos;
+        } else if (to == State.CLOSED) {
+            windowIndex = 0;
+            windowCount = 0;
+            failureCount = 0;
+            slowCount = 0;
+        }
+        halfOpenPermits = 0;
+        halfOpenCalls = 0;
+        halfOpenFailures = 0;
+        halfOpenSlow = 0;
+        return from;
+    }
+
+    private void notify(State from, State to) {
+        if (from == null || from == to) {
+            return;
+        }
+        for (StateListener listener : listeners) {
+            try {
+                listener.onStateTransition(from, to);
+            } catch (RuntimeException ignored) {
+                // A failing listener must not break the request path
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker{" +
+                "state=" + state +
+                ", failureRateThreshold=" + failureRateThreshold +
+                ", slowCallRateThreshold=" + slowCallRateThreshold +
+                ", slidingWindowSize=" + window.length +
+                ", fallback=" + fallback +
+                '}';
+    }
+
+    /**
+     * Permission of one HTTP attempt, completed exactly once with the attempt's outcome
+     */
+    final class Permit {
+
+        private final long startNanos;
+        private final boolean trial;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private Permit(long startNanos, boolean trial) {
+            this.startNanos = startNanos;
+            this.trial = trial;
+        }
+
+        /**
+         * The attempt got a response, 5xx counts as failure
+         */
+        void onResponse(int code) {
+            complete(code >= 500);
+        }
+
+        /**
+         * The attempt failed with a timeout or network error
+         */
+        void onError() {
+            complete(true);
+        }
+
+        /**
+         * The attempt ended without a usable outcome, e.g. it was cancelled
+         */
+        void release() {
+            if (completed.compareAndSet(false, true) && trial) {
+                releaseHalfOpenPermit();
+            }
+        }
+
+        private void complete(boolean failure) {
+            if (completed.compareAndSet(false, true)) {
+                onResult(ticker.getAsLong() - startNanos, failure, trial);
+            }
+        }
+    }
+
+    /**
+     * Builder of {@link CircuitBreaker}
+     */
+    public static final class Builder {
+
+        private double failureRateThreshold = 50;
+        private double slowCallRateThreshold = 100;
+        private long slowCallDurationNanos = TimeUnit.SECONDS.toNanos(10);
+        private int slidingWindowSize = 100;
+        private int minimumNumberOfCalls = 20;
+        private long waitDurationNanos = TimeUnit.SECONDS.toNanos(30);
+        private int permittedCallsInHalfOpenState = 5;
+        private Fallback fallback = Fallback.EXCEPTION;
+        private final List<StateListener> listeners = new ArrayList<>();
+        private LongSupplier ticker = System::nanoTime;
+
+        private Builder() {
+        }
+
+        /**
+         * @param failureRateThreshold Failure rate in percent at which the breaker opens
+         */
+        public Builder failureRateThreshold(double failureRateThreshold) {
+            if (!(failureRateThreshold > 0 && failureRateThreshold <= 100)) {
+                throw new IllegalArgumentException("failureRateThreshold must be between 0 and 100");
+            }
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * @param slowCallRateThreshold Slow call rate in percent at which the breaker opens
+         */
+        public Builder slowCallRateThreshold(double slowCallRateThreshold) {
+            if (!(slowCallRateThreshold > 0 && slowCallRateThreshold <= 100)) {
+                throw new IllegalArgumentException("slowCallRateThreshold must be between 0 and 100");
+            }
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+
+        /**
+         * @param slowCallDuration Duration from which an attempt counts as slow
+         * @param unit Time unit of slowCallDuration
+         */
+        public Builder slowCallDuration(long slowCallDuration, TimeUnit unit) {
+            if (slowCallDuration <= 0) {
+                throw new IllegalArgumentException("slowCallDuration must be positive");
+            }
+            this.slowCallDurationNanos = unit.toNanos(slowCallDuration);
+            return this;
+        }
+
+        /**
+         * @param slidingWindowSize Number of most recent attempts the rates are computed over
+         */
+        public Builder slidingWindowSize(int slidingWindowSize) {
+            if (slidingWindowSize < 1) {
+                throw new IllegalArgumentException("slidingWindowSize must be at least 1");
+            }
+            this.slidingWindowSize = slidingWindowSize;
+            return this;
+        }
+
+        /**
+         * @param minimumNumberOfCalls Number of attempts to record before the rates are evaluated
+         */
+        public Builder minimumNumberOfCalls(int minimumNumberOfCalls) {
+            if (minimumNumberOfCalls < 1) {
+                throw new IllegalArgumentException("minimumNumberOfCalls must be at least 1");
+            }
+            this.minimumNumberOfCalls = minimumNumberOfCalls;
+            return this;
+        }
+
+        /**
+         * @param waitDuration Time the breaker stays open before trial attempts are let through
+         * @param unit Time unit of waitDuration
+         */
+        public Builder waitDurationInOpenState(long waitDuration, TimeUnit unit) {
+            if (waitDuration <= 0) {
+                throw new IllegalArgumentException("waitDurationInOpenState must be positive");
+            }
+            this.waitDurationNanos = unit.toNanos(waitDuration);
+            return this;
+        }
+
+        /**
+         * @param permittedCallsInHalfOpenState Number of trial attempts that decide whether the breaker closes
+         */
+        public Builder permittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+            if (permittedCallsInHalfOpenState < 1) {
+                throw new IllegalArgumentException("permittedCallsInHalfOpenState must be at least 1");
+            }
+            this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+            return this;
+        }
+
+        /**
+         * @param fallback Decision of guardrail checks while the breaker rejects requests, an exception by default
+         */
+        public Builder fallback(Fallback fallback) {
+            if (fallback == null) {
+                throw new IllegalArgumentException("fallback cannot be null");
+            }
+            this.fallback = fallback;
+            return this;
+        }
+
+        /**
+         * @param listener Listener notified of every state transition
+         */
+        public Builder listener(StateListener listener) {
+            if (listener == null) {
+                throw new IllegalArgumentException("listener cannot be null");
+            }
+            listeners.add(listener);
+            return this;
+        }
+
+        Builder ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+}
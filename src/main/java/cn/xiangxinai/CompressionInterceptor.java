@@ -0,0 +1,80 @@
+package cn.xiangxinai;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gzips JSON request bodies of the size configured by {@link RequestCompression}, and falls back to uncompressed
+ * bodies for hosts that answer 415
+ */
+final class CompressionInterceptor implements Interceptor {
+
+    private static final int UNSUPPORTED_MEDIA_TYPE = 415;
+
+    private final RequestCompression compression;
+    private final Set<String> unsupportedHosts = ConcurrentHashMap.newKeySet();
+
+    CompressionInterceptor(RequestCompression compression) {
+        this.compression = compression;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        RequestBody body = request.body();
+        String host = request.url().host() + ":" + request.url().port();
+        if (!(body instanceof JsonRequestBody)
+                || request.header("Content-Encoding") != null
+                || unsupportedHosts.contains(host)
+                || !((JsonRequestBody) body).isAtLeast(compression.getMinSize())) {
+            return chain.proceed(request);
+        }
+
+        Response response = chain.proceed(request.newBuilder()
+                .header("Content-Encoding", "gzip")
+                .method(request.method(), new GzipRequestBody(body, compression.getLevel()))
+                .build());
+        if (response.code() != UNSUPPORTED_MEDIA_TYPE) {
+            return response;
+        }
+        response.close();
+        unsupportedHosts.add(host);
+        return chain.proceed(request);
+    }
+
+    private static final class GzipRequestBody extends RequestBody {
+
+        private final RequestBody delegate;
+        private final int level;
+
+        GzipRequestBody(RequestBody delegate, int level) {
+            this.delegate = delegate;
+            this.level = level;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            GzipSink gzipSink = new GzipSink(sink);
+            gzipSink.deflater().setLevel(level);
+            BufferedSink gzip = Okio.buffer(gzipSink);
+            delegate.writeTo(gzip);
+            // Closing writes the gzip trailer
+            gzip.close();
+        }
+    }
+}
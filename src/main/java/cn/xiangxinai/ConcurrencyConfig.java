@@ -0,0 +1,187 @@
+package cn.xiangxinai;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrency configuration of the HTTP layer - dispatcher limits, connection pool and pending queue
+ *
+ * <p>OkHttp's default dispatcher only runs 5 calls per host at the same time, which caps the throughput
+ * of the guardrails client because all calls go to the same API host. This configuration raises those limits
+ * and bounds the number of calls that may wait for a free slot: once {@code maxRequests + maxPendingRequests}
+ * calls are outstanding, new calls are rejected immediately with
+ * {@link cn.xiangxinai.exception.ConcurrencyLimitException} instead of queueing silently.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * ConcurrencyConfig concurrency = ConcurrencyConfig.builder()
+ *     .maxRequests(256)
+ *     .maxRequestsPerHost(256)
+ *     .maxIdleConnections(64)
+ *     .keepAlive(5, TimeUnit.MINUTES)
+ *     .maxPendingRequests(1024)
+ *     .build();
+ *
+ * AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("your-api-key")
+ *     .concurrency(concurrency)
+ *     .build();
+ * }</pre>
+ */
+public final class ConcurrencyConfig {
+
+    private static final int DEFAULT_MAX_REQUESTS = 64;
+    private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 16;
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final int maxRequests;
+    private final int maxRequestsPerHost;
+    private final int maxIdleConnections;
+    private final long keepAliveMillis;
+    private final int maxPendingRequests;
+
+    private ConcurrencyConfig(Builder builder) {
+        this.maxRequests = builder.maxRequests;
+        this.maxRequestsPerHost = builder.maxRequestsPerHost;
+        this.maxIdleConnections = builder.maxIdleConnections;
+        this.keepAliveMillis = builder.keepAliveMillis;
+        this.maxPendingRequests = builder.maxPendingRequests;
+    }
+
+    /**
+     * Default configuration: 64 concurrent calls (all allowed to the API host), 16 idle connections kept
+     * for 5 minutes, unbounded pending queue
+     */
+    public static ConcurrencyConfig defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public int getMaxPendingRequests() {
+        return maxPendingRequests;
+    }
+
+    /**
+     * Maximum number of calls that may be outstanding at the same time, running plus pending
+     */
+    int maxOutstandingRequests() {
+        long total = (long) maxRequests + maxPendingRequests;
+        return total > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) total;
+    }
+
+    Dispatcher newDispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        return dispatcher;
+    }
+
+    ConnectionPool newConnectionPool() {
+        return new ConnectionPool(maxIdleConnections, keepAliveMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyConfig{" +
+                "maxRequests=" + maxRequests +
+                ", maxRequestsPerHost=" + maxRequestsPerHost +
+                ", maxIdleConnections=" + maxIdleConnections +
+                ", keepAliveMillis=" + keepAliveMillis +
+                ", maxPendingRequests=" + maxPendingRequests +
+                '}';
+    }
+
+    /**
+     * Builder of {@link ConcurrencyConfig}
+     */
+    public static final class Builder {
+
+        private int maxRequests = DEFAULT_MAX_REQUESTS;
+        private int maxRequestsPerHost = DEFAULT_MAX_REQUESTS;
+        private int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+        private long keepAliveMillis = DEFAULT_KEEP_ALIVE_MILLIS;
+        private int maxPendingRequests = Integer.MAX_VALUE;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxRequests Maximum number of calls executing at the same time
+         */
+        public Builder maxRequests(int maxRequests) {
+            if (maxRequests < 1) {
+                throw new IllegalArgumentException("maxRequests must be at least 1");
+            }
+            this.maxRequests = maxRequests;
+            return this;
+        }
+
+        /**
+         * @param maxRequestsPerHost Maximum number of calls executing at the same time against one host
+         */
+        public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+            if (maxRequestsPerHost < 1) {
+                throw new IllegalArgumentException("maxRequestsPerHost must be at least 1");
+            }
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /**
+         * @param maxIdleConnections Maximum number of idle connections kept in the connection pool
+         */
+        public Builder maxIdleConnections(int maxIdleConnections) {
+            if (maxIdleConnections < 0) {
+                throw new IllegalArgumentException("maxIdleConnections cannot be negative");
+            }
+            this.maxIdleConnections = maxIdleConnections;
+            return this;
+        }
+
+        /**
+         * @param keepAlive How long an idle connection is kept in the pool
+         * @param unit Time unit of keepAlive
+         */
+        public Builder keepAlive(long keepAlive, TimeUnit unit) {
+            if (keepAlive <= 0) {
+                throw new IllegalArgumentException("keepAlive must be positive");
+            }
+            this.keepAliveMillis = unit.toMillis(keepAlive);
+            return this;
+        }
+
+        /**
+         * @param maxPendingRequests Maximum number of calls waiting for a free slot, further calls are rejected
+         */
+        public Builder maxPendingRequests(int maxPendingRequests) {
+            if (maxPendingRequests < 0) {
+                throw new IllegalArgumentException("maxPendingRequests cannot be negative");
+            }
+            this.maxPendingRequests = maxPendingRequests;
+            return this;
+        }
+
+        public ConcurrencyConfig build() {
+            return new ConcurrencyConfig(this);
+        }
+    }
+}
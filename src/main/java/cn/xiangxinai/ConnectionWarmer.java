@@ -0,0 +1,114 @@
+package cn.xiangxinai;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens connections to the API ahead of the first check and keeps them from going idle
+ *
+ * <p>Connections are opened by concurrent {@code GET /guardrails/health} calls, so DNS, TCP and TLS setup happen
+ * before the first real request. Any HTTP response counts, the status does not matter for the connection.
+ */
+final class ConnectionWarmer {
+
+    private static final String PING_PATH = "/guardrails/health";
+
+    private final OkHttpClient httpClient;
+    private final List<String> baseUrls;
+    private final String authorization;
+    private final String userAgent;
+
+    ConnectionWarmer(OkHttpClient httpClient, String baseUrl, EndpointGroup endpointGroup, String authorization,
+                     String userAgent) {
+        this.httpClient = httpClient;
+        if (endpointGroup == null) {
+            this.baseUrls = Collections.singletonList(baseUrl);
+        } else {
+            List<String> baseUrls = new ArrayList<>();
+            for (Endpoint endpoint : endpointGroup.getEndpoints()) {
+                baseUrls.add(endpoint.getBaseUrl());
+            }
+            this.baseUrls = baseUrls;
+        }
+        this.authorization = authorization;
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * Send {@code connections} concurrent pings to every replica
+     *
+     * @return Number of pings answered, completes when all of them are done
+     */
+    CompletableFuture<Integer> warmUp(int connections) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("connections must be at least 1");
+        }
+        List<CompletableFuture<Boolean>> pings = new ArrayList<>(connections * baseUrls.size());
+        for (String baseUrl : baseUrls) {
+            for (int i = 0; i < connections; i++) {
+                pings.add(ping(baseUrl));
+            }
+        }
+        return CompletableFuture.allOf(pings.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            int answered = 0;
+            for (CompletableFuture<Boolean> ping : pings) {
+                if (ping.join()) {
+                    answered++;
+                }
+            }
+            return answered;
+        });
+    }
+
+    /**
+     * Repeat the warm-up at a fixed delay, so the connections are used before the pool or the server closes them
+     *
+     * @return The task to cancel when the client closes
+     */
+    ScheduledFuture<?> keepWarm(int connections, long intervalNanos, ScheduledExecutorService scheduler) {
+        return scheduler.scheduleWithFixedDelay(() -> warmUp(connections), intervalNanos, intervalNanos,
+                TimeUnit.NANOSECONDS);
+    }
+
+    private CompletableFuture<Boolean> ping(String baseUrl) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        Request request = new Request.Builder()
+                .url(baseUrl + PING_PATH)
+                .header("Authorization", authorization)
+                .header("User-Agent", userAgent)
+                .get()
+                .build();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.complete(false);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                // Reading the body to the end returns the connection to the pool before the warm-up completes
+                boolean answered;
+                try (Response responseToClose = response) {
+                    responseToClose.body().string();
+                    answered = true;
+                } catch (IOException e) {
+                    answered = false;
+                }
+                future.complete(answered);
+            }
+        });
+        return future;
+    }
+}
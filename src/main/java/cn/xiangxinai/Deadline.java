@@ -0,0 +1,66 @@
+package cn.xiangxinai;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Absolute point in time by which a call, including all of its retries, must complete
+ */
+final class Deadline {
+    
+    static final Deadline NONE = new Deadline(0, false);
+    
+    private final long deadlineNanos;
+    private final boolean bounded;
+    
+    private Deadline(long deadlineNanos, boolean bounded) {
+        this.deadlineNanos = deadlineNanos;
+        this.bounded = bounded;
+    }
+    
+    static Deadline after(long timeout, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(timeout), true);
+    }
+    
+    static Deadline of(CallOptions options) {
+        if (options == null || options.getTimeoutMillis() <= 0) {
+            return NONE;
+        }
+        return after(options.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * The later of two deadlines, unbounded if either is unbounded
+     */
+    Deadline latest(Deadline other) {
+        if (!bounded || !other.bounded) {
+            return NONE;
+        }
+        return deadlineNanos - other.deadlineNanos >= 0 ? this : other;
+    }
+    
+    boolean isBounded() {
+        return bounded;
+    }
+    
+    /**
+     * Remaining time in nanoseconds, {@code Long.MAX_VALUE} when unbounded
+     */
+    long remainingNanos() {
+        return bounded ? deadlineNanos - System.nanoTime() : Long.MAX_VALUE;
+    }
+    
+    long remainingMillis() {
+        return bounded ? TimeUnit.NANOSECONDS.toMillis(remainingNanos()) : Long.MAX_VALUE;
+    }
+    
+    boolean isExpired() {
+        return bounded && remainingNanos() <= 0;
+    }
+    
+    /**
+     * Whether waiting the given delay still leaves time for another attempt
+     */
+    boolean allows(long delayMillis) {
+        return !bounded || TimeUnit.MILLISECONDS.toNanos(delayMillis) < remainingNanos();
+    }
+}
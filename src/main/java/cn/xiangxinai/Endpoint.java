@@ -0,0 +1,152 @@
+package cn.xiangxinai;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * One replica of the guardrails API in an {@link EndpointGroup}, with the load and health statistics the
+ * {@link LoadBalancingStrategy} selects by
+ */
+public final class Endpoint {
+
+    private final String baseUrl;
+    private final int maxFailures;
+    private final long ejectionNanos;
+    private final long decayNanos;
+    private final LongSupplier ticker;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long ejectedUntilNanos;
+    private volatile boolean ejected;
+
+    // Guarded by this
+    private double ewmaNanos;
+    private long lastSampleNanos;
+
+    Endpoint(String baseUrl, int maxFailures, long ejectionNanos, long decayNanos, LongSupplier ticker) {
+        this.baseUrl = baseUrl;
+        this.maxFailures = maxFailures;
+        this.ejectionNanos = ejectionNanos;
+        this.decayNanos = decayNanos;
+        this.ticker = ticker;
+        this.lastSampleNanos = ticker.getAsLong();
+    }
+
+    /**
+     * @return API base URL of the replica
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * @return Number of requests sent to the replica and not answered yet
+     */
+    public int getOutstandingRequests() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return Moving average of the latency that jumps up to any slower sample at once and decays slowly, 0 before
+     *         the first response
+     */
+    public synchronized double getEwmaLatencyNanos() {
+        return ewmaNanos;
+    }
+
+    /**
+     * @return Expected wait of a new request: the latency average weighted by the requests already in flight
+     */
+    public double getPeakEwmaCost() {
+        return getEwmaLatencyNanos() * (outstanding.get() + 1);
+    }
+
+    /**
+     * @return Whether the replica is taken out of rotation after failures
+     */
+    public boolean isEjected() {
+        return ejected && ticker.getAsLong() - ejectedUntilNanos < 0;
+    }
+
+    /**
+     * A request was sent to the replica
+     *
+     * @return Start time to pass to {@link #onResponse(int, long)}
+     */
+    long onStart() {
+        outstanding.incrementAndGet();
+        return ticker.getAsLong();
+    }
+
+    /**
+     * The request got a response, 5xx counts as failure
+     */
+    void onResponse(int code, long startNanos) {
+        outstanding.decrementAndGet();
+        if (code >= 500) {
+            recordFailure();
+            return;
+        }
+        consecutiveFailures.set(0);
+        long now = ticker.getAsLong();
+        long latency = Math.max(0, now - startNanos);
+        synchronized (this) {
+            // Peak EWMA: a slower sample is taken at once, faster ones only pull the average down gradually
+            if (latency > ewmaNanos) {
+                ewmaNanos = latency;
+            } else {
+                double weight = Math.exp(-(double) Math.max(0, now - lastSampleNanos) / decayNanos);
+                ewmaNanos = ewmaNanos * weight + latency * (1 - weight);
+            }
+            lastSampleNanos = now;
+        }
+    }
+
+    /**
+     * The request failed with a timeout or network error
+     */
+    void onError() {
+        outstanding.decrementAndGet();
+        recordFailure();
+    }
+
+    /**
+     * The request ended without an outcome, e.g. it was cancelled
+     */
+    void release() {
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * Take the replica out of rotation for the ejection time
+     */
+    void eject() {
+        ejectedUntilNanos = ticker.getAsLong() + ejectionNanos;
+        ejected = true;
+        consecutiveFailures.set(0);
+    }
+
+    /**
+     * Put the replica back into rotation, e.g. after a successful health check
+     */
+    void restore() {
+        ejected = false;
+        consecutiveFailures.set(0);
+    }
+
+    private void recordFailure() {
+        if (consecutiveFailures.incrementAndGet() >= maxFailures) {
+            eject();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Endpoint{" +
+                "baseUrl='" + baseUrl + '\'' +
+                ", outstanding=" + getOutstandingRequests() +
+                ", ewmaLatencyNanos=" + (long) getEwmaLatencyNanos() +
+                ", ejected=" + isEjected() +
+                '}';
+    }
+}
@@ -0,0 +1,252 @@
+package cn.xiangxinai;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Replicas of the guardrails API that a client spreads its requests over, without a load balancer in between
+ *
+ * <p>Every HTTP attempt goes to the replica picked by the {@link LoadBalancingStrategy}, peak EWMA by default, so a
+ * retry usually lands on another replica. A replica is ejected from rotation for {@code ejectionTime} after
+ * {@code maxFailures} consecutive 5xx responses, timeouts or network errors, and returns when the time is up.
+ * With a {@code healthCheckInterval}, every replica is also probed through {@code /guardrails/health}: a failed
+ * probe ejects the replica, a successful one returns it to rotation at once. When every replica is ejected, requests
+ * are spread over all of them rather than failing.
+ *
+ * <p>The replicas keep their statistics across clients, share one group between clients calling the same
+ * replicas.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * EndpointGroup endpoints = EndpointGroup.builder()
+ *     .endpoint("http://guardrails-1.internal:5001/v1")
+ *     .endpoint("http://guardrails-2.internal:5001/v1")
+ *     .endpoint("http://guardrails-3.internal:5001/v1")
+ *     .strategy(LoadBalancingStrategy.leastOutstanding())
+ *     .maxFailures(3)
+ *     .ejectionTime(30, TimeUnit.SECONDS)
+ *     .healthCheckInterval(5, TimeUnit.SECONDS)
+ *     .build();
+ *
+ * AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("your-api-key")
+ *     .endpoints(endpoints)
+ *     .build();
+ * }</pre>
+ */
+public final class EndpointGroup {
+
+    private static final String HEALTH_PATH = "/guardrails/health";
+
+    private final List<Endpoint> endpoints;
+    private final LoadBalancingStrategy strategy;
+    private final long healthCheckIntervalNanos;
+
+    private EndpointGroup(Builder builder) {
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (String baseUrl : builder.baseUrls) {
+            endpoints.add(new Endpoint(baseUrl, builder.maxFailures, builder.ejectionNanos, builder.decayNanos,
+                    builder.ticker));
+        }
+        this.endpoints = Collections.unmodifiableList(endpoints);
+        this.strategy = builder.strategy;
+        this.healthCheckIntervalNanos = builder.healthCheckIntervalNanos;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Group of the given replicas with default settings
+     */
+    public static EndpointGroup of(String... baseUrls) {
+        Builder builder = builder();
+        for (String baseUrl : baseUrls) {
+            builder.endpoint(baseUrl);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return All replicas, in rotation or not
+     */
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Pick the replica for the next HTTP attempt
+     */
+    Endpoint select() {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+        List<Endpoint> candidates = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.isEjected()) {
+                candidates.add(endpoint);
+            }
+        }
+        return strategy.select(candidates.isEmpty() ? endpoints : candidates);
+    }
+
+    /**
+     * @return Base URL identifying the group, e.g. in cache keys; the replicas serve the same API
+     */
+    String primaryBaseUrl() {
+        return endpoints.get(0).getBaseUrl();
+    }
+
+    /**
+     * Start probing the replicas when a health check interval is set
+     *
+     * @return The probing task to cancel when the client closes, null when probing is disabled
+     */
+    ScheduledFuture<?> scheduleHealthChecks(OkHttpClient httpClient, String authorization, String userAgent,
+                                            Supplier<ScheduledExecutorService> scheduler) {
+        if (healthCheckIntervalNanos == 0) {
+            return null;
+        }
+        return scheduler.get().scheduleWithFixedDelay(() -> {
+            for (Endpoint endpoint : endpoints) {
+                probe(httpClient, authorization, userAgent, endpoint);
+            }
+        }, healthCheckIntervalNanos, healthCheckIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void probe(OkHttpClient httpClient, String authorization, String userAgent, Endpoint endpoint) {
+        Request request = new Request.Builder()
+                .url(endpoint.getBaseUrl() + HEALTH_PATH)
+                .header("Authorization", authorization)
+                .header("User-Agent", userAgent)
+                .get()
+                .build();
+        Call call = httpClient.newCall(request);
+        // A probe that takes longer than the interval counts as failed
+        call.timeout().timeout(healthCheckIntervalNanos, TimeUnit.NANOSECONDS);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                endpoint.eject();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response responseToClose = response) {
+                    if (responseToClose.isSuccessful()) {
+                        endpoint.restore();
+                    } else {
+                        endpoint.eject();
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "EndpointGroup{" +
+                "endpoints=" + endpoints +
+                ", healthCheckIntervalNanos=" + healthCheckIntervalNanos +
+                '}';
+    }
+
+    /**
+     * Builder of {@link EndpointGroup}
+     */
+    public static final class Builder {
+
+        private final List<String> baseUrls = new ArrayList<>();
+        private LoadBalancingStrategy strategy = LoadBalancingStrategy.peakEwma();
+        private int maxFailures = 5;
+        private long ejectionNanos = TimeUnit.SECONDS.toNanos(30);
+        private long healthCheckIntervalNanos = 0;
+        private long decayNanos = TimeUnit.SECONDS.toNanos(10);
+        private LongSupplier ticker = System::nanoTime;
+
+        private Builder() {
+        }
+
+        /**
+         * @param baseUrl API base URL of one replica
+         */
+        public Builder endpoint(String baseUrl) {
+            if (baseUrl == null || baseUrl.trim().isEmpty()) {
+                throw new IllegalArgumentException("baseUrl cannot be null or empty");
+            }
+            baseUrls.add(baseUrl.trim().replaceAll("/$", ""));
+            return this;
+        }
+
+        /**
+         * @param strategy Selection of the replica for each request, peak EWMA by default
+         */
+        public Builder strategy(LoadBalancingStrategy strategy) {
+            if (strategy == null) {
+                throw new IllegalArgumentException("strategy cannot be null");
+            }
+            this.strategy = strategy;
+            return this;
+        }
+
+        /**
+         * @param maxFailures Consecutive failures after which a replica is ejected
+         */
+        public Builder maxFailures(int maxFailures) {
+            if (maxFailures < 1) {
+                throw new IllegalArgumentException("maxFailures must be at least 1");
+            }
+            this.maxFailures = maxFailures;
+            return this;
+        }
+
+        /**
+         * @param ejectionTime Time an ejected replica stays out of rotation unless a health check restores it
+         * @param unit Time unit of ejectionTime
+         */
+        public Builder ejectionTime(long ejectionTime, TimeUnit unit) {
+            if (ejectionTime <= 0) {
+                throw new IllegalArgumentException("ejectionTime must be positive");
+            }
+            this.ejectionNanos = unit.toNanos(ejectionTime);
+            return this;
+        }
+
+        /**
+         * @param interval Time between health checks of every replica, 0 disables active health checks (default)
+         * @param unit Time unit of interval
+         */
+        public Builder healthCheckInterval(long interval, TimeUnit unit) {
+            if (interval < 0) {
+                throw new IllegalArgumentException("healthCheckInterval cannot be negative");
+            }
+            this.healthCheckIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        Builder ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public EndpointGroup build() {
+            if (baseUrls.isEmpty()) {
+                throw new IllegalArgumentException("At least one endpoint is required");
+            }
+            return new EndpointGroup(this);
+        }
+    }
+}
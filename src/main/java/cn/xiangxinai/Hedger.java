@@ -0,0 +1,273 @@
+package cn.xiangxinai;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Runs HTTP calls under a {@link HedgingPolicy}: tracks their latencies and the hedge budget, and races slow calls
+ * with a duplicate
+ */
+final class Hedger {
+
+    private static final int WINDOW_SIZE = 1024;
+    private static final int MIN_SAMPLES = 20;
+    private static final int RECOMPUTE_INTERVAL = 32;
+    // The budget is counted in percent of a hedge, unused budget is capped so that a quiet period cannot save up
+    // a burst of hedges
+    private static final double HEDGE_COST = 100;
+    private static final double MAX_BUDGET = 10 * HEDGE_COST;
+
+    private final HedgingPolicy policy;
+    private final Supplier<ScheduledExecutorService> scheduler;
+    private final LongSupplier ticker;
+    private final LongAdder hedgeCount = new LongAdder();
+
+    // Guarded by this
+    private final long[] latencies = new long[WINDOW_SIZE];
+    private int latencyIndex;
+    private int latencyCount;
+    private int samplesSinceRecompute;
+    private double budget;
+    private volatile long delayNanos;
+
+    Hedger(HedgingPolicy policy, Supplier<ScheduledExecutorService> scheduler, LongSupplier ticker) {
+        this.policy = policy;
+        this.scheduler = scheduler;
+        this.ticker = ticker;
+        this.delayNanos = policy.getMaxDelayNanos();
+    }
+
+    /**
+     * @return Time after which a call is raced by a duplicate
+     */
+    long hedgeDelayNanos() {
+        return delayNanos;
+    }
+
+    /**
+     * @return Number of duplicates sent
+     */
+    long hedgeCount() {
+        return hedgeCount.sum();
+    }
+
+    /**
+     * Record the latency of a completed call and earn its share of the hedge budget
+     */
+    synchronized void recordLatency(long latencyNanos) {
+        budget = Math.min(MAX_BUDGET, budget + policy.getBudgetPercent());
+        latencies[latencyIndex] = latencyNanos;
+        latencyIndex = (latencyIndex + 1) % WINDOW_SIZE;
+        if (latencyCount < WINDOW_SIZE) {
+            latencyCount++;
+        }
+        if (latencyCount < MIN_SAMPLES) {
+            return;
+        }
+        // Sorting the window on every sample would cost more than the requests it speeds up
+        if (latencyCount > MIN_SAMPLES && ++samplesSinceRecompute < RECOMPUTE_INTERVAL) {
+            return;
+        }
+        samplesSinceRecompute = 0;
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(policy.getDelayPercentile() / 100 * latencyCount) - 1;
+        long percentile = sorted[Math.max(0, Math.min(latencyCount - 1, rank))];
+        delayNanos = Math.max(policy.getMinDelayNanos(), Math.min(policy.getMaxDelayNanos(), percentile));
+    }
+
+    /**
+     * Spend one hedge of the budget
+     *
+     * @return Whether a duplicate may be sent
+     */
+    synchronized boolean tryAcquireHedge() {
+        if (budget < HEDGE_COST) {
+            return false;
+        }
+        budget -= HEDGE_COST;
+        hedgeCount.increment();
+        return true;
+    }
+
+    /**
+     * Enqueue the call, racing it with a duplicate once the hedge delay has passed
+     *
+     * @param deadline Per-call deadline of the call, the duplicate gets only the time left of it
+     * @param callback Receives exactly one result: the first response, or the last failure once every sent
+     *                 request failed
+     */
+    HedgedCall enqueue(Call call, Deadline deadline, Callback callback) {
+        HedgedCall hedgedCall = new HedgedCall(call, deadline, callback);
+        hedgedCall.start();
+        return hedgedCall;
+    }
+
+    /**
+     * Blocking variant of {@link #enqueue(Call, Deadline, Callback)}
+     */
+    Response execute(Call call, Deadline deadline) throws IOException {
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        HedgedCall hedgedCall = enqueue(call, deadline, new Callback() {
+            @Override
+            public void onFailure(Call failedCall, IOException e) {
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call respondedCall, Response response) {
+                if (!result.complete(response)) {
+                    response.close();
+                }
+            }
+        });
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            hedgedCall.cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * A call and its optional duplicate, completed by the first response
+     */
+    final class HedgedCall implements Callback {
+
+        private final Call primary;
+        private final Deadline deadline;
+        private final Callback callback;
+        private final long startNanos;
+
+        // Guarded by this
+        private Call hedge;
+        private ScheduledFuture<?> hedgeTask;
+        private int sent;
+        private int failed;
+        private boolean finished;
+        private boolean cancelled;
+
+        private HedgedCall(Call primary, Deadline deadline, Callback callback) {
+            this.primary = primary;
+            this.deadline = deadline;
+            this.callback = callback;
+            this.startNanos = ticker.getAsLong();
+        }
+
+        private void start() {
+            synchronized (this) {
+                sent = 1;
+            }
+            primary.enqueue(this);
+            ScheduledFuture<?> task = scheduler.get().schedule(this::sendHedge, delayNanos, TimeUnit.NANOSECONDS);
+            synchronized (this) {
+                if (finished || cancelled) {
+                    task.cancel(false);
+                } else {
+                    hedgeTask = task;
+                }
+            }
+        }
+
+        private void sendHedge() {
+            Call duplicate;
+            synchronized (this) {
+                // A duplicate sent with no time left of the deadline could only fail
+                long remainingNanos = deadline.remainingNanos();
+                if (finished || cancelled || remainingNanos <= 0 || !tryAcquireHedge()) {
+                    return;
+                }
+                duplicate = primary.clone();
+                if (deadline.isBounded()) {
+                    // A clone starts with the client's call timeout, it must not outlive the original's deadline
+                    long attemptNanos = primary.timeout().timeoutNanos();
+                    duplicate.timeout().timeout(attemptNanos > 0 ? Math.min(attemptNanos, remainingNanos)
+                            : remainingNanos, TimeUnit.NANOSECONDS);
+                }
+                hedge = duplicate;
+                sent = 2;
+            }
+            duplicate.enqueue(this);
+        }
+
+        /**
+         * Cancel every request sent, the callback still receives the resulting failure
+         */
+        void cancel() {
+            Call duplicate;
+            synchronized (this) {
+                cancelled = true;
+                duplicate = hedge;
+                if (hedgeTask != null) {
+                    hedgeTask.cancel(false);
+                }
+            }
+            primary.cancel();
+            if (duplicate != null) {
+                duplicate.cancel();
+            }
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) throws IOException {
+            Call loser;
+            synchronized (this) {
+                if (finished) {
+                    response.close();
+                    return;
+                }
+                finished = true;
+                loser = call == primary ? hedge : primary;
+                if (hedgeTask != null) {
+                    hedgeTask.cancel(false);
+                }
+            }
+            if (loser != null) {
+                loser.cancel();
+            }
+            recordLatency(ticker.getAsLong() - startNanos);
+            callback.onResponse(call, response);
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                // The other request may still answer
+                if (++failed < sent) {
+                    return;
+                }
+                finished = true;
+                if (hedgeTask != null) {
+                    hedgeTask.cancel(false);
+                }
+            }
+            callback.onFailure(call, e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package cn.xiangxinai;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hedging of prompt checks - a slow request is raced by a duplicate, the first response wins
+ *
+ * <p>Prompt checks only read, sending one twice is safe. When the response to a prompt check has not arrived
+ * after the {@code delayPercentile} of recent prompt check latencies, the client sends the same request once more
+ * and uses whichever response arrives first; the other request is cancelled. Only the slowest requests are hedged,
+ * which cuts the tail latency at a small cost in extra traffic.
+ *
+ * <p>The hedge delay is kept between {@code minDelay} and {@code maxDelay}; until enough latencies were observed,
+ * {@code maxDelay} is used. Hedges are capped by a budget: each prompt check earns {@code budgetPercent} percent of
+ * a hedge, a hedge spends one, so while the service is slow across the board hedging adds at most that share of
+ * traffic instead of doubling the load.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * HedgingPolicy hedging = HedgingPolicy.builder()
+ *     .delayPercentile(95)
+ *     .minDelay(20, TimeUnit.MILLISECONDS)
+ *     .maxDelay(1, TimeUnit.SECONDS)
+ *     .budgetPercent(5)
+ *     .build();
+ *
+ * AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("your-api-key")
+ *     .hedging(hedging)
+ *     .build();
+ * }</pre>
+ */
+public final class HedgingPolicy {
+
+    private final double delayPercentile;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final double budgetPercent;
+
+    private HedgingPolicy(Builder builder) {
+        this.delayPercentile = builder.delayPercentile;
+        this.minDelayNanos = builder.minDelayNanos;
+        this.maxDelayNanos = Math.max(builder.minDelayNanos, builder.maxDelayNanos);
+        this.budgetPercent = builder.budgetPercent;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Default policy: hedge after the 95th percentile latency, between 10 milliseconds and 2 seconds,
+     *         at most 10% extra requests
+     */
+    public static HedgingPolicy defaults() {
+        return builder().build();
+    }
+
+    public double getDelayPercentile() {
+        return delayPercentile;
+    }
+
+    public long getMinDelayNanos() {
+        return minDelayNanos;
+    }
+
+    public long getMaxDelayNanos() {
+        return maxDelayNanos;
+    }
+
+    public double getBudgetPercent() {
+        return budgetPercent;
+    }
+
+    @Override
+    public String toString() {
+        return "HedgingPolicy{" +
+                "delayPercentile=" + delayPercentile +
+                ", minDelayNanos=" + minDelayNanos +
+                ", maxDelayNanos=" + maxDelayNanos +
+                ", budgetPercent=" + budgetPercent +
+                '}';
+    }
+
+    /**
+     * Builder of {@link HedgingPolicy}
+     */
+    public static final class Builder {
+
+        private double delayPercentile = 95;
+        private long minDelayNanos = TimeUnit.MILLISECONDS.toNanos(10);
+        private long maxDelayNanos = TimeUnit.SECONDS.toNanos(2);
+        private double budgetPercent = 10;
+
+        private Builder() {
+        }
+
+        /**
+         * @param delayPercentile Percentile of recent latencies after which a duplicate is sent
+         */
+        public Builder delayPercentile(double delayPercentile) {
+            if (!(delayPercentile > 0 && delayPercentile < 100)) {
+                throw new IllegalArgumentException("delayPercentile must be between 0 and 100");
+            }
+            this.delayPercentile = delayPercentile;
+            return this;
+        }
+
+        /**
+         * @param minDelay Lower bound of the hedge delay
+         * @param unit Time unit of minDelay
+         */
+        public Builder minDelay(long minDelay, TimeUnit unit) {
+            if (minDelay < 0) {
+                throw new IllegalArgumentException("minDelay cannot be negative");
+            }
+            this.minDelayNanos = unit.toNanos(minDelay);
+            return this;
+        }
+
+        /**
+         * @param maxDelay Upper bound of the hedge delay, also used until enough latencies were observed
+         * @param unit Time unit of maxDelay
+         */
+        public Builder maxDelay(long maxDelay, TimeUnit unit) {
+            if (maxDelay <= 0) {
+                throw new IllegalArgumentException("maxDelay must be positive");
+            }
+            this.maxDelayNanos = unit.toNanos(maxDelay);
+            return this;
+        }
+
+        /**
+         * @param budgetPercent Maximum share of hedges among prompt checks, in percent
+         */
+        public Builder budgetPercent(double budgetPercent) {
+            if (!(budgetPercent > 0 && budgetPercent <= 100)) {
+                throw new IllegalArgumentException("budgetPercent must be between 0 and 100");
+            }
+            this.budgetPercent = budgetPercent;
+            return this;
+        }
+
+        public HedgingPolicy build() {
+            return new HedgingPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package cn.xiangxinai;
+
+import okhttp3.Protocol;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * HTTP protocol the transport talks to the guardrails API
+ *
+ * <p>Over HTTP/2 all concurrent calls to a host are multiplexed as streams over one connection, so hundreds of
+ * in-flight async checks need a handful of TCP connections instead of one socket each. The number of calls running
+ * at the same time is still bounded by {@link ConcurrencyConfig#getMaxRequestsPerHost()}; raise it to make use of
+ * the multiplexing. A second connection is only opened once the server's limit of concurrent streams is reached.
+ *
+ * <p>Example for a self-hosted server reached over plain HTTP on the internal network:
+ * <pre>{@code
+ * AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("your-api-key")
+ *     .baseUrl("http://guardrails.internal:5001/v1")
+ *     .protocol(HttpProtocol.H2_PRIOR_KNOWLEDGE)
+ *     .concurrency(ConcurrencyConfig.builder().maxRequests(512).maxRequestsPerHost(512).build())
+ *     .build();
+ * }</pre>
+ */
+public enum HttpProtocol {
+
+    /**
+     * HTTP/1.1 only, one connection per concurrent call
+     */
+    HTTP_1_1(Collections.singletonList(Protocol.HTTP_1_1)),
+
+    /**
+     * HTTP/2 negotiated through TLS ALPN on {@code https} URLs, falling back to HTTP/1.1 when the server does not
+     * offer it; plain {@code http} URLs use HTTP/1.1 (default)
+     */
+    HTTP_2(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)),
+
+    /**
+     * Cleartext HTTP/2 (h2c) without upgrade negotiation, for servers known to speak it on {@code http} URLs.
+     * Cannot be used with {@code https} URLs.
+     */
+    H2_PRIOR_KNOWLEDGE(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+
+    private final List<Protocol> protocols;
+
+    HttpProtocol(List<Protocol> protocols) {
+        this.protocols = protocols;
+    }
+
+    List<Protocol> protocols() {
+        return protocols;
+    }
+
+    /**
+     * Fail fast on base URLs the protocol cannot talk to, instead of failing every call
+     *
+     * @param baseUrl Base URL of the client, ignored when endpointGroup is set
+     * @param endpointGroup Replicas of the client, may be null
+     */
+    void checkBaseUrls(String baseUrl, EndpointGroup endpointGroup) {
+        if (this != H2_PRIOR_KNOWLEDGE) {
+            return;
+        }
+        if (endpointGroup == null) {
+            checkCleartext(baseUrl);
+            return;
+        }
+        for (Endpoint endpoint : endpointGroup.getEndpoints()) {
+            checkCleartext(endpoint.getBaseUrl());
+        }
+    }
+
+    private static void checkCleartext(String baseUrl) {
+        if (!baseUrl.regionMatches(true, 0, "http://", 0, 7)) {
+            throw new IllegalArgumentException("H2_PRIOR_KNOWLEDGE requires an http:// base URL, got " + baseUrl);
+        }
+    }
+}
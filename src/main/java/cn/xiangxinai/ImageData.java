@@ -0,0 +1,229 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.ValidationException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.WritableTypeId;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Image of a multimodal check, serialized as a base64 data URI straight from its source into the request body
+ *
+ * <p>Local files are read from disk while the request body is written, so neither the image bytes nor their
+ * base64 text are held in memory; a retried request reads the file again. A passed-through link is sent as it is
+ * for the server to fetch. The MIME type of the data URI is detected from the leading bytes of the image.
+ */
+final class ImageData implements JsonSerializable {
+
+    static final String JPEG = "image/jpeg";
+
+    // Longest signature checked by detectMimeType
+    private static final int HEADER_BYTES = 12;
+
+    private final Path path;
+    private final byte[] bytes;
+    private final String link;
+    private final String mimeType;
+
+    private ImageData(Path path, byte[] bytes, String link, String mimeType) {
+        this.path = path;
+        this.bytes = bytes;
+        this.link = link;
+        this.mimeType = mimeType;
+    }
+
+    /**
+     * @param imagePath Image local path
+     * @param maxBytes Largest image accepted
+     * @throws NoSuchFileException File does not exist
+     * @throws ValidationException Image is larger than maxBytes
+     */
+    static ImageData ofFile(String imagePath, long maxBytes) throws IOException {
+        Path path = Paths.get(imagePath);
+        if (!Files.isRegularFile(path)) {
+            throw new NoSuchFileException(imagePath);
+        }
+        if (Files.size(path) > maxBytes) {
+            throw tooLarge(imagePath, maxBytes);
+        }
+        byte[] header = new byte[HEADER_BYTES];
+        int length = 0;
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while (length < header.length && (read = in.read(header, length, header.length - length)) != -1) {
+                length += read;
+            }
+        }
+        return new ImageData(path, null, null, detectMimeType(header, length));
+    }
+
+    static ImageData ofBytes(byte[] bytes) {
+        return ofBytes(bytes, detectMimeType(bytes, bytes.length));
+    }
+
+    static ImageData ofBytes(byte[] bytes, String mimeType) {
+        return new ImageData(null, bytes, null, mimeType);
+    }
+
+    /**
+     * @param link HTTP(S) link the server downloads the image from
+     */
+    static ImageData ofLink(String link) {
+        return new ImageData(null, null, link, null);
+    }
+
+    /**
+     * @return Whether the image is sent as a link instead of its content
+     */
+    boolean isLink() {
+        return link != null;
+    }
+
+    /**
+     * @return MIME type of the image, null for a link
+     */
+    String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * @return Stream of the image content, closed by the caller
+     */
+    InputStream open() throws IOException {
+        return path != null ? Files.newInputStream(path) : new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * Detect the image format from its signature, images of other formats are labelled JPEG as before
+     */
+    static String detectMimeType(byte[] header, int length) {
+        if (startsWith(header, length, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(header, length, 0, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (startsWith(header, length, 0, 'R', 'I', 'F', 'F') && startsWith(header, length, 8, 'W', 'E', 'B', 'P')) {
+            return "image/webp";
+        }
+        if (startsWith(header, length, 0, 'B', 'M')) {
+            return "image/bmp";
+        }
+        return JPEG;
+    }
+
+    private static boolean startsWith(byte[] header, int length, int offset, int... signature) {
+        if (length < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((header[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider serializers) throws IOException {
+        if (link != null) {
+            generator.writeString(link);
+            return;
+        }
+        try (InputStream in = open()) {
+            generator.writeString(new DataUriReader("data:" + mimeType + ";base64,", in), -1);
+        }
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator generator, SerializerProvider serializers, TypeSerializer typeSer)
+            throws IOException {
+        WritableTypeId typeId = typeSer.writeTypePrefix(generator,
+                typeSer.typeId(this, JsonToken.VALUE_STRING));
+        serialize(generator, serializers);
+        typeSer.writeTypeSuffix(generator, typeId);
+    }
+
+    static ValidationException tooLarge(String imagePath, long maxBytes) {
+        return new ValidationException("Image " + imagePath + " is larger than " + maxBytes + " bytes");
+    }
+
+    /**
+     * Characters of the data URI: the prefix, then the base64 encoding of the stream, one chunk at a time
+     */
+    private static final class DataUriReader extends Reader {
+
+        // A multiple of 3 bytes, so padding only appears after the last chunk
+        private static final int CHUNK_BYTES = 3 * 1024;
+
+        private final InputStream in;
+        private final byte[] bytes = new byte[CHUNK_BYTES];
+        private final byte[] encoded = new byte[CHUNK_BYTES / 3 * 4];
+        private char[] chars;
+        private int position;
+        private int limit;
+
+        DataUriReader(String prefix, InputStream in) {
+            this.in = in;
+            this.chars = prefix.toCharArray();
+            this.limit = chars.length;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            int count = Math.min(length, limit - position);
+            System.arraycopy(chars, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        private boolean fill() throws IOException {
+            int count = 0;
+            while (count < CHUNK_BYTES) {
+                int read = in.read(bytes, count, CHUNK_BYTES - count);
+                if (read == -1) {
+                    break;
+                }
+                count += read;
+            }
+            if (count == 0) {
+                return false;
+            }
+            byte[] source = count == CHUNK_BYTES ? bytes : Arrays.copyOf(bytes, count);
+            int encodedLength = Base64.getEncoder().encode(source, encoded);
+            if (chars.length < encoded.length) {
+                chars = new char[encoded.length];
+            }
+            for (int i = 0; i < encodedLength; i++) {
+                chars[i] = (char) encoded[i];
+            }
+            position = 0;
+            limit = encodedLength;
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // The stream is closed by the caller
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.ValidationException;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Downloads images given as HTTP(S) links through the client's connection pool
+ *
+ * <p>Each attempt is bounded by the fetch timeout of {@link ImageOptions}, network errors, 429 and 5xx responses
+ * are retried with the backoff of the client's {@link RetryPolicy}. The body is read up to the image size limit,
+ * a larger image fails with {@link ValidationException} without being downloaded to the end.
+ *
+ * <p>Image hosts are arbitrary servers, so the protocol is always negotiated: with
+ * {@link HttpProtocol#H2_PRIOR_KNOWLEDGE} configured for the API, images are still fetched over HTTP/2 or HTTP/1.1.
+ */
+final class ImageFetcher {
+
+    private final OkHttpClient httpClient;
+    private final ImageOptions options;
+    private final RetryPolicy retryPolicy;
+    private final Supplier<ScheduledExecutorService> scheduler;
+
+    ImageFetcher(OkHttpClient httpClient, ImageOptions options, RetryPolicy retryPolicy,
+                 Supplier<ScheduledExecutorService> scheduler) {
+        this.httpClient = httpClient.protocols().contains(Protocol.H2_PRIOR_KNOWLEDGE)
+                // Shares the connection pool and dispatcher of the API client
+                ? httpClient.newBuilder().protocols(HttpProtocol.HTTP_2.protocols()).build()
+                : httpClient;
+        this.options = options;
+        this.retryPolicy = retryPolicy;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return Fetcher sharing the connection pool, with other options
+     */
+    ImageFetcher withOptions(ImageOptions options) {
+        return new ImageFetcher(httpClient, options, retryPolicy, scheduler);
+    }
+
+    /**
+     * Download the image, blocking the calling thread
+     */
+    byte[] fetch(String url) throws IOException {
+        for (int retry = 0; ; retry++) {
+            Response response;
+            try {
+                response = newCall(url).execute();
+            } catch (IOException e) {
+                if (retry >= options.getFetchRetries()) {
+                    throw e;
+                }
+                sleep(retry);
+                continue;
+            }
+            try (Response responseToClose = response) {
+                if (responseToClose.isSuccessful()) {
+                    return readBody(url, responseToClose.body());
+                }
+                if (!isRetryable(responseToClose.code()) || retry >= options.getFetchRetries()) {
+                    throw httpError(url, responseToClose.code());
+                }
+            }
+            sleep(retry);
+        }
+    }
+
+    /**
+     * Download the image on the dispatcher, cancelling the returned future cancels the download
+     */
+    CompletableFuture<byte[]> fetchAsync(String url) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        attempt(url, 0, future);
+        return future;
+    }
+
+    private void attempt(String url, int retry, CompletableFuture<byte[]> future) {
+        if (future.isDone()) {
+            return;
+        }
+        Call call = newCall(url);
+        future.whenComplete((bytes, throwable) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (retry < options.getFetchRetries()) {
+                    retryLater(url, retry, future);
+                } else {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response responseToClose = response) {
+                    if (responseToClose.isSuccessful()) {
+                        future.complete(readBody(url, responseToClose.body()));
+                    } else if (isRetryable(responseToClose.code()) && retry < options.getFetchRetries()) {
+                        retryLater(url, retry, future);
+                    } else {
+                        future.completeExceptionally(httpError(url, responseToClose.code()));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    private void retryLater(String url, int retry, CompletableFuture<byte[]> future) {
+        scheduler.get().schedule(() -> attempt(url, retry + 1, future), retryPolicy.backoffMillis(retry),
+                TimeUnit.MILLISECONDS);
+    }
+
+    private Call newCall(String url) {
+        // No Authorization header, the API key must not leak to image hosts
+        Call call = httpClient.newCall(new Request.Builder().url(url).get().build());
+        call.timeout().timeout(options.getFetchTimeoutMillis(), TimeUnit.MILLISECONDS);
+        return call;
+    }
+
+    private byte[] readBody(String url, ResponseBody body) throws IOException {
+        long maxBytes = options.getMaxImageBytes();
+        if (body.contentLength() > maxBytes) {
+            throw ImageData.tooLarge(url, maxBytes);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                body.contentLength() > 0 ? (int) body.contentLength() : 8192);
+        byte[] buffer = new byte[8192];
+        try (InputStream in = body.byteStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (out.size() + (long) read > maxBytes) {
+                    throw ImageData.tooLarge(url, maxBytes);
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private void sleep(int retry) throws IOException {
+        try {
+            Thread.sleep(retryPolicy.backoffMillis(retry));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry an image download");
+        }
+    }
+
+    private static boolean isRetryable(int code) {
+        return code == 429 || code >= 500;
+    }
+
+    private static IOException httpError(String url, int code) {
+        return new IOException("HTTP " + code + " downloading image " + url);
+    }
+}
@@ -0,0 +1,325 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.DeadlineExceededException;
+import cn.xiangxinai.exception.ValidationException;
+import cn.xiangxinai.exception.XiangxinAIException;
+import cn.xiangxinai.model.GuardrailRequest;
+import cn.xiangxinai.model.Message;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Loads the images of multimodal checks as configured by {@link ImageOptions}
+ *
+ * <p>Local files are only checked here, they are read while the request is sent. HTTP(S) links are downloaded by
+ * the {@link ImageFetcher}. With a {@code maxDimension}, large images are downscaled by the {@link ImageResizer}.
+ */
+final class ImageLoader {
+
+    private final ImageOptions options;
+    private final ImageFetcher fetcher;
+    private final Supplier<ExecutorService> executor;
+
+    /**
+     * @param executor Shared pool the images are loaded and downscaled on, at most {@code maxParallelism} at a time
+     *                 per call
+     */
+    ImageLoader(ImageOptions options, ImageFetcher fetcher, Supplier<ExecutorService> executor) {
+        this.options = options;
+        this.fetcher = fetcher;
+        this.executor = executor;
+    }
+
+    /**
+     * @param options Options of one call, null for the client's options
+     * @return Loader with the given options
+     */
+    ImageLoader withOptions(ImageOptions options) {
+        if (options == null || options == this.options) {
+            return this;
+        }
+        return new ImageLoader(options, fetcher.withOptions(options), executor);
+    }
+
+    /**
+     * @param imagePath Image local path or HTTP(S) link
+     * @throws ValidationException File not found or image too large
+     * @throws XiangxinAIException Failed to read the image
+     */
+    ImageData load(String imagePath) {
+        ImageData image;
+        try {
+            if (isLink(imagePath)) {
+                image = options.isPassThroughLinks()
+                        ? ImageData.ofLink(imagePath)
+                        : ImageData.ofBytes(fetcher.fetch(imagePath));
+            } else {
+                image = ImageData.ofFile(imagePath, options.getMaxImageBytes());
+            }
+        } catch (IOException e) {
+            throw loadFailure(imagePath, e);
+        }
+        return resize(imagePath, image);
+    }
+
+    /**
+     * Load the images concurrently, failing as soon as one of them fails or the load timeout is up
+     *
+     * @return Images in input order
+     * @throws DeadlineExceededException Images not loaded within the load timeout
+     */
+    List<ImageData> loadAll(List<String> imagePaths) {
+        int size = imagePaths.size();
+        boolean work = false;
+        for (String imagePath : imagePaths) {
+            work |= isDownload(imagePath) || isResized(imagePath);
+        }
+        if (size == 1 || !work) {
+            // Nothing to wait for, local files are only checked here and passed-through links are sent as they are
+            List<ImageData> images = new ArrayList<>();
+            for (String imagePath : imagePaths) {
+                images.add(load(imagePath));
+            }
+            return images;
+        }
+
+        Deadline deadline = Deadline.after(options.getLoadTimeoutMillis(), TimeUnit.MILLISECONDS);
+        CompletionService<Void> completion = new ExecutorCompletionService<>(executor.get());
+        ImageData[] images = new ImageData[size];
+        AtomicInteger nextIndex = new AtomicInteger();
+        List<Future<Void>> workers = new ArrayList<>();
+        try {
+            // Each worker loads images until none are left, bounding this call's share of the pool
+            for (int i = 0, count = Math.min(options.getMaxParallelism(), size); i < count; i++) {
+                workers.add(completion.submit(() -> {
+                    for (int index; (index = nextIndex.getAndIncrement()) < size; ) {
+                        images[index] = load(imagePaths.get(index));
+                    }
+                    return null;
+                }));
+            }
+            for (int done = 0; done < workers.size(); done++) {
+                Future<Void> finished = completion.poll(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+                if (finished == null) {
+                    throw loadTimeout(size);
+                }
+                finished.get();
+            }
+            // Completion of every worker happens-before its future is taken, so the array is fully visible here
+            return new ArrayList<>(Arrays.asList(images));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XiangxinAIException("Image loading interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new XiangxinAIException("Failed to load images: " + cause.getMessage(), cause);
+        } finally {
+            // Interrupts images still loading after a failure or timeout
+            for (Future<Void> worker : workers) {
+                worker.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Load the images without blocking, links are downloaded on the dispatcher with at most
+     * {@code maxParallelism} downloads of this call in flight. Downscaling runs on the loader's executor.
+     *
+     * @return Images in input order, fails with the first failure or when the load timeout is up
+     */
+    CompletableFuture<List<ImageData>> loadAllAsync(List<String> imagePaths, ScheduledExecutorService scheduler) {
+        return new AsyncLoad(imagePaths).start(scheduler);
+    }
+
+    /**
+     * Build the request of a multimodal check
+     */
+    static GuardrailRequest newRequest(String prompt, List<ImageData> images, String model, String userId) {
+        List<Object> content = new ArrayList<>();
+        if (prompt != null && !prompt.trim().isEmpty()) {
+            Map<String, String> textContent = new HashMap<>();
+            textContent.put("type", "text");
+            textContent.put("text", prompt.trim());
+            content.add(textContent);
+        }
+
+        for (ImageData image : images) {
+            Map<String, Object> imageContent = new HashMap<>();
+            imageContent.put("type", "image_url");
+            Map<String, Object> imageUrl = new HashMap<>();
+            imageUrl.put("url", image);
+            imageContent.put("image_url", imageUrl);
+            content.add(imageContent);
+        }
+
+        List<Message> messages = new ArrayList<>();
+        messages.add(new Message("user", content));
+        GuardrailRequest request = new GuardrailRequest(model, messages);
+
+        if (userId != null && !userId.trim().isEmpty()) {
+            if (request.getExtraBody() == null) {
+                request.setExtraBody(new HashMap<>());
+            }
+            request.getExtraBody().put("xxai_app_user_id", userId.trim());
+        }
+        return request;
+    }
+
+    private static boolean isLink(String imagePath) {
+        return imagePath.startsWith("http://") || imagePath.startsWith("https://");
+    }
+
+    private boolean isDownload(String imagePath) {
+        return isLink(imagePath) && !options.isPassThroughLinks();
+    }
+
+    private boolean isResized(String imagePath) {
+        return options.getMaxDimension() > 0 && (!isLink(imagePath) || !options.isPassThroughLinks());
+    }
+
+    private ImageData resize(String imagePath, ImageData image) {
+        if (options.getMaxDimension() == 0) {
+            return image;
+        }
+        try {
+            return ImageResizer.resize(image, options.getMaxDimension(), options.getJpegQuality());
+        } catch (IOException e) {
+            throw loadFailure(imagePath, e);
+        }
+    }
+
+    private static XiangxinAIException loadFailure(String imagePath, IOException e) {
+        if (e instanceof NoSuchFileException) {
+            return new ValidationException("Image file not found: " + imagePath);
+        }
+        return new XiangxinAIException("Failed to encode image " + imagePath + ": " + e.getMessage(), e);
+    }
+
+    private DeadlineExceededException loadTimeout(int size) {
+        return new DeadlineExceededException("Loading " + size + " images took longer than "
+                + options.getLoadTimeoutMillis() + " ms");
+    }
+
+    /**
+     * One non-blocking load of several images; each finished download or downscaling starts the next one
+     */
+    private final class AsyncLoad {
+
+        private final List<String> imagePaths;
+        private final ImageData[] images;
+        private final List<CompletableFuture<?>> pending = new ArrayList<>();
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final CompletableFuture<List<ImageData>> done = new CompletableFuture<>();
+
+        AsyncLoad(List<String> imagePaths) {
+            this.imagePaths = imagePaths;
+            this.images = new ImageData[imagePaths.size()];
+            this.remaining = new AtomicInteger(imagePaths.size());
+        }
+
+        CompletableFuture<List<ImageData>> start(ScheduledExecutorService scheduler) {
+            ScheduledFuture<?> timeout = scheduler.schedule(
+                    () -> done.completeExceptionally(loadTimeout(images.length)),
+                    options.getLoadTimeoutMillis(), TimeUnit.MILLISECONDS);
+            done.whenComplete((result, throwable) -> {
+                timeout.cancel(false);
+                if (throwable != null) {
+                    cancelDownloads();
+                }
+            });
+            for (int i = 0, workers = Math.min(options.getMaxParallelism(), images.length); i < workers; i++) {
+                next();
+            }
+            return done;
+        }
+
+        /**
+         * Start images until a download or downscaling is in flight, its completion continues the loop
+         */
+        private void next() {
+            while (!done.isDone()) {
+                int index = nextIndex.getAndIncrement();
+                if (index >= images.length) {
+                    return;
+                }
+                String imagePath = imagePaths.get(index);
+                CompletableFuture<ImageData> image;
+                if (isDownload(imagePath)) {
+                    CompletableFuture<byte[]> download = fetcher.fetchAsync(imagePath);
+                    track(download);
+                    image = options.getMaxDimension() == 0
+                            ? download.thenApply(ImageData::ofBytes)
+                            : download.thenApplyAsync(bytes -> resize(imagePath, ImageData.ofBytes(bytes)),
+                                    executor.get());
+                } else if (isResized(imagePath)) {
+                    // Keeps decoding off the calling thread
+                    image = CompletableFuture.supplyAsync(() -> load(imagePath), executor.get());
+                } else {
+                    try {
+                        loaded(index, load(imagePath));
+                    } catch (RuntimeException e) {
+                        done.completeExceptionally(e);
+                    }
+                    continue;
+                }
+
+                track(image);
+                image.whenComplete((loadedImage, throwable) -> {
+                    if (throwable == null) {
+                        loaded(index, loadedImage);
+                        next();
+                        return;
+                    }
+                    Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                    done.completeExceptionally(cause instanceof IOException
+                            ? loadFailure(imagePath, (IOException) cause) : cause);
+                });
+                return;
+            }
+        }
+
+        private void track(CompletableFuture<?> future) {
+            synchronized (pending) {
+                pending.add(future);
+            }
+        }
+
+        private void loaded(int index, ImageData image) {
+            images[index] = image;
+            if (remaining.decrementAndGet() == 0) {
+                // Every slot was written before its decrement, the last one sees them all
+                done.complete(new ArrayList<>(Arrays.asList(images)));
+            }
+        }
+
+        private void cancelDownloads() {
+            synchronized (pending) {
+                for (CompletableFuture<?> future : pending) {
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package cn.xiangxinai;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options of loading the images of multimodal checks
+ *
+ * <p>{@code checkPromptImages} loads its images concurrently, at most {@code maxParallelism} at a time, and fails
+ * with {@link cn.xiangxinai.exception.DeadlineExceededException} when they are not all loaded within
+ * {@code loadTimeout}. The images are sent in the order they were given either way. An image larger than
+ * {@code maxImageBytes} is rejected with {@link cn.xiangxinai.exception.ValidationException}.
+ *
+ * <p>Images given as HTTP(S) links are downloaded through the client's connection pool, without the API key. Every
+ * download attempt is bounded by {@code fetchTimeout}; network errors, 429 and 5xx responses are retried up to
+ * {@code fetchRetries} times with the backoff of the client's {@link RetryPolicy}. With {@code passThroughLinks},
+ * links are not downloaded at all but sent to the server as they are, which fetches them itself; use it for images
+ * on hosts the server can reach, such as public CDNs. Local files are always encoded by the client.
+ *
+ * <p>With {@code maxDimension}, images wider or taller than that many pixels are downscaled to fit and re-encoded
+ * as JPEG at {@code jpegQuality} before they are sent. Smaller images and passed-through links are sent unchanged.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * XiangxinAIClient client = XiangxinAIClient.builder("your-api-key")
+ *     .images(ImageOptions.builder()
+ *         .maxParallelism(8)
+ *         .maxImageBytes(20 * 1024 * 1024)
+ *         .loadTimeout(10, TimeUnit.SECONDS)
+ *         .fetchTimeout(5, TimeUnit.SECONDS)
+ *         .fetchRetries(1)
+ *         .maxDimension(1536)
+ *         .build())
+ *     .build();
+ * }</pre>
+ */
+public final class ImageOptions {
+
+    /**
+     * 4 images loaded at a time, 32 MiB per image, 30 seconds to load all images of a check, 10 seconds per
+     * download attempt and 2 retries, links downloaded by the client, no downscaling
+     */
+    public static final ImageOptions DEFAULT = builder().build();
+
+    private final int maxParallelism;
+    private final long maxImageBytes;
+    private final long loadTimeoutMillis;
+    private final long fetchTimeoutMillis;
+    private final int fetchRetries;
+    private final boolean passThroughLinks;
+    private final int maxDimension;
+    private final float jpegQuality;
+
+    private ImageOptions(Builder builder) {
+        this.maxParallelism = builder.maxParallelism;
+        this.maxImageBytes = builder.maxImageBytes;
+        this.loadTimeoutMillis = builder.loadTimeoutMillis;
+        this.fetchTimeoutMillis = builder.fetchTimeoutMillis;
+        this.fetchRetries = builder.fetchRetries;
+        this.passThroughLinks = builder.passThroughLinks;
+        this.maxDimension = builder.maxDimension;
+        this.jpegQuality = builder.jpegQuality;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Maximum number of images loaded at the same time
+     */
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
+
+    /**
+     * @return Largest image in bytes that is accepted
+     */
+    public long getMaxImageBytes() {
+        return maxImageBytes;
+    }
+
+    /**
+     * @return Time to load all images of one check
+     */
+    public long getLoadTimeoutMillis() {
+        return loadTimeoutMillis;
+    }
+
+    /**
+     * @return Time of one download attempt of an image link, from start to end
+     */
+    public long getFetchTimeoutMillis() {
+        return fetchTimeoutMillis;
+    }
+
+    /**
+     * @return Retries of a failed image download
+     */
+    public int getFetchRetries() {
+        return fetchRetries;
+    }
+
+    /**
+     * @return Whether HTTP(S) links are sent to the server as they are instead of being downloaded
+     */
+    public boolean isPassThroughLinks() {
+        return passThroughLinks;
+    }
+
+    /**
+     * @return Largest width or height in pixels of a sent image, 0 if images are not downscaled
+     */
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+
+    /**
+     * @return JPEG quality of downscaled images, between 0 and 1
+     */
+    public float getJpegQuality() {
+        return jpegQuality;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageOptions{" +
+                "maxParallelism=" + maxParallelism +
+                ", maxImageBytes=" + maxImageBytes +
+                ", loadTimeoutMillis=" + loadTimeoutMillis +
+                ", fetchTimeoutMillis=" + fetchTimeoutMillis +
+                ", fetchRetries=" + fetchRetries +
+                ", passThroughLinks=" + passThroughLinks +
+                ", maxDimension=" + maxDimension +
+                ", jpegQuality=" + jpegQuality +
+                '}';
+    }
+
+    /**
+     * Builder of {@link ImageOptions}
+     */
+    public static final class Builder {
+
+        private int maxParallelism = 4;
+        private long maxImageBytes = 32L * 1024 * 1024;
+        private long loadTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+        private long fetchTimeoutMillis = TimeUnit.SECONDS.toMillis(10);
+        private int fetchRetries = 2;
+        private boolean passThroughLinks = false;
+        private int maxDimension = 0;
+        private float jpegQuality = 0.85f;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxParallelism Maximum number of images loaded at the same time
+         */
+        public Builder maxParallelism(int maxParallelism) {
+            if (maxParallelism < 1) {
+                throw new IllegalArgumentException("maxParallelism must be at least 1");
+            }
+            this.maxParallelism = maxParallelism;
+            return this;
+        }
+
+        /**
+         * @param maxImageBytes Largest image in bytes that is accepted
+         */
+        public Builder maxImageBytes(long maxImageBytes) {
+            if (maxImageBytes < 1) {
+                throw new IllegalArgumentException("maxImageBytes must be positive");
+            }
+            this.maxImageBytes = maxImageBytes;
+            return this;
+        }
+
+        /**
+         * @param timeout Time to load all images of one check
+         * @param unit Time unit of timeout
+         */
+        public Builder loadTimeout(long timeout, TimeUnit unit) {
+            if (timeout <= 0) {
+                throw new IllegalArgumentException("loadTimeout must be positive");
+            }
+            this.loadTimeoutMillis = Math.max(1, unit.toMillis(timeout));
+            return this;
+        }
+
+        /**
+         * @param timeout Time of one download attempt of an image link, from start to end
+         * @param unit Time unit of timeout
+         */
+        public Builder fetchTimeout(long timeout, TimeUnit unit) {
+            if (timeout <= 0) {
+                throw new IllegalArgumentException("fetchTimeout must be positive");
+            }
+            this.fetchTimeoutMillis = Math.max(1, unit.toMillis(timeout));
+            return this;
+        }
+
+        /**
+         * @param fetchRetries Retries of a failed image download, 0 disables retries
+         */
+        public Builder fetchRetries(int fetchRetries) {
+            if (fetchRetries < 0) {
+                throw new IllegalArgumentException("fetchRetries cannot be negative");
+            }
+            this.fetchRetries = fetchRetries;
+            return this;
+        }
+
+        /**
+         * @param passThroughLinks Send HTTP(S) links to the server as they are for it to fetch, instead of
+         *                         downloading and base64-encoding them in the client
+         */
+        public Builder passThroughLinks(boolean passThroughLinks) {
+            this.passThroughLinks = passThroughLinks;
+            return this;
+        }
+
+        /**
+         * @param maxDimension Largest width or height in pixels of a sent image, larger images are downscaled;
+         *                     0 disables downscaling
+         */
+        public Builder maxDimension(int maxDimension) {
+            if (maxDimension < 0) {
+                throw new IllegalArgumentException("maxDimension cannot be negative");
+            }
+            this.maxDimension = maxDimension;
+            return this;
+        }
+
+        /**
+         * @param jpegQuality JPEG quality of downscaled images, greater than 0 and at most 1
+         */
+        public Builder jpegQuality(float jpegQuality) {
+            if (!(jpegQuality > 0 && jpegQuality <= 1)) {
+                throw new IllegalArgumentException("jpegQuality must be greater than 0 and at most 1");
+            }
+            this.jpegQuality = jpegQuality;
+            return this;
+        }
+
+        public ImageOptions build() {
+            return new ImageOptions(this);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package cn.xiangxinai;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * Downscales images larger than the {@code maxDimension} of {@link ImageOptions} and re-encodes them as JPEG
+ *
+ * <p>Images within the limit are sent unchanged, as are images in a format ImageIO cannot decode, such as WebP
+ * without a plugin. Large images are decoded with subsampling, so a photo of several thousand pixels is never held
+ * in memory at full resolution.
+ */
+final class ImageResizer {
+
+    private ImageResizer() {
+    }
+
+    /**
+     * @param image Image to downscale
+     * @param maxDimension Largest width or height in pixels
+     * @param jpegQuality JPEG quality of a downscaled image, between 0 and 1
+     * @return Downscaled JPEG image, or the given image when it is not larger than maxDimension
+     */
+    static ImageData resize(ImageData image, int maxDimension, float jpegQuality) throws IOException {
+        if (image.isLink()) {
+            return image;
+        }
+        BufferedImage decoded;
+        try (InputStream in = image.open();
+             ImageInputStream input = new MemoryCacheImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return image;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                if (longest <= maxDimension) {
+                    return image;
+                }
+                // Decode every n-th pixel, leaving less than a halving to the smooth scaling below
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = longest / maxDimension;
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                decoded = reader.read(0, param);
+            } catch (IIOException e) {
+                // Variants the reader does not support, e.g. CMYK JPEG, are left to the server
+                return image;
+            } finally {
+                reader.dispose();
+            }
+        }
+        return ImageData.ofBytes(encodeJpeg(scale(decoded, maxDimension), jpegQuality), ImageData.JPEG);
+    }
+
+    private static BufferedImage scale(BufferedImage image, int maxDimension) {
+        double factor = (double) maxDimension / Math.max(image.getWidth(), image.getHeight());
+        int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // JPEG has no alpha channel, transparent pixels become white
+            graphics.drawImage(image, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = new MemoryCacheImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
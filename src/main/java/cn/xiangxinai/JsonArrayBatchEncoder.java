@@ -0,0 +1,49 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.XiangxinAIException;
+import cn.xiangxinai.model.GuardrailRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Default {@link BatchEncoder}: a JSON array of requests in, a JSON array of responses out
+ */
+final class JsonArrayBatchEncoder implements BatchEncoder {
+
+    private final String endpoint;
+
+    JsonArrayBatchEncoder(String endpoint) {
+        if (endpoint == null || endpoint.trim().isEmpty()) {
+            throw new IllegalArgumentException("endpoint cannot be null or empty");
+        }
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    @Override
+    public Object encode(List<GuardrailRequest> requests) {
+        return requests;
+    }
+
+    @Override
+    public List<JsonNode> decode(JsonNode response) {
+        if (response == null || !response.isArray()) {
+            throw new XiangxinAIException("Batch response is not a JSON array");
+        }
+        List<JsonNode> results = new ArrayList<>(response.size());
+        for (JsonNode result : response) {
+            results.add(result);
+        }
+        return results;
+    }
+
+    @Override
+    public String toString() {
+        return "JsonArrayBatchEncoder{endpoint='" + endpoint + "'}";
+    }
+}
@@ -0,0 +1,121 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.model.GuardrailRequest;
+import cn.xiangxinai.model.GuardrailResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, thread-safe JSON codec shared by clients
+ * 
+ * <p>Holds readers and writers for the model classes, built once so that Jackson introspection and serializer
+ * lookup happen a single time per codec instead of once per client. All clients use {@link #defaultCodec()}
+ * unless another codec is passed to their builder, so creating one client per tenant key does not repeat
+ * that warm-up.
+ * 
+ * <p>Extra Jackson modules can be plugged in, e.g. Blackbird, to replace reflection with generated accessors
+ * on the hot serialization path. The module dependency has to be added by the application:
+ * <pre>{@code
+ * JsonCodec codec = JsonCodec.builder()
+ *     .addModule(new BlackbirdModule())
+ *     .build();
+ * 
+ * XiangxinAIClient client = XiangxinAIClient.builder("your-api-key")
+ *     .codec(codec)
+ *     .build();
+ * }</pre>
+ */
+public final class JsonCodec {
+    
+    private static final JsonCodec DEFAULT = builder().build();
+    
+    private final ObjectMapper objectMapper;
+    private final ObjectReader responseReader;
+    private final ObjectReader mapReader;
+    private final ObjectWriter requestWriter;
+    private final ObjectWriter writer;
+    
+    private JsonCodec(Builder builder) {
+        // The mapper is private and never reconfigured after this point, which keeps the codec thread-safe
+        this.objectMapper = new ObjectMapper();
+        for (Module module : builder.modules) {
+            objectMapper.registerModule(module);
+        }
+        this.responseReader = objectMapper.readerFor(GuardrailResponse.class);
+        this.mapReader = objectMapper.readerFor(Map.class);
+        this.requestWriter = objectMapper.writerFor(GuardrailRequest.class);
+        this.writer = objectMapper.writer();
+    }
+    
+    /**
+     * @return The codec shared by all clients that are not configured with their own codec
+     */
+    public static JsonCodec defaultCodec() {
+        return DEFAULT;
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    /**
+     * Get the pre-built reader for the response type
+     */
+    ObjectReader readerFor(Class<?> type) {
+        if (type == GuardrailResponse.class) {
+            return responseReader;
+        }
+        if (type == Map.class) {
+            return mapReader;
+        }
+        return objectMapper.readerFor(type);
+    }
+    
+    /**
+     * Get the pre-built writer for the request payload
+     */
+    ObjectWriter writerFor(Object value) {
+        return value instanceof GuardrailRequest ? requestWriter : writer;
+    }
+    
+    JsonNode readTree(String json) throws IOException {
+        return objectMapper.readTree(json);
+    }
+    
+    <T> T treeToValue(JsonNode node, Class<T> type) throws IOException {
+        return readerFor(type).readValue(node);
+    }
+    
+    /**
+     * Builder of {@link JsonCodec}
+     */
+    public static final class Builder {
+        
+        private final List<Module> modules = new ArrayList<>();
+        
+        private Builder() {
+        }
+        
+        /**
+         * @param module Jackson module to register, e.g. Blackbird or Afterburner
+         */
+        public Builder addModule(Module module) {
+            if (module == null) {
+                throw new IllegalArgumentException("module cannot be null");
+            }
+            modules.add(module);
+            return this;
+        }
+        
+        public JsonCodec build() {
+            return new JsonCodec(this);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package cn.xiangxinai;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Request body that serializes the JSON payload straight into the HTTP sink
+ * 
+ * <p>The payload is never materialized as a String or byte array, which matters for long conversations and
+ * base64 images. The body is written with chunked transfer encoding because its length is not known up front,
+ * and it is serialized again if OkHttp needs to replay it.
+ */
+final class JsonRequestBody extends RequestBody {
+    
+    private static final MediaType JSON = MediaType.get("application/json");
+    
+    private final JsonCodec codec;
+    private final Object value;
+    
+    JsonRequestBody(JsonCodec codec, Object value) {
+        this.codec = codec;
+        this.value = value;
+    }
+    
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+    
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        write(sink.outputStream());
+    }
+    
+    /**
+     * Whether the serialized payload has at least the given number of bytes, serializing no more than that
+     */
+    boolean isAtLeast(long bytes) throws IOException {
+        if (bytes == 0) {
+            return true;
+        }
+        CountingOutputStream counter = new CountingOutputStream(bytes);
+        try {
+            write(counter);
+        } catch (IOException e) {
+            if (!counter.reachedLimit()) {
+                throw e;
+            }
+        }
+        return counter.reachedLimit();
+    }
+    
+    private void write(OutputStream out) throws IOException {
+        ObjectWriter writer = codec.writerFor(value);
+        JsonGenerator generator = writer.createGenerator(out, JsonEncoding.UTF8);
+        // The sink belongs to OkHttp, closing the generator must only flush it
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        try {
+            if (value == null) {
+                generator.writeStartObject();
+                generator.writeEndObject();
+            } else {
+                writer.writeValue(generator, value);
+            }
+        } finally {
+            generator.close();
+        }
+    }
+    
+    /**
+     * Discards the bytes written to it and stops the serialization once the limit is reached
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        
+        private final long limit;
+        private long count;
+        
+        CountingOutputStream(long limit) {
+            this.limit = limit;
+        }
+        
+        boolean reachedLimit() {
+            return count >= limit;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            write(null, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count += len;
+            if (count >= limit) {
+                throw new IOException("Size limit of " + limit + " bytes reached");
+            }
+        }
+    }
+}
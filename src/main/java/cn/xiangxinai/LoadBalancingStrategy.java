@@ -0,0 +1,75 @@
+package cn.xiangxinai;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selects the replica of an {@link EndpointGroup} that receives the next request
+ *
+ * <p>Custom strategies can select by the statistics of {@link Endpoint}:
+ * <pre>{@code
+ * LoadBalancingStrategy fewestInFlight = candidates -> Collections.min(candidates,
+ *         Comparator.comparingInt(Endpoint::getOutstandingRequests));
+ * }</pre>
+ */
+@FunctionalInterface
+public interface LoadBalancingStrategy {
+
+    /**
+     * @param candidates Replicas in rotation, never empty
+     * @return The replica to send the request to
+     */
+    Endpoint select(List<Endpoint> candidates);
+
+    /**
+     * @return Strategy cycling through the replicas in order
+     */
+    static LoadBalancingStrategy roundRobin() {
+        AtomicInteger next = new AtomicInteger();
+        return candidates -> candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+    }
+
+    /**
+     * @return Strategy picking the replica with the fewest requests in flight, ties are broken at random
+     */
+    static LoadBalancingStrategy leastOutstanding() {
+        return candidates -> {
+            int size = candidates.size();
+            int offset = ThreadLocalRandom.current().nextInt(size);
+            Endpoint best = null;
+            for (int i = 0; i < size; i++) {
+                Endpoint candidate = candidates.get((offset + i) % size);
+                if (best == null || candidate.getOutstandingRequests() < best.getOutstandingRequests()) {
+                    best = candidate;
+                }
+            }
+            return best;
+        };
+    }
+
+    /**
+     * Peak EWMA: of two replicas chosen at random, pick the one with the lower {@link Endpoint#getPeakEwmaCost()}.
+     * Reacts to a replica slowing down within one request, and comparing two random replicas instead of all of
+     * them keeps concurrent clients from stampeding onto the same one.
+     *
+     * @return Strategy balancing by latency and load
+     */
+    static LoadBalancingStrategy peakEwma() {
+        return candidates -> {
+            int size = candidates.size();
+            if (size == 1) {
+                return candidates.get(0);
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first) {
+                second++;
+            }
+            Endpoint a = candidates.get(first);
+            Endpoint b = candidates.get(second);
+            return a.getPeakEwmaCost() <= b.getPeakEwmaCost() ? a : b;
+        };
+    }
+}
@@ -0,0 +1,126 @@
+package cn.xiangxinai;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-batching configuration of {@link AsyncXiangxinAIClient}
+ *
+ * <p>With micro-batching enabled, prompt checks are not sent one by one: the client gathers them for up to
+ * {@code maxLinger} or until {@code maxBatchSize} checks are waiting, sends them as one call to the batch
+ * endpoint and completes each caller's future with its own result. For short prompts the per-request HTTP
+ * overhead dominates, batching trades a few milliseconds of latency for far fewer round trips.
+ *
+ * <p>The API server has to expose a batch endpoint, the wire format is defined by the {@link BatchEncoder}.
+ * A batch holding a single check is sent to the regular endpoint.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("your-api-key")
+ *     .microBatching(MicroBatchConfig.builder()
+ *         .maxBatchSize(32)
+ *         .maxLinger(5, TimeUnit.MILLISECONDS)
+ *         .encoder(BatchEncoder.jsonArray("/guardrails/batch"))
+ *         .build())
+ *     .build();
+ * }</pre>
+ */
+public final class MicroBatchConfig {
+
+    private static final int DEFAULT_MAX_BATCH_SIZE = 32;
+    private static final long DEFAULT_MAX_LINGER_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final String DEFAULT_ENDPOINT = "/guardrails/batch";
+
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final BatchEncoder encoder;
+
+    private MicroBatchConfig(Builder builder) {
+        this.maxBatchSize = builder.maxBatchSize;
+        this.maxLingerNanos = builder.maxLingerNanos;
+        this.encoder = builder.encoder != null ? builder.encoder : BatchEncoder.jsonArray(DEFAULT_ENDPOINT);
+    }
+
+    /**
+     * Default configuration: batches of up to 32 checks, 5 ms linger, JSON array batches sent to
+     * {@code /guardrails/batch}
+     */
+    public static MicroBatchConfig defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getMaxLingerNanos() {
+        return maxLingerNanos;
+    }
+
+    public BatchEncoder getEncoder() {
+        return encoder;
+    }
+
+    @Override
+    public String toString() {
+        return "MicroBatchConfig{" +
+                "maxBatchSize=" + maxBatchSize +
+                ", maxLingerNanos=" + maxLingerNanos +
+                ", encoder=" + encoder +
+                '}';
+    }
+
+    /**
+     * Builder of {@link MicroBatchConfig}
+     */
+    public static final class Builder {
+
+        private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        private long maxLingerNanos = DEFAULT_MAX_LINGER_NANOS;
+        private BatchEncoder encoder;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxBatchSize Maximum number of checks in one batch call, a full batch is sent immediately
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            if (maxBatchSize < 1) {
+                throw new IllegalArgumentException("maxBatchSize must be at least 1");
+            }
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * @param maxLinger How long the first check of a batch waits for more checks to join
+         * @param unit Time unit of maxLinger
+         */
+        public Builder maxLinger(long maxLinger, TimeUnit unit) {
+            if (maxLinger < 0) {
+                throw new IllegalArgumentException("maxLinger cannot be negative");
+            }
+            this.maxLingerNanos = unit.toNanos(maxLinger);
+            return this;
+        }
+
+        /**
+         * @param encoder Wire format and endpoint of the batch call
+         */
+        public Builder encoder(BatchEncoder encoder) {
+            if (encoder == null) {
+                throw new IllegalArgumentException("encoder cannot be null");
+            }
+            this.encoder = encoder;
+            return this;
+        }
+
+        public MicroBatchConfig build() {
+            return new MicroBatchConfig(this);
+        }
+    }
+}
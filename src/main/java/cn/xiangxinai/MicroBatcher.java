@@ -0,0 +1,210 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.DeadlineExceededException;
+import cn.xiangxinai.exception.XiangxinAIException;
+import cn.xiangxinai.model.GuardrailRequest;
+import cn.xiangxinai.model.GuardrailResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Coalesces individual checks into batch calls
+ *
+ * <p>The first check of a batch starts the linger timer; the batch is sent when the timer fires or as soon as
+ * it is full. The batch call runs with the latest deadline of its checks, each check still fails with
+ * {@link DeadlineExceededException} at its own deadline.
+ */
+final class MicroBatcher implements AutoCloseable {
+
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final BatchEncoder encoder;
+    private final JsonCodec codec;
+    private final BiFunction<Object, Deadline, CompletableFuture<JsonNode>> batchSender;
+    private final BiFunction<GuardrailRequest, Deadline, CompletableFuture<GuardrailResponse>> singleSender;
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    private List<Pending> pending;
+    private ScheduledFuture<?> lingerTask;
+    private boolean closed;
+
+    /**
+     * @param scheduler Timer for the linger and per-check deadlines
+     * @param batchSender Sends an encoded batch body to the batch endpoint
+     * @param singleSender Sends a lone check to the regular endpoint
+     */
+    MicroBatcher(MicroBatchConfig config, JsonCodec codec, ScheduledExecutorService scheduler,
+                 BiFunction<Object, Deadline, CompletableFuture<JsonNode>> batchSender,
+                 BiFunction<GuardrailRequest, Deadline, CompletableFuture<GuardrailResponse>> singleSender) {
+        this.maxBatchSize = config.getMaxBatchSize();
+        this.maxLingerNanos = config.getMaxLingerNanos();
+        this.encoder = config.getEncoder();
+        this.codec = codec;
+        this.batchSender = batchSender;
+        this.singleSender = singleSender;
+        this.scheduler = scheduler;
+        this.pending = new ArrayList<>(maxBatchSize);
+    }
+
+    /**
+     * Add a check to the current batch
+     */
+    CompletableFuture<GuardrailResponse> submit(GuardrailRequest request, Deadline deadline) {
+        Pending item = new Pending(request, deadline);
+        List<Pending> full = null;
+        synchronized (lock) {
+            if (closed) {
+                item.future.completeExceptionally(new XiangxinAIException("Client is closed"));
+                return item.future;
+            }
+            pending.add(item);
+            if (pending.size() >= maxBatchSize) {
+                full = drain();
+            } else if (pending.size() == 1) {
+                lingerTask = scheduler.schedule(this::flush, maxLingerNanos, TimeUnit.NANOSECONDS);
+            }
+            if (deadline.isBounded()) {
+                ScheduledFuture<?> timeout = scheduler.schedule(() -> item.future.completeExceptionally(
+                        new DeadlineExceededException("Request deadline exceeded while batched")),
+                        deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+                item.future.whenComplete((result, throwable) -> timeout.cancel(false));
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return item.future;
+    }
+
+    /**
+     * Send the current batch now, called when the linger timer fires
+     */
+    void flush() {
+        List<Pending> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = drain();
+        }
+        send(batch);
+    }
+
+    private List<Pending> drain() {
+        List<Pending> batch = pending;
+        pending = new ArrayList<>(maxBatchSize);
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+        return batch;
+    }
+
+    private void send(List<Pending> batch) {
+        if (batch.size() == 1) {
+            // Nothing joined during the linger, the regular endpoint avoids the batch envelope
+            Pending item = batch.get(0);
+            singleSender.apply(item.request, item.deadline).whenComplete((result, throwable) -> {
+                if (throwable != null) {
+                    item.future.completeExceptionally(unwrap(throwable));
+                } else {
+                    item.future.complete(result);
+                }
+            });
+            return;
+        }
+
+        List<GuardrailRequest> requests = new ArrayList<>(batch.size());
+        Deadline deadline = batch.get(0).deadline;
+        for (Pending item : batch) {
+            requests.add(item.request);
+            deadline = deadline.latest(item.deadline);
+        }
+
+        CompletableFuture<JsonNode> response;
+        try {
+            response = batchSender.apply(encoder.encode(requests), deadline);
+        } catch (RuntimeException e) {
+            failAll(batch, new XiangxinAIException("Failed to encode batch request: " + e.getMessage(), e));
+            return;
+        }
+        response.whenComplete((root, throwable) -> {
+            if (throwable != null) {
+                failAll(batch, unwrap(throwable));
+            } else {
+                complete(batch, root);
+            }
+        });
+    }
+
+    private void complete(List<Pending> batch, JsonNode root) {
+        List<JsonNode> results;
+        try {
+            results = encoder.decode(root);
+        } catch (RuntimeException e) {
+            failAll(batch, new XiangxinAIException("Failed to decode batch response: " + e.getMessage(), e));
+            return;
+        }
+        if (results == null || results.size() != batch.size()) {
+            failAll(batch, new XiangxinAIException("Batch response has " + (results == null ? 0 : results.size())
+                    + " results for " + batch.size() + " requests"));
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            Pending item = batch.get(i);
+            try {
+                item.future.complete(codec.treeToValue(results.get(i), GuardrailResponse.class));
+            } catch (IOException e) {
+                item.future.completeExceptionally(new XiangxinAIException("Failed to parse response", e));
+            }
+        }
+    }
+
+    private static void failAll(List<Pending> batch, Throwable error) {
+        for (Pending item : batch) {
+            item.future.completeExceptionally(error);
+        }
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+
+    /**
+     * Fail the checks that were not sent yet and stop the linger timer
+     */
+    @Override
+    public void close() {
+        List<Pending> batch;
+        synchronized (lock) {
+            closed = true;
+            batch = drain();
+        }
+        failAll(batch, new XiangxinAIException("Client closed before the batch was sent"));
+    }
+
+    private static final class Pending {
+
+        final GuardrailRequest request;
+        final Deadline deadline;
+        final CompletableFuture<GuardrailResponse> future = new CompletableFuture<>();
+
+        Pending(GuardrailRequest request, Deadline deadline) {
+            this.request = request;
+            this.deadline = deadline;
+        }
+    }
+}
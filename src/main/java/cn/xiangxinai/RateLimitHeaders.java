@@ -0,0 +1,83 @@
+package cn.xiangxinai;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the rate-limit headers sent by the API server
+ */
+final class RateLimitHeaders {
+
+    static final String RETRY_AFTER = "Retry-After";
+    static final String REMAINING = "X-RateLimit-Remaining";
+    static final String RESET = "X-RateLimit-Reset";
+
+    // Reset values above this are epoch seconds rather than seconds from now
+    private static final long EPOCH_SECONDS_THRESHOLD = 1_000_000_000L;
+
+    private RateLimitHeaders() {
+    }
+
+    /**
+     * Parse a Retry-After value, either delta-seconds or an HTTP date
+     *
+     * @return Wait in milliseconds, -1 when absent or invalid
+     */
+    static long retryAfterMillis(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return -1;
+        }
+        long seconds = parseLong(value);
+        if (seconds >= 0) {
+            return TimeUnit.SECONDS.toMillis(seconds);
+        }
+        try {
+            long at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0, at - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parse an X-RateLimit-Reset value, either seconds until the window resets or the epoch second of the reset
+     *
+     * @return Milliseconds until the reset, -1 when absent or invalid
+     */
+    static long resetMillis(String value) {
+        if (value == null) {
+            return -1;
+        }
+        double seconds;
+        try {
+            seconds = Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        if (seconds < 0 || Double.isNaN(seconds) || Double.isInfinite(seconds)) {
+            return -1;
+        }
+        long millis = (long) (seconds * 1000);
+        if (seconds > EPOCH_SECONDS_THRESHOLD) {
+            return Math.max(0, millis - System.currentTimeMillis());
+        }
+        return millis;
+    }
+
+    /**
+     * @return The non-negative number in the value, -1 when absent or invalid
+     */
+    static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            long parsed = Long.parseLong(value.trim());
+            return parsed >= 0 ? parsed : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package cn.xiangxinai;
+
+import okhttp3.Response;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Client-side token-bucket rate limiter that adapts to the rate-limit hints of the API server
+ *
+ * <p>Every HTTP attempt takes a permit first and waits for it when the bucket is empty, so the client paces
+ * itself instead of running into 429 responses. The rate starts at the configured {@code permitsPerSecond}
+ * (unlimited by default) and follows the server's hints:
+ * <ul>
+ *   <li>{@code Retry-After} on a 429 response pauses the limiter for the requested time</li>
+ *   <li>{@code X-RateLimit-Remaining} and {@code X-RateLimit-Reset} on any response set the rate to the remaining
+ *       quota spread over the time left in the window, never above the configured rate; no quota left pauses
+ *       the limiter until the reset</li>
+ * </ul>
+ *
+ * <p>A call that would have to wait longer than {@code maxWait} or its deadline for a permit fails at once with
+ * {@link cn.xiangxinai.exception.RateLimitException} without being sent. The server quota belongs to an API key,
+ * share one limiter between all clients using the same key.
+ *
+ * <p>Optional per-user budgets shed the checks of a single user ID that exceeds its own rate, before they use up
+ * the shared quota. A user over budget is rejected at once, without waiting. Up to {@code maxTrackedUsers} users
+ * are tracked, the ones idle for the longest time are forgotten first, so memory stays bounded however many
+ * distinct user IDs are seen.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * RateLimiter rateLimiter = RateLimiter.builder()
+ *     .permitsPerSecond(100)
+ *     .maxWait(2, TimeUnit.SECONDS)
+ *     .perUserPermitsPerSecond(2)
+ *     .perUserBurst(10)
+ *     .maxTrackedUsers(100000)
+ *     .build();
+ *
+ * XiangxinAIClient client = XiangxinAIClient.builder("your-api-key")
+ *     .rateLimiter(rateLimiter)
+ *     .build();
+ * }</pre>
+ */
+public final class RateLimiter {
+
+    private final double maxPermitsPerSecond;
+    private final long maxWaitNanos;
+    private final boolean adaptive;
+    private final LongSupplier ticker;
+    private final TokenBucket bucket;
+    private final UserBudgets userBudgets;
+    private final LongAdder throttledCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder userRejectedCount = new LongAdder();
+
+    private RateLimiter(Builder builder) {
+        this.maxPermitsPerSecond = builder.permitsPerSecond;
+        this.maxWaitNanos = builder.maxWaitNanos;
+        this.adaptive = builder.adaptive;
+        this.ticker = builder.ticker;
+        this.bucket = new TokenBucket(builder.permitsPerSecond, builder.burst, ticker.getAsLong());
+        this.userBudgets = builder.perUserPermitsPerSecond > 0
+                ? new UserBudgets(builder.perUserPermitsPerSecond, builder.perUserBurst, builder.maxTrackedUsers, ticker)
+                : null;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Current rate in permits per second, {@code Double.POSITIVE_INFINITY} when unlimited
+     */
+    public double getPermitsPerSecond() {
+        return bucket.getRate();
+    }
+
+    /**
+     * @return Number of permits that had to wait
+     */
+    public long getThrottledCount() {
+        return throttledCount.sum();
+    }
+
+    /**
+     * @return Number of calls rejected because no permit was available in time
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * @return Number of calls rejected because their user ID was over its own budget
+     */
+    public long getUserRejectedCount() {
+        return userRejectedCount.sum();
+    }
+
+    /**
+     * @return Number of user IDs currently tracked by the per-user budgets
+     */
+    public int getTrackedUserCount() {
+        return userBudgets != null ? userBudgets.size() : 0;
+    }
+
+    /**
+     * Take a permit of the user's own budget for one call, never waits
+     *
+     * @param userId User ID of the call, calls without one are not limited per user
+     * @return Whether the call may proceed
+     */
+    boolean tryAcquireUser(String userId) {
+        if (userBudgets == null || userId == null || userId.isEmpty()) {
+            return true;
+        }
+        if (userBudgets.tryAcquire(userId)) {
+            return true;
+        }
+        userRejectedCount.increment();
+        return false;
+    }
+
+    /**
+     * Take a permit for one HTTP attempt
+     *
+     * @return Nanoseconds to wait before sending, -1 when the wait would exceed maxWait or the deadline
+     */
+    long reserve(Deadline deadline) {
+        long waitNanos = bucket.reserve(ticker.getAsLong(), Math.min(maxWaitNanos, deadline.remainingNanos()));
+        if (waitNanos < 0) {
+            rejectedCount.increment();
+        } else if (waitNanos > 0) {
+            throttledCount.increment();
+        }
+        return waitNanos;
+    }
+
+    /**
+     * Feed the rate-limit headers of a response into the limiter
+     */
+    void onResponse(Response response) {
+        long retryAfterMillis = response.code() == 429
+                ? RateLimitHeaders.retryAfterMillis(response.header(RateLimitHeaders.RETRY_AFTER))
+                : -1;
+        onServerHints(retryAfterMillis,
+                RateLimitHeaders.parseLong(response.header(RateLimitHeaders.REMAINING)),
+                RateLimitHeaders.resetMillis(response.header(RateLimitHeaders.RESET)));
+    }
+
+    /**
+     * @param retryAfterMillis Requested pause, -1 when absent
+     * @param remaining Requests left in the current window, -1 when absent
+     * @param resetMillis Time until the window resets, -1 when absent
+     */
+    void onServerHints(long retryAfterMillis, long remaining, long resetMillis) {
+        if (!adaptive) {
+            return;
+        }
+        long now = ticker.getAsLong();
+        if (retryAfterMillis > 0) {
+            bucket.pauseUntil(now, now + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+        }
+        if (remaining < 0 || resetMillis <= 0) {
+            return;
+        }
+        if (remaining == 0) {
+            bucket.pauseUntil(now, now + TimeUnit.MILLISECONDS.toNanos(resetMillis));
+        } else {
+            double serverRate = remaining * 1000.0 / resetMillis;
+            bucket.setRate(now, Math.min(maxPermitsPerSecond, serverRate));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiter{" +
+                "permitsPerSecond=" + getPermitsPerSecond() +
+                ", maxPermitsPerSecond=" + maxPermitsPerSecond +
+                ", maxWaitNanos=" + maxWaitNanos +
+                ", adaptive=" + adaptive +
+                ", perUser=" + (userBudgets != null) +
+                '}';
+    }
+
+    /**
+     * Builder of {@link RateLimiter}
+     */
+    public static final class Builder {
+
+        private double permitsPerSecond = Double.POSITIVE_INFINITY;
+        private double burst = 0;
+        private long maxWaitNanos = TimeUnit.SECONDS.toNanos(30);
+        private boolean adaptive = true;
+        private double perUserPermitsPerSecond = 0;
+        private double perUserBurst = 0;
+        private int maxTrackedUsers = 100_000;
+        private LongSupplier ticker = System::nanoTime;
+
+        private Builder() {
+        }
+
+        /**
+         * @param permitsPerSecond Maximum request rate, server hints can only lower it; unlimited by default
+         */
+        public Builder permitsPerSecond(double permitsPerSecond) {
+            if (!(permitsPerSecond > 0)) {
+                throw new IllegalArgumentException("permitsPerSecond must be positive");
+            }
+            this.permitsPerSecond = permitsPerSecond;
+            return this;
+        }
+
+        /**
+         * @param burst Number of requests that may be sent at once after an idle period, defaults to one second's
+         *              worth of the current rate
+         */
+        public Builder burst(int burst) {
+            if (burst < 1) {
+                throw new IllegalArgumentException("burst must be at least 1");
+            }
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * @param maxWait Longest time a call waits for a permit before it is rejected
+         * @param unit Time unit of maxWait
+         */
+        public Builder maxWait(long maxWait, TimeUnit unit) {
+            if (maxWait < 0) {
+                throw new IllegalArgumentException("maxWait cannot be negative");
+            }
+            this.maxWaitNanos = unit.toNanos(maxWait);
+            return this;
+        }
+
+        /**
+         * @param adaptive Whether to follow the server's Retry-After and X-RateLimit-* hints, enabled by default
+         */
+        public Builder adaptive(boolean adaptive) {
+            this.adaptive = adaptive;
+            return this;
+        }
+
+        /**
+         * Enable per-user budgets, disabled by default
+         *
+         * @param perUserPermitsPerSecond Maximum request rate of a single user ID
+         */
+        public Builder perUserPermitsPerSecond(double perUserPermitsPerSecond) {
+            if (!(perUserPermitsPerSecond > 0) || Double.isInfinite(perUserPermitsPerSecond)) {
+                throw new IllegalArgumentException("perUserPermitsPerSecond must be positive and finite");
+            }
+            this.perUserPermitsPerSecond = perUserPermitsPerSecond;
+            return this;
+        }
+
+        /**
+         * @param perUserBurst Number of checks a single user ID may send at once, defaults to one second's worth
+         *                     of its rate
+         */
+        public Builder perUserBurst(int perUserBurst) {
+            if (perUserBurst < 1) {
+                throw new IllegalArgumentException("perUserBurst must be at least 1");
+            }
+            this.perUserBurst = perUserBurst;
+            return this;
+        }
+
+        /**
+         * @param maxTrackedUsers Maximum number of user IDs whose budgets are remembered
+         */
+        public Builder maxTrackedUsers(int maxTrackedUsers) {
+            if (maxTrackedUsers < 1) {
+                throw new IllegalArgumentException("maxTrackedUsers must be at least 1");
+            }
+            this.maxTrackedUsers = maxTrackedUsers;
+            return this;
+        }
+
+        Builder ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public RateLimiter build() {
+            return new RateLimiter(this);
+        }
+    }
+}
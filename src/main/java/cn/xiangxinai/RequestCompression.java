@@ -0,0 +1,99 @@
+package cn.xiangxinai;
+
+import java.util.zip.Deflater;
+
+/**
+ * Gzip compression of large request bodies, such as long conversations and base64 images
+ *
+ * <p>Bodies of at least {@code minSize} bytes are sent with {@code Content-Encoding: gzip}; smaller ones are sent
+ * as they are, compressing them costs more CPU than it saves on the wire. The size is checked by serializing the
+ * payload up to the threshold only, large payloads are still streamed without being held in memory.
+ *
+ * <p>A server that does not accept compressed bodies answers {@code 415 Unsupported Media Type}. The request is
+ * then sent again uncompressed and compression stays off for that host.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("your-api-key")
+ *     .compression(RequestCompression.builder()
+ *         .minSize(16 * 1024)
+ *         .level(Deflater.BEST_SPEED)
+ *         .build())
+ *     .build();
+ * }</pre>
+ */
+public final class RequestCompression {
+
+    private final int minSize;
+    private final int level;
+
+    private RequestCompression(Builder builder) {
+        this.minSize = builder.minSize;
+        this.level = builder.level;
+    }
+
+    /**
+     * Default compression: bodies of 8 KiB or more at the fastest gzip level
+     */
+    public static RequestCompression gzip() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestCompression{" +
+                "minSize=" + minSize +
+                ", level=" + level +
+                '}';
+    }
+
+    /**
+     * Builder of {@link RequestCompression}
+     */
+    public static final class Builder {
+
+        private int minSize = 8 * 1024;
+        private int level = Deflater.BEST_SPEED;
+
+        private Builder() {
+        }
+
+        /**
+         * @param minSize Smallest body in bytes that is compressed
+         */
+        public Builder minSize(int minSize) {
+            if (minSize < 0) {
+                throw new IllegalArgumentException("minSize cannot be negative");
+            }
+            this.minSize = minSize;
+            return this;
+        }
+
+        /**
+         * @param level Deflate level from 1 (fastest, default) to 9 (smallest); base64 images gain little above 1
+         */
+        public Builder level(int level) {
+            if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException("level must be between 1 and 9");
+            }
+            this.level = level;
+            return this;
+        }
+
+        public RequestCompression build() {
+            return new RequestCompression(this);
+        }
+    }
+}
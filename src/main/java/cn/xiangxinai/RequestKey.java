@@ -0,0 +1,91 @@
+package cn.xiangxinai;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * SHA-256 identity of a guardrail request
+ * 
+ * <p>Covers the client scope (API key and base URL), the endpoint and the serialized request body. The body already
+ * carries the model, the trimmed content and the user ID. The JSON is streamed straight into the digest, so large
+ * payloads are not copied to compute the key.
+ */
+final class RequestKey {
+    
+    private final byte[] digest;
+    private final int hash;
+    
+    private RequestKey(byte[] digest) {
+        this.digest = digest;
+        this.hash = Arrays.hashCode(digest);
+    }
+    
+    static RequestKey of(JsonCodec codec, String scope, String endpoint, Object requestBody) throws IOException {
+        MessageDigest messageDigest = newDigest();
+        messageDigest.update(scope.getBytes(StandardCharsets.UTF_8));
+        messageDigest.update((byte) 0);
+        messageDigest.update(endpoint.getBytes(StandardCharsets.UTF_8));
+        messageDigest.update((byte) 0);
+        
+        ObjectWriter writer = codec.writerFor(requestBody);
+        try (JsonGenerator generator = writer.createGenerator(new DigestSink(messageDigest), JsonEncoding.UTF8)) {
+            writer.writeValue(generator, requestBody);
+        }
+        return new RequestKey(messageDigest.digest());
+    }
+    
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RequestKey)) {
+            return false;
+        }
+        RequestKey other = (RequestKey) o;
+        return hash == other.hash && Arrays.equals(digest, other.digest);
+    }
+    
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+    
+    /**
+     * Output stream that only feeds the digest
+     */
+    private static final class DigestSink extends OutputStream {
+        
+        private final MessageDigest messageDigest;
+        
+        DigestSink(MessageDigest messageDigest) {
+            this.messageDigest = messageDigest;
+        }
+        
+        @Override
+        public void write(int b) {
+            messageDigest.update((byte) b);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            messageDigest.update(b, off, len);
+        }
+    }
+}
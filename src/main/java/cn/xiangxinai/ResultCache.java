@@ -0,0 +1,196 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.model.GuardrailResponse;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded client-side cache of guardrail results
+ * 
+ * <p>Repeated content (greetings, templated system prompts, retried user turns) is answered locally instead of
+ * calling the API again. Entries are keyed by a SHA-256 hash of the API key, base URL, endpoint, model, trimmed
+ * content and user ID, evicted in least-recently-used order once the maximum size is reached, and expire after the
+ * configured time-to-live. Only successful results are cached.
+ * 
+ * <p>A cache instance can be shared by several clients, entries of different API keys never collide. Cached
+ * {@link GuardrailResponse} instances are shared between callers and must not be modified.
+ * 
+ * <p>Example:
+ * <pre>{@code
+ * ResultCache cache = ResultCache.builder()
+ *     .maximumSize(10000)
+ *     .expireAfterWrite(10, TimeUnit.MINUTES)
+ *     .build();
+ * 
+ * XiangxinAIClient client = XiangxinAIClient.builder("your-api-key")
+ *     .resultCache(cache)
+ *     .build();
+ * 
+ * System.out.println(cache.getHitCount() + " hits, " + cache.getMissCount() + " misses");
+ * }</pre>
+ */
+public final class ResultCache {
+    
+    private final int maximumSize;
+    private final long ttlNanos;
+    private final LongSupplier ticker;
+    private final LinkedHashMap<RequestKey, CacheEntry> entries;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    
+    private ResultCache(Builder builder) {
+        this.maximumSize = builder.maximumSize;
+        this.ttlNanos = builder.ttlNanos;
+        this.ticker = builder.ticker;
+        // Access order turns the map into an LRU list
+        this.entries = new LinkedHashMap<RequestKey, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RequestKey, CacheEntry> eldest) {
+                if (size() > ResultCache.this.maximumSize) {
+                    evictionCount.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    GuardrailResponse get(RequestKey key) {
+        synchronized (entries) {
+            CacheEntry entry = entries.get(key);
+            if (entry != null && ticker.getAsLong() - entry.expiresAtNanos < 0) {
+                hitCount.increment();
+                return entry.response;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        missCount.increment();
+        return null;
+    }
+    
+    void put(RequestKey key, GuardrailResponse response) {
+        CacheEntry entry = new CacheEntry(response, ticker.getAsLong() + ttlNanos);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+    
+    /**
+     * @return Number of lookups answered from the cache
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+    
+    /**
+     * @return Number of lookups that had to call the API
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+    
+    /**
+     * @return Number of entries evicted because the cache was full
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+    
+    /**
+     * @return Current number of entries, expired entries are included until they are looked up or evicted
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    /**
+     * Remove all entries, the statistics are kept
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "ResultCache{" +
+                "size=" + size() +
+                ", maximumSize=" + maximumSize +
+                ", hitCount=" + getHitCount() +
+                ", missCount=" + getMissCount() +
+                ", evictionCount=" + getEvictionCount() +
+                '}';
+    }
+    
+    private static final class CacheEntry {
+        
+        private final GuardrailResponse response;
+        private final long expiresAtNanos;
+        
+        CacheEntry(GuardrailResponse response, long expiresAtNanos) {
+            this.response = response;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+    
+    /**
+     * Builder of {@link ResultCache}
+     */
+    public static final class Builder {
+        
+        private int maximumSize = 10000;
+        private long ttlNanos = TimeUnit.MINUTES.toNanos(10);
+        private LongSupplier ticker = System::nanoTime;
+        
+        private Builder() {
+        }
+        
+        /**
+         * @param maximumSize Maximum number of cached results, least recently used entries are evicted first
+         */
+        public Builder maximumSize(int maximumSize) {
+            if (maximumSize < 1) {
+                throw new IllegalArgumentException("maximumSize must be at least 1");
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+        
+        /**
+         * @param ttl How long a result stays valid after it was cached
+         * @param unit Time unit of ttl
+         */
+        public Builder expireAfterWrite(long ttl, TimeUnit unit) {
+            if (ttl <= 0) {
+                throw new IllegalArgumentException("ttl must be positive");
+            }
+            this.ttlNanos = unit.toNanos(ttl);
+            return this;
+        }
+        
+        /**
+         * Time source in nanoseconds, for tests
+         */
+        Builder ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+        
+        public ResultCache build() {
+            return new ResultCache(this);
+        }
+    }
+}
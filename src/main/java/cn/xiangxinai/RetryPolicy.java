@@ -0,0 +1,205 @@
+package cn.xiangxinai;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backoff between retry attempts - jittered exponential backoff with an optional cap on the total delay
+ *
+ * <p>The delay before retry {@code n} (starting at 0) is {@code initialBackoff * multiplier^n}, capped at
+ * {@code maxBackoff}, and then reduced by a random share of up to {@code jitter} of itself. Without jitter,
+ * clients that failed together retry together and hit the server again in lock-step. Once the delays of a
+ * call would add up to more than {@code maxTotalDelay}, the call fails with its last error instead of
+ * retrying. The number of retries is set with {@code maxRetries} on the client builder.
+ *
+ * <p>A server's {@code Retry-After} is waited for in full, unless it is longer than {@code maxBackoff}: then the
+ * call fails straight away with a {@link cn.xiangxinai.exception.RateLimitException} carrying the requested delay,
+ * instead of parking the caller for as long as the server asks.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * RetryPolicy retryPolicy = RetryPolicy.builder()
+ *     .initialBackoff(100, TimeUnit.MILLISECONDS)
+ *     .maxBackoff(2, TimeUnit.SECONDS)
+ *     .multiplier(2.0)
+ *     .jitter(0.5)
+ *     .maxTotalDelay(5, TimeUnit.SECONDS)
+ *     .build();
+ *
+ * AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("your-api-key")
+ *     .maxRetries(5)
+ *     .retryPolicy(retryPolicy)
+ *     .build();
+ * }</pre>
+ */
+public final class RetryPolicy {
+
+    /**
+     * Default policy: 1 second initial backoff doubling up to 30 seconds, 20% jitter, no total delay cap
+     */
+    public static final RetryPolicy DEFAULT = builder().build();
+
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final double multiplier;
+    private final double jitter;
+    private final long maxTotalDelayMillis;
+
+    private RetryPolicy(Builder builder) {
+        this.initialBackoffMillis = builder.initialBackoffMillis;
+        this.maxBackoffMillis = Math.max(builder.initialBackoffMillis, builder.maxBackoffMillis);
+        this.multiplier = builder.multiplier;
+        this.jitter = builder.jitter;
+        this.maxTotalDelayMillis = builder.maxTotalDelayMillis;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * @return Maximum sum of all retry delays of one call, 0 means no limit
+     */
+    public long getMaxTotalDelayMillis() {
+        return maxTotalDelayMillis;
+    }
+
+    /**
+     * Delay before the given retry
+     *
+     * @param retry Index of the retry, 0 for the first retry
+     */
+    long backoffMillis(int retry) {
+        double backoff = initialBackoffMillis * Math.pow(multiplier, retry);
+        long capped = backoff >= maxBackoffMillis ? maxBackoffMillis : (long) backoff;
+        if (jitter == 0 || capped == 0) {
+            return capped;
+        }
+        return capped - (long) (capped * jitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * Delay before the given retry, at least the server's Retry-After
+     *
+     * @param retry Index of the retry, 0 for the first retry
+     * @param retryAfterMillis Delay the server asked for, 0 if none
+     * @return Delay, -1 when the server asked for more than maxBackoff
+     */
+    long retryDelayMillis(int retry, long retryAfterMillis) {
+        if (retryAfterMillis > maxBackoffMillis) {
+            return -1;
+        }
+        return Math.max(backoffMillis(retry), retryAfterMillis);
+    }
+
+    /**
+     * Whether a call may still wait, given the sum of its retry delays including the next one
+     */
+    boolean allowsTotalDelay(long totalDelayMillis) {
+        return maxTotalDelayMillis == 0 || totalDelayMillis <= maxTotalDelayMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{" +
+                "initialBackoffMillis=" + initialBackoffMillis +
+                ", maxBackoffMillis=" + maxBackoffMillis +
+                ", multiplier=" + multiplier +
+                ", jitter=" + jitter +
+                ", maxTotalDelayMillis=" + maxTotalDelayMillis +
+                '}';
+    }
+
+    /**
+     * Builder of {@link RetryPolicy}
+     */
+    public static final class Builder {
+
+        private long initialBackoffMillis = TimeUnit.SECONDS.toMillis(1);
+        private long maxBackoffMillis = TimeUnit.SECONDS.toMillis(30);
+        private double multiplier = 2.0;
+        private double jitter = 0.2;
+        private long maxTotalDelayMillis = 0;
+
+        private Builder() {
+        }
+
+        /**
+         * @param initialBackoff Delay before the first retry
+         * @param unit Time unit of initialBackoff
+         */
+        public Builder initialBackoff(long initialBackoff, TimeUnit unit) {
+            if (initialBackoff < 0) {
+                throw new IllegalArgumentException("initialBackoff cannot be negative");
+            }
+            this.initialBackoffMillis = unit.toMillis(initialBackoff);
+            return this;
+        }
+
+        /**
+         * @param maxBackoff Upper bound of the delay before a single retry
+         * @param unit Time unit of maxBackoff
+         */
+        public Builder maxBackoff(long maxBackoff, TimeUnit unit) {
+            if (maxBackoff < 0) {
+                throw new IllegalArgumentException("maxBackoff cannot be negative");
+            }
+            this.maxBackoffMillis = unit.toMillis(maxBackoff);
+            return this;
+        }
+
+        /**
+         * @param multiplier Growth factor of the delay from one retry to the next
+         */
+        public Builder multiplier(double multiplier) {
+            if (multiplier < 1.0) {
+                throw new IllegalArgumentException("multiplier must be at least 1.0");
+            }
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * @param jitter Share of each delay that is randomized away, between 0.0 (none) and 1.0 (full jitter)
+         */
+        public Builder jitter(double jitter) {
+            if (jitter < 0.0 || jitter > 1.0) {
+                throw new IllegalArgumentException("jitter must be between 0.0 and 1.0");
+            }
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * @param maxTotalDelay Maximum sum of all retry delays of one call, 0 means no limit
+         * @param unit Time unit of maxTotalDelay
+         */
+        public Builder maxTotalDelay(long maxTotalDelay, TimeUnit unit) {
+            if (maxTotalDelay < 0) {
+                throw new IllegalArgumentException("maxTotalDelay cannot be negative");
+            }
+            this.maxTotalDelayMillis = unit.toMillis(maxTotalDelay);
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.DeadlineExceededException;
+import cn.xiangxinai.exception.XiangxinAIException;
+import cn.xiangxinai.model.GuardrailResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical in-flight guardrail requests into a single network call
+ * 
+ * <p>The first caller for a {@link RequestKey} performs the call; callers arriving with the same key before it
+ * completes wait for that result instead of sending their own request. Once the call completes the key is released,
+ * so later callers start a new call (or hit the result cache, if one is configured).
+ * 
+ * <p>The shared call runs with the per-call deadline of the caller that started it. When it fails only because that
+ * deadline was exceeded, the callers that joined it send their own request under their own deadline instead of
+ * failing with a deadline they never set.
+ */
+final class SingleFlight {
+    
+    private final ConcurrentHashMap<RequestKey, Flight> inFlight = new ConcurrentHashMap<>();
+    
+    /**
+     * Run a blocking call, or wait for the identical call already in flight
+     */
+    GuardrailResponse execute(RequestKey key, Supplier<GuardrailResponse> call, Deadline deadline) {
+        Flight flight = new Flight(key);
+        Flight existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            GuardrailResponse shared = await(existing.promise, deadline);
+            if (shared != null) {
+                return shared;
+            }
+            return execute(key, call, deadline);
+        }
+        
+        try {
+            GuardrailResponse result = call.get();
+            flight.complete(result, null);
+            return result;
+        } catch (RuntimeException e) {
+            flight.complete(null, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Start an asynchronous call, or join the identical call already in flight
+     * 
+     * <p>Every caller gets its own future, cancelling it does not affect the other callers. The call itself, with
+     * its retries and permits, is cancelled once every caller waiting for it has cancelled.
+     */
+    CompletableFuture<GuardrailResponse> executeAsync(RequestKey key, Supplier<CompletableFuture<GuardrailResponse>> call) {
+        while (true) {
+            Flight flight = new Flight(key);
+            Flight existing = inFlight.putIfAbsent(key, flight);
+            if (existing == null) {
+                CompletableFuture<GuardrailResponse> caller = flight.addCaller();
+                flight.start(call);
+                return caller;
+            }
+            CompletableFuture<GuardrailResponse> caller = existing.addCaller();
+            if (caller != null) {
+                return join(caller, key, call);
+            }
+            // Every caller of that call cancelled and it has left the map, start a new one
+        }
+    }
+    
+    /**
+     * Follow the call in flight, sending this caller's own request if the shared call ran out of another caller's
+     * deadline
+     */
+    private CompletableFuture<GuardrailResponse> join(CompletableFuture<GuardrailResponse> caller, RequestKey key,
+                                                      Supplier<CompletableFuture<GuardrailResponse>> call) {
+        CompletableFuture<GuardrailResponse> result = new CompletableFuture<>();
+        caller.whenComplete((response, throwable) -> {
+            Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+            if (cause == null) {
+                result.complete(response);
+            } else if (cause instanceof DeadlineExceededException && !result.isDone()) {
+                CompletableFuture<GuardrailResponse> retry = executeAsync(key, call);
+                forward(retry, result);
+                result.whenComplete((retried, retryThrowable) -> {
+                    if (result.isCancelled()) {
+                        retry.cancel(true);
+                    }
+                });
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
+        result.whenComplete((response, throwable) -> {
+            if (result.isCancelled()) {
+                caller.cancel(true);
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Number of distinct calls currently in flight
+     */
+    int size() {
+        return inFlight.size();
+    }
+    
+    /**
+     * @return Result of the shared call, or null when it failed on the deadline of the caller that started it
+     */
+    private static GuardrailResponse await(CompletableFuture<GuardrailResponse> future, Deadline deadline) {
+        try {
+            if (deadline.isBounded()) {
+                return future.get(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+            }
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DeadlineExceededException) {
+                return null;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new XiangxinAIException("Request failed: " + cause.getMessage(), cause);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("Request deadline exceeded while waiting for identical request");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XiangxinAIException("Request interrupted", e);
+        }
+    }
+    
+    private static void forward(CompletableFuture<GuardrailResponse> source, CompletableFuture<GuardrailResponse> target) {
+        source.whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                target.completeExceptionally(throwable);
+            } else {
+                target.complete(response);
+            }
+        });
+    }
+    
+    /**
+     * One call in flight and the callers waiting for it
+     */
+    private final class Flight {
+        
+        private final RequestKey key;
+        private final CompletableFuture<GuardrailResponse> promise = new CompletableFuture<>();
+        // Guarded by this
+        private CompletableFuture<GuardrailResponse> network;
+        private int callers;
+        private boolean abandoned;
+        
+        Flight(RequestKey key) {
+            this.key = key;
+        }
+        
+        /**
+         * @return Future of a new caller, or null when every caller has cancelled and the call is being cancelled
+         */
+        synchronized CompletableFuture<GuardrailResponse> addCaller() {
+            if (abandoned) {
+                return null;
+            }
+            callers++;
+            CompletableFuture<GuardrailResponse> caller = new CompletableFuture<>();
+            forward(promise, caller);
+            caller.whenComplete((response, throwable) -> {
+                if (caller.isCancelled()) {
+                    removeCaller();
+                }
+            });
+            return caller;
+        }
+        
+        void start(Supplier<CompletableFuture<GuardrailResponse>> call) {
+            CompletableFuture<GuardrailResponse> started;
+            try {
+                started = call.get();
+            } catch (RuntimeException e) {
+                complete(null, e);
+                return;
+            }
+            boolean cancel;
+            synchronized (this) {
+                network = started;
+                cancel = abandoned;
+            }
+            if (cancel) {
+                started.cancel(true);
+            }
+            started.whenComplete(this::complete);
+        }
+        
+        void complete(GuardrailResponse result, Throwable throwable) {
+            inFlight.remove(key, this);
+            if (throwable != null) {
+                promise.completeExceptionally(throwable);
+            } else {
+                promise.complete(result);
+            }
+        }
+        
+        private void removeCaller() {
+            CompletableFuture<GuardrailResponse> cancelled;
+            synchronized (this) {
+                if (--callers > 0 || promise.isDone()) {
+                    return;
+                }
+                // Leave the map first, so that a new caller starts its own call instead of joining this one
+                abandoned = true;
+                inFlight.remove(key, this);
+                cancelled = network;
+            }
+            if (cancelled != null) {
+                cancelled.cancel(true);
+            }
+        }
+    }
+}
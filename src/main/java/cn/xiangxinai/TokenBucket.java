@@ -0,0 +1,96 @@
+package cn.xiangxinai;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket with an adjustable rate, reservations may go into debt so that waiters are paced one after another
+ *
+ * <p>All times are {@link System#nanoTime()} style readings passed in by the caller.
+ */
+final class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double burst;
+    private double permitsPerSecond;
+    private double storedPermits;
+    // Permits accrue from this point on, it lies in the future while the bucket is paused
+    private long refillFromNanos;
+
+    /**
+     * @param permitsPerSecond Rate, {@code Double.POSITIVE_INFINITY} for no limit
+     * @param burst Maximum number of stored permits, 0 for one second's worth of the current rate
+     * @param nowNanos Current time
+     */
+    TokenBucket(double permitsPerSecond, double burst, long nowNanos) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.refillFromNanos = nowNanos;
+        this.storedPermits = capacity();
+    }
+
+    /**
+     * Take one permit
+     *
+     * @return Nanoseconds to wait before using the permit, -1 when that wait would exceed maxWaitNanos,
+     *         in which case no permit is taken
+     */
+    synchronized long reserve(long nowNanos, long maxWaitNanos) {
+        refill(nowNanos);
+        long waitNanos = Math.max(0, refillFromNanos - nowNanos);
+        if (!isUnlimited() && storedPermits < 1) {
+            waitNanos += (long) Math.ceil((1 - storedPermits) / permitsPerSecond * NANOS_PER_SECOND);
+        }
+        if (waitNanos > maxWaitNanos) {
+            return -1;
+        }
+        if (!isUnlimited()) {
+            storedPermits -= 1;
+        }
+        return waitNanos;
+    }
+
+    /**
+     * Hand out no permits before the given time
+     */
+    synchronized void pauseUntil(long nowNanos, long untilNanos) {
+        refill(nowNanos);
+        if (untilNanos - refillFromNanos > 0) {
+            refillFromNanos = untilNanos;
+            // Do not release a full burst the moment the pause ends
+            storedPermits = Math.min(storedPermits, 0);
+        }
+    }
+
+    synchronized void setRate(long nowNanos, double permitsPerSecond) {
+        refill(nowNanos);
+        this.permitsPerSecond = permitsPerSecond;
+        storedPermits = Math.min(storedPermits, capacity());
+    }
+
+    synchronized double getRate() {
+        return permitsPerSecond;
+    }
+
+    private boolean isUnlimited() {
+        return Double.isInfinite(permitsPerSecond);
+    }
+
+    private double capacity() {
+        if (burst > 0) {
+            return burst;
+        }
+        return isUnlimited() ? 1 : Math.max(1, permitsPerSecond);
+    }
+
+    private void refill(long nowNanos) {
+        long elapsedNanos = nowNanos - refillFromNanos;
+        if (elapsedNanos <= 0) {
+            return;
+        }
+        storedPermits = isUnlimited()
+                ? capacity()
+                : Math.min(capacity(), storedPermits + elapsedNanos * permitsPerSecond / NANOS_PER_SECOND);
+        refillFromNanos = nowNanos;
+    }
+}
@@ -0,0 +1,81 @@
+package cn.xiangxinai;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-user token buckets with bounded memory
+ *
+ * <p>Buckets live in a fixed number of lock stripes, each an LRU map holding its share of the tracked users.
+ * Checks for different users rarely contend, and once the limit is reached the user idle for the longest time
+ * is forgotten; an active abusive user stays tracked. A forgotten user starts over with a full bucket.
+ */
+final class UserBudgets {
+
+    private static final int STRIPES = 64;
+
+    private final double permitsPerSecond;
+    private final double burst;
+    private final LongSupplier ticker;
+    private final Stripe[] stripes;
+
+    UserBudgets(double permitsPerSecond, double burst, int maxTrackedUsers, LongSupplier ticker) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.ticker = ticker;
+        int perStripe = Math.max(1, (maxTrackedUsers + STRIPES - 1) / STRIPES);
+        this.stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    /**
+     * Take a permit of the user's budget without waiting
+     *
+     * @return Whether the user had budget left
+     */
+    boolean tryAcquire(String userId) {
+        int hash = userId.hashCode();
+        Stripe stripe = stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+        long now = ticker.getAsLong();
+        synchronized (stripe) {
+            TokenBucket bucket = stripe.get(userId);
+            if (bucket == null) {
+                bucket = new TokenBucket(permitsPerSecond, burst, now);
+                stripe.put(userId, bucket);
+            }
+            return bucket.reserve(now, 0) == 0;
+        }
+    }
+
+    /**
+     * @return Number of users currently tracked
+     */
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    private static final class Stripe extends LinkedHashMap<String, TokenBucket> {
+
+        private final int maxSize;
+
+        Stripe(int maxSize) {
+            // Access order turns the map into an LRU list
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
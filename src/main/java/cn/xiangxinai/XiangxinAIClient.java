@@ -2,21 +2,22 @@ package cn.xiangxinai;
 
 import cn.xiangxinai.model.*;
 import cn.xiangxinai.exception.*;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
 import okhttp3.*;
 import java.io.IOException;
-import java.io.FileInputStream;
 import java.io.InputStream;
-import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * XiangxinAI Guardrails client - Context-aware AI security guardrails based on LLM
@@ -43,6 +44,18 @@ import java.util.Base64;
  * System.out.println(result.getOverallRiskLevel()); // "high_risk/medium_risk/low_risk/no_risk"
  * System.out.println(result.getSuggestAction()); // "pass/reject/replace"
  * }</pre>
+ *
+ * <p>Use the builder for fine-grained timeouts and per-call deadlines:
+ * <pre>{@code
+ * XiangxinAIClient client = XiangxinAIClient.builder("your-api-key")
+ *     .connectTimeout(50, TimeUnit.MILLISECONDS)
+ *     .readTimeout(120, TimeUnit.MILLISECONDS)
+ *     .maxRetries(1)
+ *     .build();
+ *
+ * // The whole call, including retries, must finish within 150 ms
+ * GuardrailResponse result = client.checkPrompt("User question", CallOptions.withTimeout(150, TimeUnit.MILLISECONDS));
+ * }</pre>
  */
 public class XiangxinAIClient implements AutoCloseable {
     
@@ -51,11 +64,29 @@ public class XiangxinAIClient implements AutoCloseable {
     private static final int DEFAULT_TIMEOUT = 30;
     private static final int DEFAULT_MAX_RETRIES = 3;
     private static final String USER_AGENT = "xiangxinai-java/2.6.1";
+    // Prompt checks only read, the only endpoint that is safe to send twice
+    private static final String HEDGED_ENDPOINT = "/guardrails/input";
     
     private final OkHttpClient httpClient;
-    private final ObjectMapper objectMapper;
+    private final JsonCodec codec;
     private final String baseUrl;
     private final int maxRetries;
+    private final RetryPolicy retryPolicy;
+    private final RateLimiter rateLimiter;
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private final CircuitBreaker circuitBreaker;
+    private final Hedger hedger;
+    private final EndpointGroup endpointGroup;
+    private final ScheduledFuture<?> healthChecks;
+    private final ConnectionWarmer warmer;
+    private final ScheduledFuture<?> keepWarm;
+    private final XiangxinAITransport transport;
+    private final boolean ownsTransport;
+    private final String authorization;
+    private final ResultCache resultCache;
+    private final SingleFlight singleFlight;
+    private final ImageLoader imageLoader;
+    private volatile ExecutorService workers;
     
     /**
      * Constructor, using default configuration
@@ -75,28 +106,60 @@ public class XiangxinAIClient implements AutoCloseable {
      * @param maxRetries Maximum retry times
      */
     public XiangxinAIClient(String apiKey, String baseUrl, int timeoutSeconds, int maxRetries) {
+        this(builder(apiKey)
+                .baseUrl(baseUrl)
+                .timeout(timeoutSeconds, TimeUnit.SECONDS)
+                .maxRetries(maxRetries));
+    }
+    
+    private XiangxinAIClient(Builder builder) {
+        String apiKey = builder.apiKey;
         if (apiKey == null || apiKey.trim().isEmpty()) {
             throw new IllegalArgumentException("API key cannot be null or empty");
         }
         
-        this.baseUrl = baseUrl != null ? baseUrl.replaceAll("/$", "") : DEFAULT_BASE_URL;
-        this.maxRetries = Math.max(0, maxRetries);
-        this.objectMapper = new ObjectMapper();
-        
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(timeoutSeconds, TimeUnit.SECONDS)
-                .readTimeout(timeoutSeconds, TimeUnit.SECONDS)
-                .writeTimeout(timeoutSeconds, TimeUnit.SECONDS)
-                .addInterceptor(chain -> {
-                    Request original = chain.request();
-                    Request request = original.newBuilder()
-                            .header("Authorization", "Bearer " + apiKey)
-                            .header("Content-Type", "application/json")
-                            .header("User-Agent", USER_AGENT)
-                            .build();
-                    return chain.proceed(request);
-                })
-                .build();
+        this.endpointGroup = builder.endpointGroup;
+        if (endpointGroup != null) {
+            this.baseUrl = endpointGroup.primaryBaseUrl();
+        } else {
+            this.baseUrl = builder.baseUrl != null ? builder.baseUrl.replaceAll("/$", "") : DEFAULT_BASE_URL;
+        }
+        this.maxRetries = Math.max(0, builder.maxRetries);
+        this.retryPolicy = builder.retryPolicy;
+        this.rateLimiter = builder.rateLimiter;
+        this.concurrencyLimit = builder.concurrencyLimit;
+        this.circuitBreaker = builder.circuitBreaker;
+        this.codec = builder.codec;
+        this.authorization = "Bearer " + apiKey;
+        this.resultCache = builder.resultCache;
+        this.singleFlight = builder.singleFlight ? new SingleFlight() : null;
+        
+        // Without a shared transport the client owns a private one and closes it with the client
+        this.ownsTransport = builder.transport == null;
+        HttpProtocol protocol = ownsTransport ? builder.transportBuilder.protocol() : builder.transport.protocol();
+        protocol.checkBaseUrls(baseUrl, endpointGroup);
+        this.transport = ownsTransport ? builder.transportBuilder.build() : builder.transport;
+        this.httpClient = transport.httpClient();
+        this.hedger = builder.hedging != null ? new Hedger(builder.hedging, transport::scheduler, System::nanoTime) : null;
+        this.imageLoader = new ImageLoader(builder.images,
+                new ImageFetcher(httpClient, builder.images, retryPolicy, transport::scheduler), this::workers);
+        this.healthChecks = endpointGroup != null
+                ? endpointGroup.scheduleHealthChecks(httpClient, authorization, USER_AGENT, transport::scheduler)
+                : null;
+        this.warmer = new ConnectionWarmer(httpClient, baseUrl, endpointGroup, authorization, USER_AGENT);
+        this.keepWarm = builder.keepWarmConnections > 0
+                ? warmer.keepWarm(builder.keepWarmConnections, builder.keepWarmIntervalNanos, transport.scheduler())
+                : null;
+    }
+    
+    /**
+     * Create a builder for custom configuration
+     * 
+     * @param apiKey API key
+     * @return Client builder
+     */
+    public static Builder builder(String apiKey) {
+        return new Builder(apiKey);
     }
     
     /**
@@ -154,7 +217,7 @@ public class XiangxinAIClient implements AutoCloseable {
      * }</pre>
      */
     public GuardrailResponse checkPrompt(String content) {
-        return checkPrompt(content, null);
+        return checkPrompt(content, (String) null);
     }
 
     /**
@@ -178,6 +241,37 @@ public class XiangxinAIClient implements AutoCloseable {
      * }</pre>
      */
     public GuardrailResponse checkPrompt(String content, String userId) {
+        return checkPrompt(content, userId, CallOptions.DEFAULT);
+    }
+
+    /**
+     * Check prompt security with per-call options
+     *
+     * @param content User input content to be checked
+     * @param options Per-call options, e.g. a total deadline across all retries
+     * @return Check result
+     * @throws DeadlineExceededException The call did not complete within the deadline
+     *
+     * <p>Example:
+     * <pre>{@code
+     * GuardrailResponse result = client.checkPrompt("I want to learn programming",
+     *         CallOptions.withTimeout(150, TimeUnit.MILLISECONDS));
+     * }</pre>
+     */
+    public GuardrailResponse checkPrompt(String content, CallOptions options) {
+        return checkPrompt(content, null, options);
+    }
+
+    /**
+     * Check prompt security with user ID and per-call options
+     *
+     * @param content User input content to be checked
+     * @param userId Optional, user ID of the tenant AI application, for user-level risk control and audit tracking
+     * @param options Per-call options, e.g. a total deadline across all retries
+     * @return Check result
+     * @throws DeadlineExceededException The call did not complete within the deadline
+     */
+    public GuardrailResponse checkPrompt(String content, String userId, CallOptions options) {
         // If content is an empty string, return no risk
         if (content == null || content.trim().isEmpty()) {
             return createSafeResponse();
@@ -189,7 +283,67 @@ public class XiangxinAIClient implements AutoCloseable {
             requestData.put("xxai_app_user_id", userId.trim());
         }
 
-        return makeRequest("POST", "/guardrails/input", requestData, GuardrailResponse.class);
+        return makeGuardrailRequest("/guardrails/input", requestData, userId, Deadline.of(options));
+    }
+    
+    /**
+     * Check a batch of prompts with bounded parallelism
+     *
+     * @param contents User input contents to be checked
+     * @return Results in input order, one per item
+     */
+    public List<BatchItemResult> checkPrompts(List<String> contents) {
+        return checkPrompts(contents, BatchOptions.DEFAULT);
+    }
+
+    /**
+     * Check a batch of prompts with bounded parallelism
+     *
+     * <p>At most {@code maxParallelism} items of the batch are checked at a time, on the client's worker pool that
+     * all batches share. A failing item does not fail the batch, its error is captured in its
+     * {@link BatchItemResult}.
+     *
+     * @param contents User input contents to be checked
+     * @param options Batch options, e.g. max parallelism and per-item call options
+     * @return Results in input order, one per item
+     * @throws ValidationException Contents is null
+     *
+     * <p>Example:
+     * <pre>{@code
+     * List<BatchItemResult> results = client.checkPrompts(prompts, BatchOptions.builder().maxParallelism(32).build());
+     * for (BatchItemResult item : results) {
+     *     if (item.isSuccess()) {
+     *         System.out.println(item.getIndex() + ": " + item.getResponse().getSuggestAction());
+     *     } else {
+     *         System.err.println(item.getIndex() + " failed: " + item.getError().getMessage());
+     *     }
+     * }
+     * }</pre>
+     */
+    public List<BatchItemResult> checkPrompts(List<String> contents, BatchOptions options) {
+        if (contents == null) {
+            throw new ValidationException("Contents cannot be null");
+        }
+        BatchOptions batchOptions = options != null ? options : BatchOptions.DEFAULT;
+        if (contents.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        ExecutorService executor = workers();
+        CompletableFuture<List<BatchItemResult>> batch = BatchExecutor.run(contents.size(),
+                batchOptions.getMaxParallelism(), index -> CompletableFuture.supplyAsync(
+                        () -> checkPrompt(contents.get(index), null, batchOptions.getCallOptions()), executor));
+        try {
+            return batch.get();
+        } catch (InterruptedException e) {
+            // Items already running finish, no further items are started
+            batch.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new XiangxinAIException("Batch check interrupted", e);
+        } catch (ExecutionException e) {
+            // Item failures are captured per item, the batch itself does not fail
+            throw new XiangxinAIException("Batch check failed: " + e.getCause().getMessage(), e.getCause());
+        }
     }
     
     /**
@@ -247,6 +401,20 @@ public class XiangxinAIClient implements AutoCloseable {
      * }</pre>
      */
     public GuardrailResponse checkConversation(List<Message> messages, String model, String userId) {
+        return checkConversation(messages, model, userId, CallOptions.DEFAULT);
+    }
+
+    /**
+     * Check conversation context security with per-call options
+     *
+     * @param messages Conversation message list
+     * @param model Used model name
+     * @param userId Optional, user ID of the tenant AI application, for user-level risk control and audit tracking
+     * @param options Per-call options, e.g. a total deadline across all retries
+     * @return Check result
+     * @throws DeadlineExceededException The call did not complete within the deadline
+     */
+    public GuardrailResponse checkConversation(List<Message> messages, String model, String userId, CallOptions options) {
         if (messages == null || messages.isEmpty()) {
             throw new ValidationException("Messages cannot be empty");
         }
@@ -289,7 +457,7 @@ public class XiangxinAIClient implements AutoCloseable {
             request.getExtraBody().put("xxai_app_user_id", userId.trim());
         }
 
-        return makeRequest("POST", "/guardrails", request, GuardrailResponse.class);
+        return makeGuardrailRequest("/guardrails", request, userId, Deadline.of(options));
     }
 
     /**
@@ -339,6 +507,20 @@ public class XiangxinAIClient implements AutoCloseable {
      * }</pre>
      */
     public GuardrailResponse checkResponseCtx(String prompt, String response, String userId) {
+        return checkResponseCtx(prompt, response, userId, CallOptions.DEFAULT);
+    }
+
+    /**
+     * Check the security of user input and model output with per-call options
+     *
+     * @param prompt User input text content, used to help the guardrails understand the context semantics
+     * @param response Model output text content, actual detection object
+     * @param userId Optional, user ID of the tenant AI application, for user-level risk control and audit tracking
+     * @param options Per-call options, e.g. a total deadline across all retries
+     * @return Check result, format is the same as checkPrompt
+     * @throws DeadlineExceededException The call did not complete within the deadline
+     */
+    public GuardrailResponse checkResponseCtx(String prompt, String response, String userId, CallOptions options) {
         // If prompt or response is an empty string, return no risk
         if ((prompt == null || prompt.trim().isEmpty()) && (response == null || response.trim().isEmpty())) {
             return createSafeResponse();
@@ -351,30 +533,7 @@ public class XiangxinAIClient implements AutoCloseable {
             requestData.put("xxai_app_user_id", userId.trim());
         }
 
-        return makeRequest("POST", "/guardrails/output", requestData, GuardrailResponse.class);
-    }
-
-    /**
-     * Encode image to base64 format
-     *
-     * @param imagePath Image local path or HTTP(S) link
-     * @return base64 encoded image content
-     * @throws IOException Failed to read image
-     */
-    private String encodeBase64FromPath(String imagePath) throws IOException {
-        byte[] imageData;
-
-        if (imagePath.startsWith("http://") || imagePath.startsWith("https://")) {
-            // Get image from URL
-            try (InputStream is = new URL(imagePath).openStream()) {
-                imageData = is.readAllBytes();
-            }
-        } else {
-            // Read image from local file
-            imageData = Files.readAllBytes(Paths.get(imagePath));
-        }
-
-        return Base64.getEncoder().encodeToString(imageData);
+        return makeGuardrailRequest("/guardrails/output", requestData, userId, Deadline.of(options));
     }
 
     /**
@@ -434,52 +593,43 @@ public class XiangxinAIClient implements AutoCloseable {
      * }</pre>
      */
     public GuardrailResponse checkPromptImage(String prompt, String image, String model, String userId) {
+        return checkPromptImage(prompt, image, model, userId, null);
+    }
+
+    /**
+     * Check the security of text prompt and image with image options of this call
+     *
+     * @param prompt Text prompt (can be empty)
+     * @param image Image local path or HTTP(S) link (cannot be empty)
+     * @param model Used model name
+     * @param userId Optional, user ID of the tenant AI application, for user-level risk control and audit tracking
+     * @param imageOptions Image options of this call, null for the client's {@link Builder#images(ImageOptions)}
+     * @return Check result
+     *
+     * <p>Example:
+     * <pre>{@code
+     * // Let the server fetch the image instead of downloading it here
+     * GuardrailResponse result = client.checkPromptImage(
+     *     "Is this image safe?",
+     *     "https://cdn.example.com/image.jpg",
+     *     "Xiangxin-Guardrails-VL",
+     *     null,
+     *     ImageOptions.builder().passThroughLinks(true).build()
+     * );
+     * }</pre>
+     */
+    public GuardrailResponse checkPromptImage(String prompt, String image, String model, String userId,
+                                              ImageOptions imageOptions) {
         if (image == null || image.trim().isEmpty()) {
             throw new ValidationException("Image path cannot be empty");
         }
 
-        // Encode image
-        String imageBase64;
-        try {
-            imageBase64 = encodeBase64FromPath(image);
-        } catch (java.nio.file.NoSuchFileException e) {
-            throw new ValidationException("Image file not found: " + image);
-        } catch (IOException e) {
-            throw new XiangxinAIException("Failed to encode image: " + e.getMessage(), e);
-        }
-
-        // Build message content
-        List<Object> content = new ArrayList<>();
-        if (prompt != null && !prompt.trim().isEmpty()) {
-            Map<String, String> textContent = new HashMap<>();
-            textContent.put("type", "text");
-            textContent.put("text", prompt.trim());
-            content.add(textContent);
-        }
-
-        Map<String, Object> imageContent = new HashMap<>();
-        imageContent.put("type", "image_url");
-        Map<String, String> imageUrl = new HashMap<>();
-        imageUrl.put("url", "data:image/jpeg;base64," + imageBase64);
-        imageContent.put("image_url", imageUrl);
-        content.add(imageContent);
-
-        // Create message
-        Message message = new Message("user", content);
-        List<Message> messages = new ArrayList<>();
-        messages.add(message);
-
-        GuardrailRequest request = new GuardrailRequest(model, messages);
-
-        // Add user ID
-        if (userId != null && !userId.trim().isEmpty()) {
-            if (request.getExtraBody() == null) {
-                request.setExtraBody(new HashMap<>());
-            }
-            request.getExtraBody().put("xxai_app_user_id", userId.trim());
-        }
+        // Load image, local files are encoded while the request is sent
+        List<ImageData> imageData = new ArrayList<>();
+        imageData.add(imageLoader.withOptions(imageOptions).load(image));
+        GuardrailRequest request = ImageLoader.newRequest(prompt, imageData, model, userId);
 
-        return makeRequest("POST", "/guardrails", request, GuardrailResponse.class);
+        return makeGuardrailRequest("/guardrails", request, userId, Deadline.NONE);
     }
 
     /**
@@ -491,6 +641,7 @@ public class XiangxinAIClient implements AutoCloseable {
      * @param images Image local path or HTTP(S) link list (cannot be empty)
      * @return Check result
      * @throws ValidationException Invalid input parameters
+     * @throws DeadlineExceededException Images not loaded within the load timeout of {@link ImageOptions}
      * @throws XiangxinAIException Other API errors
      *
      * <p>Example:
@@ -538,54 +689,30 @@ public class XiangxinAIClient implements AutoCloseable {
      * }</pre>
      */
     public GuardrailResponse checkPromptImages(String prompt, List<String> images, String model, String userId) {
+        return checkPromptImages(prompt, images, model, userId, null);
+    }
+
+    /**
+     * Check the security of text prompt and multiple images with image options of this call
+     *
+     * @param prompt Text prompt (can be empty)
+     * @param images Image local path or HTTP(S) link list (cannot be empty)
+     * @param model Used model name
+     * @param userId Optional, user ID of the tenant AI application, for user-level risk control and audit tracking
+     * @param imageOptions Image options of this call, null for the client's {@link Builder#images(ImageOptions)}
+     * @return Check result
+     */
+    public GuardrailResponse checkPromptImages(String prompt, List<String> images, String model, String userId,
+                                               ImageOptions imageOptions) {
         if (images == null || images.isEmpty()) {
             throw new ValidationException("Images list cannot be empty");
         }
 
-        // Build message content
-        List<Object> content = new ArrayList<>();
-        if (prompt != null && !prompt.trim().isEmpty()) {
-            Map<String, String> textContent = new HashMap<>();
-            textContent.put("type", "text");
-            textContent.put("text", prompt.trim());
-            content.add(textContent);
-        }
+        // Load all images concurrently, they are sent in input order
+        List<ImageData> imageData = imageLoader.withOptions(imageOptions).loadAll(images);
+        GuardrailRequest request = ImageLoader.newRequest(prompt, imageData, model, userId);
 
-        // Encode all images
-        for (String imagePath : images) {
-            String imageBase64;
-            try {
-                imageBase64 = encodeBase64FromPath(imagePath);
-            } catch (java.nio.file.NoSuchFileException e) {
-                throw new ValidationException("Image file not found: " + imagePath);
-            } catch (IOException e) {
-                throw new XiangxinAIException("Failed to encode image " + imagePath + ": " + e.getMessage(), e);
-            }
-
-            Map<String, Object> imageContent = new HashMap<>();
-            imageContent.put("type", "image_url");
-            Map<String, String> imageUrl = new HashMap<>();
-            imageUrl.put("url", "data:image/jpeg;base64," + imageBase64);
-            imageContent.put("image_url", imageUrl);
-            content.add(imageContent);
-        }
-
-        // Create message
-        Message message = new Message("user", content);
-        List<Message> messages = new ArrayList<>();
-        messages.add(message);
-
-        GuardrailRequest request = new GuardrailRequest(model, messages);
-
-        // Add user ID
-        if (userId != null && !userId.trim().isEmpty()) {
-            if (request.getExtraBody() == null) {
-                request.setExtraBody(new HashMap<>());
-            }
-            request.getExtraBody().put("xxai_app_user_id", userId.trim());
-        }
-
-        return makeRequest("POST", "/guardrails", request, GuardrailResponse.class);
+        return makeGuardrailRequest("/guardrails", request, userId, Deadline.NONE);
     }
 
     /**
@@ -598,6 +725,26 @@ public class XiangxinAIClient implements AutoCloseable {
         return makeRequest("GET", "/guardrails/health", null, Map.class);
     }
     
+    /**
+     * Open connections to the API ahead of the first check, e.g. on startup before reporting ready, so that
+     * DNS, TCP and TLS setup do not add to the latency of real requests. Sends {@code connections} concurrent
+     * health calls to the API, or to every replica of {@link Builder#endpoints(EndpointGroup)}, and waits for them.
+     * Over HTTP/2 the calls share one connection per host.
+     * 
+     * @param connections Number of connections to open per host
+     * @return Number of health calls answered, fewer than requested means some hosts could not be reached
+     */
+    public int warmUp(int connections) {
+        return warmer.warmUp(connections).join();
+    }
+    
+    /**
+     * @return Number of idle connections in the pool, of all clients sharing the transport
+     */
+    public int getIdleConnectionCount() {
+        return httpClient.connectionPool().idleConnectionCount();
+    }
+    
     /**
      * Get available model list
      * 
@@ -608,52 +755,173 @@ public class XiangxinAIClient implements AutoCloseable {
         return makeRequest("GET", "/guardrails/models", null, Map.class);
     }
     
+    /**
+     * Send POST request, answered with the circuit breaker's fallback decision while the breaker is open
+     * 
+     * @param userId User ID of the check, charged to its per-user rate limit budget
+     */
+    private GuardrailResponse makeGuardrailRequest(String endpoint, Object requestBody, String userId,
+                                                   Deadline deadline) {
+        if (circuitBreaker == null) {
+            return sendGuardrailRequest(endpoint, requestBody, userId, deadline);
+        }
+        try {
+            return sendGuardrailRequest(endpoint, requestBody, userId, deadline);
+        } catch (CircuitBreakerOpenException e) {
+            return circuitBreaker.fallback(e);
+        }
+    }
+    
+    /**
+     * Send POST request, answered from the result cache or joined with an identical in-flight request when those
+     * are enabled
+     */
+    private GuardrailResponse sendGuardrailRequest(String endpoint, Object requestBody, String userId,
+                                                   Deadline deadline) {
+        if (resultCache == null && singleFlight == null) {
+            acquireUserPermit(userId);
+            return makeRequest("POST", endpoint, requestBody, GuardrailResponse.class, deadline);
+        }
+        
+        RequestKey key;
+        try {
+            key = RequestKey.of(codec, authorization + baseUrl, endpoint, requestBody);
+        } catch (IOException e) {
+            throw new XiangxinAIException("Failed to serialize request: " + e.getMessage(), e);
+        }
+        
+        if (resultCache != null) {
+            GuardrailResponse cached = resultCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        
+        acquireUserPermit(userId);
+        GuardrailResponse result = singleFlight != null
+                ? singleFlight.execute(key,
+                        () -> makeRequest("POST", endpoint, requestBody, GuardrailResponse.class, deadline), deadline)
+                : makeRequest("POST", endpoint, requestBody, GuardrailResponse.class, deadline);
+        if (resultCache != null) {
+            resultCache.put(key, result);
+        }
+        return result;
+    }
+    
+    /**
+     * Pool of the batch checks and parallel image loads of this client, started on first use. Its threads are
+     * bounded by the dispatcher's maximum number of requests, however many batches run at the same time.
+     */
+    private ExecutorService workers() {
+        ExecutorService current = workers;
+        if (current == null) {
+            synchronized (this) {
+                current = workers;
+                if (current == null) {
+                    int threads = Math.max(1, httpClient.dispatcher().getMaxRequests());
+                    AtomicInteger threadNumber = new AtomicInteger();
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(), runnable -> {
+                                Thread thread = new Thread(runnable,
+                                        "xiangxinai-worker-" + threadNumber.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+                    // Idle threads exit, a client that is rarely used for batches does not keep them around
+                    executor.allowCoreThreadTimeOut(true);
+                    workers = current = executor;
+                }
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * Shed the check when its user ID is over the per-user budget of the rate limiter, cached results are not charged
+     */
+    private void acquireUserPermit(String userId) {
+        if (rateLimiter != null && !rateLimiter.tryAcquireUser(userId != null ? userId.trim() : null)) {
+            throw new RateLimitException("Client-side rate limit exceeded for this user, request not sent");
+        }
+    }
+    
     /**
      * Send HTTP request
      */
     private <T> T makeRequest(String method, String endpoint, Object requestBody, Class<T> responseType) {
-        String url = baseUrl + endpoint;
+        return makeRequest(method, endpoint, requestBody, responseType, Deadline.NONE);
+    }
+    
+    private <T> T makeRequest(String method, String endpoint, Object requestBody, Class<T> responseType, Deadline deadline) {
+        long totalDelayMillis = 0;
         
         for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            if (deadline.isExpired()) {
+                throw new DeadlineExceededException("Request deadline exceeded after " + attempt + " attempts");
+            }
+            if (rateLimiter != null) {
+                awaitPermit(deadline);
+            }
             try {
-                Request.Builder requestBuilder = new Request.Builder().url(url);
+                // Every attempt picks a replica of its own, so a retry fails over to another one
+                Endpoint target = endpointGroup != null ? endpointGroup.select() : null;
+                Request.Builder requestBuilder = new Request.Builder()
+                        .url((target != null ? target.getBaseUrl() : baseUrl) + endpoint)
+                        .header("Authorization", authorization)
+                        .header("Content-Type", "application/json")
+                        .header("User-Agent", USER_AGENT);
                 
                 if ("GET".equals(method)) {
                     requestBuilder.get();
                 } else if ("POST".equals(method)) {
-                    String jsonBody = requestBody != null ? objectMapper.writeValueAsString(requestBody) : "{}";
-                    RequestBody body = RequestBody.create(jsonBody, MediaType.get("application/json"));
-                    requestBuilder.post(body);
+                    requestBuilder.post(new JsonRequestBody(codec, requestBody));
                 } else {
                     throw new XiangxinAIException("Unsupported HTTP method: " + method);
                 }
                 
-                try (Response response = httpClient.newCall(requestBuilder.build()).execute()) {
-                    return handleResponse(response, responseType, attempt);
+                Call call = httpClient.newCall(requestBuilder.build());
+                if (deadline.isBounded()) {
+                    // Per-call deadline overrides the client call timeout when it is shorter
+                    long timeoutNanos = deadline.remainingNanos();
+                    if (transport.callTimeoutMillis() > 0) {
+                        timeoutNanos = Math.min(timeoutNanos, TimeUnit.MILLISECONDS.toNanos(transport.callTimeoutMillis()));
+                    }
+                    call.timeout().timeout(timeoutNanos, TimeUnit.NANOSECONDS);
+                }
+                
+                try (Response response = execute(call, hedger != null && HEDGED_ENDPOINT.equals(endpoint), deadline, target)) {
+                    return handleResponse(response, responseType);
                 }
                 
             } catch (IOException e) {
-                if (attempt < maxRetries) {
-                    try {
-                        Thread.sleep(1000);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new XiangxinAIException("Request interrupted", ie);
-                    }
+                if (deadline.isExpired()) {
+                    throw new DeadlineExceededException("Request deadline exceeded: " + e.getMessage(), e);
+                }
+                long delayMillis = retryDelayMillis(attempt, totalDelayMillis, 0);
+                if (delayMillis >= 0) {
+                    totalDelayMillis += delayMillis;
+                    sleepBeforeRetry(delayMillis, deadline);
                     continue;
                 }
                 throw new NetworkException("Network error: " + e.getMessage(), e);
-            } catch (AuthenticationException | ValidationException | RateLimitException e) {
+            } catch (RateLimitException e) {
+                // Wait at least as long as the server asked for, give up when that runs past the deadline
+                long delayMillis = retryDelayMillis(attempt, totalDelayMillis, e.getRetryAfterMillis());
+                if (delayMillis >= 0 && deadline.allows(delayMillis)) {
+                    totalDelayMillis += delayMillis;
+                    sleepBeforeRetry(delayMillis, deadline);
+                    continue;
+                }
+                throw e;
+            } catch (AuthenticationException | ValidationException | DeadlineExceededException
+                     | ConcurrencyLimitException | CircuitBreakerOpenException e) {
                 // These errors do not need to be retried
                 throw e;
             } catch (Exception e) {
-                if (attempt < maxRetries) {
-                    try {
-                        Thread.sleep(1000);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new XiangxinAIException("Request interrupted", ie);
-                    }
+                long delayMillis = retryDelayMillis(attempt, totalDelayMillis, 0);
+                if (delayMillis >= 0) {
+                    totalDelayMillis += delayMillis;
+                    sleepBeforeRetry(delayMillis, deadline);
                     continue;
                 }
                 throw new XiangxinAIException("Unexpected error: " + e.getMessage(), e);
@@ -663,59 +931,479 @@ public class XiangxinAIClient implements AutoCloseable {
         throw new XiangxinAIException("Request failed after " + (maxRetries + 1) + " attempts");
     }
     
+    /**
+     * Execute one HTTP attempt, guarded by the circuit breaker and the adaptive concurrency limit when those are set
+     * 
+     * @param hedged Whether a slow attempt is raced by a duplicate request
+     * @param deadline Per-call deadline, a duplicate request gets only the time left of it
+     * @param target Replica the attempt is sent to, null without an endpoint group
+     */
+    private Response execute(Call call, boolean hedged, Deadline deadline, Endpoint target) throws IOException {
+        if (circuitBreaker == null) {
+            return executeWithinLimit(call, hedged, deadline, target);
+        }
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            throw new CircuitBreakerOpenException("Circuit breaker is open, request not sent");
+        }
+        Response response;
+        try {
+            response = executeWithinLimit(call, hedged, deadline, target);
+        } catch (IOException e) {
+            permit.onError();
+            throw e;
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+        permit.onResponse(response.code());
+        return response;
+    }
+    
+    private Response executeWithinLimit(Call call, boolean hedged, Deadline deadline, Endpoint target) throws IOException {
+        if (concurrencyLimit == null) {
+            return send(call, hedged, deadline, target);
+        }
+        AdaptiveConcurrencyLimit.Permit permit = concurrencyLimit.tryAcquire();
+        if (permit == null) {
+            throw new ConcurrencyLimitException("Adaptive concurrency limit of " + concurrencyLimit.getLimit()
+                    + " requests in flight reached, request not sent");
+        }
+        Response response;
+        try {
+            response = send(call, hedged, deadline, target);
+        } catch (IOException e) {
+            permit.onDropped();
+            throw e;
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+        permit.onResponse(response.code());
+        return response;
+    }
+    
+    private Response send(Call call, boolean hedged, Deadline deadline, Endpoint target) throws IOException {
+        if (target == null) {
+            return hedged ? hedger.execute(call, deadline) : call.execute();
+        }
+        long startNanos = target.onStart();
+        Response response;
+        try {
+            response = hedged ? hedger.execute(call, deadline) : call.execute();
+        } catch (IOException e) {
+            target.onError();
+            throw e;
+        } catch (RuntimeException e) {
+            target.release();
+            throw e;
+        }
+        target.onResponse(response.code(), startNanos);
+        return response;
+    }
+    
+    /**
+     * Backoff before the retry following the given attempt, -1 when no retries or total delay are left, or the
+     * server asked to wait longer than the retry policy's maximum backoff
+     * 
+     * @param minDelayMillis Lower bound of the delay, e.g. the server's Retry-After
+     */
+    private long retryDelayMillis(int attempt, long totalDelayMillis, long minDelayMillis) {
+        if (attempt >= maxRetries) {
+            return -1;
+        }
+        long delayMillis = retryPolicy.retryDelayMillis(attempt, minDelayMillis);
+        return delayMillis >= 0 && retryPolicy.allowsTotalDelay(totalDelayMillis + delayMillis) ? delayMillis : -1;
+    }
+    
+    /**
+     * Wait for a permit of the client-side rate limiter, fails fast when none is available in time
+     */
+    private void awaitPermit(Deadline deadline) {
+        long waitNanos = rateLimiter.reserve(deadline);
+        if (waitNanos < 0) {
+            throw new RateLimitException("Client-side rate limit exceeded, request not sent");
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new XiangxinAIException("Request interrupted", ie);
+            }
+        }
+    }
+    
+    /**
+     * Wait before the next attempt, fails fast when the wait would run past the deadline
+     */
+    private void sleepBeforeRetry(long waitMillis, Deadline deadline) {
+        if (!deadline.allows(waitMillis)) {
+            throw new DeadlineExceededException("Request deadline exceeded, no time left to retry");
+        }
+        try {
+            Thread.sleep(waitMillis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new XiangxinAIException("Request interrupted", ie);
+        }
+    }
+    
     /**
      * Handle HTTP response
      */
-    private <T> T handleResponse(Response response, Class<T> responseType, int attempt) throws IOException {
-        String responseBody = response.body() != null ? response.body().string() : "";
+    private <T> T handleResponse(Response response, Class<T> responseType) throws IOException {
+        ResponseBody body = response.body();
+        if (rateLimiter != null) {
+            rateLimiter.onResponse(response);
+        }
         
         if (response.isSuccessful()) {
-            return objectMapper.readValue(responseBody, responseType);
+            if (body == null) {
+                throw new IOException("Empty response body");
+            }
+            // Parse straight from the stream, the body is never buffered as a String
+            try (InputStream in = body.byteStream()) {
+                return codec.readerFor(responseType).readValue(in);
+            }
         }
         
+        // Only error bodies are buffered, they are small and needed for the error message
+        String responseBody = body != null ? body.string() : "";
+        
         switch (response.code()) {
             case 401:
                 throw new AuthenticationException("Invalid API key");
             case 422:
-                try {
-                    JsonNode errorNode = objectMapper.readTree(responseBody);
-                    String detail = errorNode.has("detail") ? errorNode.get("detail").asText() : "Validation error";
-                    throw new ValidationException("Validation error: " + detail);
-                } catch (Exception e) {
-                    throw new ValidationException("Validation error: " + responseBody);
-                }
+                throw new ValidationException("Validation error: " + errorDetail(responseBody));
             case 429:
-                if (attempt < maxRetries) {
-                    // Exponential backoff retry
-                    int waitTime = (int) Math.pow(2, attempt) * 1000 + 1000;
-                    try {
-                        Thread.sleep(waitTime);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new XiangxinAIException("Request interrupted", ie);
-                    }
-                }
-                throw new RateLimitException("Rate limit exceeded");
+                // Retried by makeRequest after the server's Retry-After or the retry backoff
+                throw new RateLimitException("Rate limit exceeded",
+                        RateLimitHeaders.retryAfterMillis(response.header(RateLimitHeaders.RETRY_AFTER)));
             default:
-                String errorMsg = responseBody;
-                try {
-                    JsonNode errorNode = objectMapper.readTree(responseBody);
-                    errorMsg = errorNode.has("detail") ? errorNode.get("detail").asText() : responseBody;
-                } catch (Exception ignored) {
-                    // Use original response body
-                }
-                throw new XiangxinAIException("API request failed with status " + response.code() + ": " + errorMsg);
+                throw new XiangxinAIException("API request failed with status " + response.code() + ": " + errorDetail(responseBody));
         }
     }
     
+    /**
+     * Extract the "detail" field of an error body, falling back to the raw body
+     */
+    private String errorDetail(String responseBody) {
+        try {
+            JsonNode errorNode = codec.readTree(responseBody);
+            if (errorNode != null && errorNode.has("detail")) {
+                return errorNode.get("detail").asText();
+            }
+        } catch (Exception ignored) {
+            // Use original response body
+        }
+        return responseBody;
+    }
+    
     /**
      * Close HTTP client resources
      */
     @Override
     public void close() {
-        if (httpClient != null) {
-            httpClient.dispatcher().executorService().shutdown();
-            httpClient.connectionPool().evictAll();
+        if (healthChecks != null) {
+            healthChecks.cancel(false);
+        }
+        if (keepWarm != null) {
+            keepWarm.cancel(false);
+        }
+        ExecutorService current = workers;
+        if (current != null) {
+            current.shutdownNow();
+        }
+        if (ownsTransport) {
+            transport.close();
+        }
+    }
+    
+    /**
+     * Builder of {@link XiangxinAIClient}
+     * 
+     * <p>All timeouts accept sub-second values. The connection pool settings of {@link ConcurrencyConfig} apply to
+     * the synchronous client as well, the calling threads themselves bound its concurrency.
+     * 
+     * <p>Example:
+     * <pre>{@code
+     * XiangxinAIClient client = XiangxinAIClient.builder("your-api-key")
+     *     .baseUrl("https://api.xiangxinai.cn/v1")
+     *     .connectTimeout(50, TimeUnit.MILLISECONDS)
+     *     .readTimeout(120, TimeUnit.MILLISECONDS)
+     *     .writeTimeout(120, TimeUnit.MILLISECONDS)
+     *     .callTimeout(150, TimeUnit.MILLISECONDS)
+     *     .maxRetries(1)
+     *     .build();
+     * }</pre>
+     */
+    public static final class Builder {
+        
+        private final String apiKey;
+        private String baseUrl = DEFAULT_BASE_URL;
+        private final XiangxinAITransport.Builder transportBuilder = XiangxinAITransport.builder();
+        private XiangxinAITransport transport;
+        private int maxRetries = DEFAULT_MAX_RETRIES;
+        private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+        private RateLimiter rateLimiter;
+        private AdaptiveConcurrencyLimit concurrencyLimit;
+        private CircuitBreaker circuitBreaker;
+        private HedgingPolicy hedging;
+        private EndpointGroup endpointGroup;
+        private int keepWarmConnections;
+        private ImageOptions images = ImageOptions.DEFAULT;
+        private long keepWarmIntervalNanos;
+        private JsonCodec codec = JsonCodec.defaultCodec();
+        private ResultCache resultCache;
+        private boolean singleFlight;
+        
+        private Builder(String apiKey) {
+            this.apiKey = apiKey;
+        }
+        
+        /**
+         * @param baseUrl API base URL
+         */
+        public Builder baseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+            return this;
+        }
+        
+        /**
+         * Set connect, read and write timeouts at once
+         * 
+         * @param timeout Timeout value
+         * @param unit Time unit of timeout
+         */
+        public Builder timeout(long timeout, TimeUnit unit) {
+            transportBuilder.timeout(timeout, unit);
+            return this;
+        }
+        
+        /**
+         * @param timeout Timeout for establishing a connection, 0 means no timeout
+         * @param unit Time unit of timeout
+         */
+        public Builder connectTimeout(long timeout, TimeUnit unit) {
+            transportBuilder.connectTimeout(timeout, unit);
+            return this;
+        }
+        
+        /**
+         * @param timeout Timeout between reads of the response, 0 means no timeout
+         * @param unit Time unit of timeout
+         */
+        public Builder readTimeout(long timeout, TimeUnit unit) {
+            transportBuilder.readTimeout(timeout, unit);
+            return this;
+        }
+        
+        /**
+         * @param timeout Timeout between writes of the request, 0 means no timeout
+         * @param unit Time unit of timeout
+         */
+        public Builder writeTimeout(long timeout, TimeUnit unit) {
+            transportBuilder.writeTimeout(timeout, unit);
+            return this;
+        }
+        
+        /**
+         * @param timeout Timeout of a single HTTP attempt from start to end, 0 means no timeout
+         * @param unit Time unit of timeout
+         */
+        public Builder callTimeout(long timeout, TimeUnit unit) {
+            transportBuilder.callTimeout(timeout, unit);
+            return this;
+        }
+        
+        /**
+         * @param maxRetries Maximum retry times
+         */
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+        
+        /**
+         * @param retryPolicy Backoff between retries, jittered exponential backoff by default
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            if (retryPolicy == null) {
+                throw new IllegalArgumentException("retryPolicy cannot be null");
+            }
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+        
+        /**
+         * Pace requests with a client-side rate limiter that follows the server's rate-limit headers,
+         * disabled by default
+         * 
+         * @param rateLimiter Rate limiter, share it between clients using the same API key
+         */
+        public Builder rateLimiter(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+        
+        /**
+         * Limit the requests in flight with a limit that adapts to latency and overload responses,
+         * disabled by default
+         * 
+         * @param concurrencyLimit Adaptive concurrency limit, share it between clients calling the same API
+         */
+        public Builder concurrencyLimit(AdaptiveConcurrencyLimit concurrencyLimit) {
+            this.concurrencyLimit = concurrencyLimit;
+            return this;
+        }
+        
+        /**
+         * Stop sending requests while the API is failing, guardrail checks return the breaker's fallback decision
+         * meanwhile; disabled by default
+         * 
+         * @param circuitBreaker Circuit breaker, share it between clients calling the same API
+         */
+        public Builder circuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+        
+        /**
+         * Race slow prompt checks with a duplicate request, disabled by default. Hedged checks run on the
+         * connection pool's dispatcher, raise its per-host limit with {@link #concurrency(ConcurrencyConfig)}
+         * under load
+         * 
+         * @param hedging Hedging policy
+         */
+        public Builder hedging(HedgingPolicy hedging) {
+            this.hedging = hedging;
+            return this;
+        }
+        
+        /**
+         * Spread requests over several replicas of the API instead of the single base URL, which is ignored then
+         * 
+         * @param endpointGroup Replicas and load balancing settings
+         */
+        public Builder endpoints(EndpointGroup endpointGroup) {
+            this.endpointGroup = endpointGroup;
+            return this;
+        }
+        
+        /**
+         * @param images Parallelism, size limit, timeouts and retries of loading the images of multimodal checks
+         */
+        public Builder images(ImageOptions images) {
+            if (images == null) {
+                throw new IllegalArgumentException("images cannot be null");
+            }
+            this.images = images;
+            return this;
+        }
+        
+        /**
+         * Keep connections to the API from going idle between bursts of traffic, disabled by default. Every
+         * interval, {@code connections} concurrent health calls are sent to every host. Pick an interval shorter
+         * than the pool's keep-alive of {@link ConcurrencyConfig} and the idle timeout of the server, and keep
+         * {@code connections} within the pool's idle connections.
+         * 
+         * @param connections Number of connections to keep open per host
+         * @param interval Time between two rounds of health calls
+         * @param unit Time unit of interval
+         */
+        public Builder keepWarm(int connections, long interval, TimeUnit unit) {
+            if (connections < 1) {
+                throw new IllegalArgumentException("connections must be at least 1");
+            }
+            if (interval <= 0) {
+                throw new IllegalArgumentException("interval must be positive");
+            }
+            this.keepWarmConnections = connections;
+            this.keepWarmIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+        
+        /**
+         * @param concurrency Connection pool limits
+         */
+        public Builder concurrency(ConcurrencyConfig concurrency) {
+            if (concurrency == null) {
+                throw new IllegalArgumentException("concurrency cannot be null");
+            }
+            transportBuilder.concurrency(concurrency);
+            return this;
+        }
+        
+        /**
+         * Talk HTTP/2 to the API, e.g. {@link HttpProtocol#H2_PRIOR_KNOWLEDGE} for a self-hosted server on
+         * plain HTTP, so concurrent checks share a few multiplexed connections
+         * 
+         * @param protocol HTTP protocol, {@link HttpProtocol#HTTP_2} with HTTP/1.1 fallback by default
+         */
+        public Builder protocol(HttpProtocol protocol) {
+            transportBuilder.protocol(protocol);
+            return this;
+        }
+        
+        /**
+         * Gzip large request bodies such as long conversations and base64 images, disabled by default
+         * 
+         * @param compression Compression settings, e.g. {@link RequestCompression#gzip()}
+         */
+        public Builder compression(RequestCompression compression) {
+            transportBuilder.compression(compression);
+            return this;
+        }
+        
+        /**
+         * Use a transport shared with other clients, the timeout, concurrency, protocol and compression
+         * settings of this builder are ignored in that case
+         * 
+         * @param transport Shared transport, not closed when the client is closed
+         */
+        public Builder transport(XiangxinAITransport transport) {
+            if (transport == null) {
+                throw new IllegalArgumentException("transport cannot be null");
+            }
+            this.transport = transport;
+            return this;
+        }
+        
+        /**
+         * @param codec JSON codec, clients share {@link JsonCodec#defaultCodec()} by default
+         */
+        public Builder codec(JsonCodec codec) {
+            if (codec == null) {
+                throw new IllegalArgumentException("codec cannot be null");
+            }
+            this.codec = codec;
+            return this;
+        }
+        
+        /**
+         * Enable the client-side result cache, disabled by default
+         * 
+         * @param resultCache Result cache, can be shared with other clients
+         */
+        public Builder resultCache(ResultCache resultCache) {
+            this.resultCache = resultCache;
+            return this;
+        }
+        
+        /**
+         * Coalesce identical concurrent requests (same endpoint, body and user ID) into one network call,
+         * disabled by default
+         * 
+         * @param singleFlight Whether to de-duplicate in-flight requests
+         */
+        public Builder singleFlight(boolean singleFlight) {
+            this.singleFlight = singleFlight;
+            return this;
+        }
+        
+        public XiangxinAIClient build() {
+            return new XiangxinAIClient(this);
         }
     }
 }
\ No newline at end of file
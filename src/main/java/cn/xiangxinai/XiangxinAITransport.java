@@ -0,0 +1,272 @@
+package cn.xiangxinai;
+
+import okhttp3.OkHttpClient;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP transport that can be shared by many clients - one connection pool and one dispatcher
+ * 
+ * <p>Every client builds its own transport by default. Services that create one client per tenant API key
+ * should build a single transport and pass it to every client instead, so that all tenants use the same warm
+ * connection pool and dispatcher threads. The API key is not part of the transport, each client sends its own
+ * key with every request.
+ * 
+ * <p>The transport also owns the timer thread that runs delayed work of its clients, such as retry backoff,
+ * so retries never occupy {@code ForkJoinPool.commonPool()}. An application scheduler can be passed to the
+ * builder instead, it is not shut down by the transport.
+ * 
+ * <p>A shared transport is not closed by the clients using it, close it once all of them are done.
+ * 
+ * <p>Example:
+ * <pre>{@code
+ * XiangxinAITransport transport = XiangxinAITransport.builder()
+ *     .timeout(5, TimeUnit.SECONDS)
+ *     .concurrency(ConcurrencyConfig.builder().maxRequests(256).maxRequestsPerHost(256).build())
+ *     .build();
+ * 
+ * XiangxinAIClient tenantA = XiangxinAIClient.builder("tenant-a-api-key").transport(transport).build();
+ * AsyncXiangxinAIClient tenantB = AsyncXiangxinAIClient.builder("tenant-b-api-key").transport(transport).build();
+ * 
+ * // On shutdown
+ * transport.close();
+ * }</pre>
+ */
+public final class XiangxinAITransport implements AutoCloseable {
+    
+    private static final int DEFAULT_TIMEOUT = 30;
+    
+    private final OkHttpClient httpClient;
+    private final long callTimeoutMillis;
+    private final HttpProtocol protocol;
+    private final int maxOutstandingRequests;
+    private final AtomicInteger outstandingRequests = new AtomicInteger();
+    private final boolean ownsScheduler;
+    private volatile ScheduledExecutorService scheduler;
+    
+    private XiangxinAITransport(Builder builder) {
+        this.callTimeoutMillis = builder.callTimeoutMillis;
+        this.protocol = builder.protocol;
+        this.maxOutstandingRequests = builder.concurrency.maxOutstandingRequests();
+        this.ownsScheduler = builder.scheduler == null;
+        this.scheduler = builder.scheduler;
+        
+        OkHttpClient.Builder httpClientBuilder = new OkHttpClient.Builder()
+                .connectTimeout(builder.connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(builder.readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .writeTimeout(builder.writeTimeoutMillis, TimeUnit.MILLISECONDS)
+                .callTimeout(builder.callTimeoutMillis, TimeUnit.MILLISECONDS)
+                .dispatcher(builder.concurrency.newDispatcher())
+                .connectionPool(builder.concurrency.newConnectionPool())
+                .protocols(builder.protocol.protocols());
+        if (builder.compression != null) {
+            httpClientBuilder.addInterceptor(new CompressionInterceptor(builder.compression));
+        }
+        this.httpClient = httpClientBuilder.build();
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    OkHttpClient httpClient() {
+        return httpClient;
+    }
+    
+    long callTimeoutMillis() {
+        return callTimeoutMillis;
+    }
+    
+    HttpProtocol protocol() {
+        return protocol;
+    }
+    
+    int maxOutstandingRequests() {
+        return maxOutstandingRequests;
+    }
+    
+    /**
+     * Reserve an outstanding request slot, fails fast when the running and pending limits are exhausted
+     */
+    boolean tryAcquireSlot() {
+        while (true) {
+            int current = outstandingRequests.get();
+            if (current >= maxOutstandingRequests) {
+                return false;
+            }
+            if (outstandingRequests.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+    
+    void releaseSlot() {
+        outstandingRequests.decrementAndGet();
+    }
+    
+    /**
+     * Timer for delayed work such as retry backoff, the owned timer thread is started on first use
+     */
+    ScheduledExecutorService scheduler() {
+        ScheduledExecutorService current = scheduler;
+        if (current == null) {
+            synchronized (this) {
+                current = scheduler;
+                if (current == null) {
+                    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                        Thread thread = new Thread(runnable, "xiangxinai-scheduler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    // Cancelled retries and timeouts are dropped at once instead of waiting for their delay
+                    executor.setRemoveOnCancelPolicy(true);
+                    scheduler = current = executor;
+                }
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * Close the connection pool, dispatcher threads and the owned timer thread
+     */
+    @Override
+    public void close() {
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+        ScheduledExecutorService current = scheduler;
+        if (ownsScheduler && current != null) {
+            current.shutdownNow();
+        }
+    }
+    
+    /**
+     * Builder of {@link XiangxinAITransport}
+     */
+    public static final class Builder {
+        
+        private long connectTimeoutMillis = TimeUnit.SECONDS.toMillis(DEFAULT_TIMEOUT);
+        private long readTimeoutMillis = TimeUnit.SECONDS.toMillis(DEFAULT_TIMEOUT);
+        private long writeTimeoutMillis = TimeUnit.SECONDS.toMillis(DEFAULT_TIMEOUT);
+        private long callTimeoutMillis = 0;
+        private ConcurrencyConfig concurrency = ConcurrencyConfig.defaults();
+        private HttpProtocol protocol = HttpProtocol.HTTP_2;
+        private RequestCompression compression;
+        private ScheduledExecutorService scheduler;
+        
+        private Builder() {
+        }
+        
+        /**
+         * Set connect, read and write timeouts at once
+         * 
+         * @param timeout Timeout value
+         * @param unit Time unit of timeout
+         */
+        public Builder timeout(long timeout, TimeUnit unit) {
+            long millis = toTimeoutMillis(timeout, unit);
+            this.connectTimeoutMillis = millis;
+            this.readTimeoutMillis = millis;
+            this.writeTimeoutMillis = millis;
+            return this;
+        }
+        
+        /**
+         * @param timeout Timeout for establishing a connection, 0 means no timeout
+         * @param unit Time unit of timeout
+         */
+        public Builder connectTimeout(long timeout, TimeUnit unit) {
+            this.connectTimeoutMillis = toTimeoutMillis(timeout, unit);
+            return this;
+        }
+        
+        /**
+         * @param timeout Timeout between reads of the response, 0 means no timeout
+         * @param unit Time unit of timeout
+         */
+        public Builder readTimeout(long timeout, TimeUnit unit) {
+            this.readTimeoutMillis = toTimeoutMillis(timeout, unit);
+            return this;
+        }
+        
+        /**
+         * @param timeout Timeout between writes of the request, 0 means no timeout
+         * @param unit Time unit of timeout
+         */
+        public Builder writeTimeout(long timeout, TimeUnit unit) {
+            this.writeTimeoutMillis = toTimeoutMillis(timeout, unit);
+            return this;
+        }
+        
+        /**
+         * @param timeout Timeout of a single HTTP attempt from start to end, 0 means no timeout
+         * @param unit Time unit of timeout
+         */
+        public Builder callTimeout(long timeout, TimeUnit unit) {
+            this.callTimeoutMillis = toTimeoutMillis(timeout, unit);
+            return this;
+        }
+        
+        /**
+         * @param concurrency Dispatcher, connection pool and pending queue limits
+         */
+        public Builder concurrency(ConcurrencyConfig concurrency) {
+            if (concurrency == null) {
+                throw new IllegalArgumentException("concurrency cannot be null");
+            }
+            this.concurrency = concurrency;
+            return this;
+        }
+        
+        /**
+         * @param protocol HTTP protocol, {@link HttpProtocol#HTTP_2} with HTTP/1.1 fallback by default
+         */
+        public Builder protocol(HttpProtocol protocol) {
+            if (protocol == null) {
+                throw new IllegalArgumentException("protocol cannot be null");
+            }
+            this.protocol = protocol;
+            return this;
+        }
+        
+        HttpProtocol protocol() {
+            return protocol;
+        }
+        
+        /**
+         * @param compression Gzip compression of large request bodies, null disables it (default)
+         */
+        public Builder compression(RequestCompression compression) {
+            this.compression = compression;
+            return this;
+        }
+        
+        /**
+         * Run delayed work such as retry backoff on an application scheduler instead of the transport's
+         * own timer thread
+         * 
+         * @param scheduler Scheduler, not shut down when the transport is closed
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            if (scheduler == null) {
+                throw new IllegalArgumentException("scheduler cannot be null");
+            }
+            this.scheduler = scheduler;
+            return this;
+        }
+        
+        public XiangxinAITransport build() {
+            return new XiangxinAITransport(this);
+        }
+        
+        private static long toTimeoutMillis(long timeout, TimeUnit unit) {
+            if (timeout < 0) {
+                throw new IllegalArgumentException("timeout cannot be negative");
+            }
+            // Keep sub-millisecond values from silently turning into "no timeout"
+            return timeout > 0 ? Math.max(1, unit.toMillis(timeout)) : 0;
+        }
+    }
+}
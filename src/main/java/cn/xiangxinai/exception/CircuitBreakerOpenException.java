@@ -0,0 +1,15 @@
+package cn.xiangxinai.exception;
+
+/**
+ * Circuit breaker open exception, the API was failing and the request was rejected locally without being sent
+ */
+public class CircuitBreakerOpenException extends XiangxinAIException {
+
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+
+    public CircuitBreakerOpenException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
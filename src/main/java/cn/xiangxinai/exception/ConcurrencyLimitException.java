@@ -0,0 +1,15 @@
+package cn.xiangxinai.exception;
+
+/**
+ * Client-side concurrency limit exception, the request was rejected locally without being sent
+ */
+public class ConcurrencyLimitException extends XiangxinAIException {
+
+    public ConcurrencyLimitException(String message) {
+        super(message);
+    }
+
+    public ConcurrencyLimitException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
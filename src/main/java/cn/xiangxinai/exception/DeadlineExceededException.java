@@ -0,0 +1,15 @@
+package cn.xiangxinai.exception;
+
+/**
+ * Call deadline exceeded, the total time budget of the call (including retries) was used up
+ */
+public class DeadlineExceededException extends NetworkException {
+    
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+    
+    public DeadlineExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -5,11 +5,30 @@ package cn.xiangxinai.exception;
  */
 public class RateLimitException extends XiangxinAIException {
     
+    private final long retryAfterMillis;
+    
     public RateLimitException(String message) {
-        super(message);
+        this(message, -1);
     }
     
     public RateLimitException(String message, Throwable cause) {
         super(message, cause);
+        this.retryAfterMillis = -1;
+    }
+    
+    /**
+     * @param message Error message
+     * @param retryAfterMillis Wait requested by the server before the next request, -1 when unknown
+     */
+    public RateLimitException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+    
+    /**
+     * @return Wait requested by the server's Retry-After header in milliseconds, -1 when unknown
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,130 @@
+package cn.xiangxinai;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testRejectsOnceLimitIsReached() {
+        AdaptiveConcurrencyLimit limit = AdaptiveConcurrencyLimit.builder()
+                .initialLimit(2)
+                .ticker(() -> 0)
+                .build();
+
+        AdaptiveConcurrencyLimit.Permit first = limit.tryAcquire();
+        AdaptiveConcurrencyLimit.Permit second = limit.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(limit.tryAcquire());
+        assertEquals(1, limit.getRejectedCount());
+
+        first.release();
+        first.release();
+        assertEquals(1, limit.getInFlight());
+        assertNotNull(limit.tryAcquire());
+    }
+
+    @Test
+    public void testGrowsWhileLatencyStaysFlat() {
+        AtomicLong now = new AtomicLong();
+        AdaptiveConcurrencyLimit limit = AdaptiveConcurrencyLimit.builder()
+                .initialLimit(4)
+                .maxLimit(10)
+                .ticker(now::get)
+                .build();
+
+        for (int round = 0; round < 20; round++) {
+            runRound(limit, now, limit.getLimit(), 20 * MILLIS, 200);
+        }
+        assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    public void testIdleClientDoesNotGrow() {
+        AtomicLong now = new AtomicLong();
+        AdaptiveConcurrencyLimit limit = AdaptiveConcurrencyLimit.builder()
+                .initialLimit(10)
+                .ticker(now::get)
+                .build();
+
+        for (int i = 0; i < 100; i++) {
+            runRound(limit, now, 1, 20 * MILLIS, 200);
+        }
+        assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    public void testShrinksWhenLatencyRises() {
+        AtomicLong now = new AtomicLong();
+        AdaptiveConcurrencyLimit limit = AdaptiveConcurrencyLimit.builder()
+                .initialLimit(50)
+                .ticker(now::get)
+                .build();
+
+        runRound(limit, now, 1, 20 * MILLIS, 200);
+        for (int i = 0; i < 20; i++) {
+            runRound(limit, now, 1, 200 * MILLIS, 200);
+        }
+        assertEquals(30, limit.getLimit());
+    }
+
+    @Test
+    public void testOverloadCutsLimitDownToMinimum() {
+        AdaptiveConcurrencyLimit limit = AdaptiveConcurrencyLimit.builder()
+                .initialLimit(100)
+                .minLimit(5)
+                .backoffRatio(0.5)
+                .ticker(() -> 0)
+                .build();
+
+        limit.tryAcquire().onResponse(503);
+        assertEquals(50, limit.getLimit());
+        limit.tryAcquire().onResponse(429);
+        assertEquals(25, limit.getLimit());
+        limit.tryAcquire().onDropped();
+        assertEquals(12, limit.getLimit());
+
+        // Client errors are answers of a healthy server
+        limit.tryAcquire().onResponse(422);
+        assertEquals(12, limit.getLimit());
+
+        for (int i = 0; i < 10; i++) {
+            limit.tryAcquire().onDropped();
+        }
+        assertEquals(5, limit.getLimit());
+        assertEquals(0, limit.getInFlight());
+    }
+
+    @Test
+    public void testBuilderValidation() {
+        assertThrows(IllegalArgumentException.class, () -> AdaptiveConcurrencyLimit.builder().initialLimit(0));
+        assertThrows(IllegalArgumentException.class, () -> AdaptiveConcurrencyLimit.builder().backoffRatio(1.0));
+        assertEquals(3, AdaptiveConcurrencyLimit.builder().initialLimit(1).minLimit(3).build().getLimit());
+    }
+
+    /**
+     * Start the given number of attempts at once and complete them all after the given round-trip time
+     */
+    private static void runRound(AdaptiveConcurrencyLimit limit, AtomicLong now, int concurrency, long rttNanos,
+                                 int code) {
+        List<AdaptiveConcurrencyLimit.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            AdaptiveConcurrencyLimit.Permit permit = limit.tryAcquire();
+            if (permit != null) {
+                permits.add(permit);
+            }
+        }
+        now.addAndGet(rttNanos);
+        for (AdaptiveConcurrencyLimit.Permit permit : permits) {
+            permit.onResponse(code);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.XiangxinAIException;
+import cn.xiangxinai.model.GuardrailResponse;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchExecutorTest {
+
+    private static GuardrailResponse response(String id) {
+        GuardrailResponse response = new GuardrailResponse();
+        response.setId(id);
+        return response;
+    }
+
+    @Test
+    public void testResultsKeepInputOrderAndCaptureErrors() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<BatchItemResult> results = BatchExecutor.run(20, 4, index -> CompletableFuture.supplyAsync(() -> {
+                try {
+                    // Later items finish first
+                    Thread.sleep(20 - index);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (index == 7) {
+                    throw new XiangxinAIException("item 7 failed");
+                }
+                return response("r" + index);
+            }, executor)).get(5, TimeUnit.SECONDS);
+
+            assertEquals(20, results.size());
+            for (int i = 0; i < 20; i++) {
+                BatchItemResult item = results.get(i);
+                assertEquals(i, item.getIndex());
+                if (i == 7) {
+                    assertFalse(item.isSuccess());
+                    assertTrue(item.getError() instanceof XiangxinAIException);
+                } else {
+                    assertTrue(item.isSuccess());
+                    assertEquals("r" + i, item.getResponse().getId());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testParallelismIsBounded() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        try {
+            BatchExecutor.run(50, 3, index -> CompletableFuture.supplyAsync(() -> {
+                int current = inFlight.incrementAndGet();
+                maxInFlight.accumulateAndGet(current, Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                inFlight.decrementAndGet();
+                return response("r" + index);
+            }, executor)).get(5, TimeUnit.SECONDS);
+
+            assertTrue(maxInFlight.get() <= 3, "max in flight was " + maxInFlight.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLargeBatchOfInlineCompletionsDoesNotRecurse() throws Exception {
+        List<BatchItemResult> results = BatchExecutor.run(200000, 8,
+                index -> CompletableFuture.completedFuture(response("r" + index))).get(5, TimeUnit.SECONDS);
+
+        assertEquals(200000, results.size());
+        assertEquals("r199999", results.get(199999).getResponse().getId());
+    }
+
+    @Test
+    public void testEmptyBatch() throws Exception {
+        assertTrue(BatchExecutor.run(0, 8, index -> {
+            throw new AssertionError("no item should be checked");
+        }).get(1, TimeUnit.SECONDS).isEmpty());
+    }
+
+    @Test
+    public void testCancelledBatchStartsNoFurtherItems() throws Exception {
+        AtomicInteger started = new AtomicInteger();
+        CompletableFuture<GuardrailResponse> blocked = new CompletableFuture<>();
+        CompletableFuture<List<BatchItemResult>> batch = BatchExecutor.run(10, 2, index -> {
+            started.incrementAndGet();
+            return blocked;
+        });
+        assertEquals(2, started.get());
+
+        batch.cancel(false);
+        blocked.complete(response("late"));
+        assertEquals(2, started.get());
+    }
+
+    @Test
+    public void testClientBatchesShareOneBoundedPool() throws Exception {
+        // Nothing listens on the base URL, every item fails fast
+        try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                .baseUrl("http://127.0.0.1:1/v1")
+                .maxRetries(0)
+                .concurrency(ConcurrencyConfig.builder().maxRequests(2).build())
+                .build()) {
+            List<String> prompts = new ArrayList<>(Collections.nCopies(20, "hello"));
+            for (int i = 0; i < 3; i++) {
+                List<BatchItemResult> results = client.checkPrompts(prompts,
+                        BatchOptions.builder().maxParallelism(8).build());
+                assertEquals(20, results.size());
+                assertFalse(results.get(19).isSuccess());
+            }
+            assertTrue(workerThreads() <= 2, "worker threads: " + workerThreads());
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (workerThreads() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, workerThreads());
+    }
+
+    private static long workerThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("xiangxinai-worker-"))
+                .count();
+    }
+}
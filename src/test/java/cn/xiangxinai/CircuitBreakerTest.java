@@ -0,0 +1,192 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.CircuitBreakerOpenException;
+import cn.xiangxinai.model.GuardrailResponse;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CircuitBreakerTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testOpensOnFailureRate() {
+        List<String> transitions = new ArrayList<>();
+        CircuitBreaker breaker = CircuitBreaker.builder()
+                .slidingWindowSize(10)
+                .minimumNumberOfCalls(4)
+                .failureRateThreshold(50)
+                .listener((from, to) -> transitions.add(from + "->" + to))
+                .ticker(() -> 0)
+                .build();
+
+        breaker.tryAcquire().onResponse(200);
+        breaker.tryAcquire().onResponse(503);
+        breaker.tryAcquire().onResponse(200);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(-1.0, breaker.getFailureRate(), 1e-9);
+
+        breaker.tryAcquire().onError();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+        assertEquals(1, breaker.getNotPermittedCount());
+        assertEquals(1, transitions.size());
+        assertEquals("CLOSED->OPEN", transitions.get(0));
+    }
+
+    @Test
+    public void testClientErrorsAreNotFailures() {
+        CircuitBreaker breaker = CircuitBreaker.builder()
+                .slidingWindowSize(4)
+                .minimumNumberOfCalls(4)
+                .ticker(() -> 0)
+                .build();
+
+        for (int i = 0; i < 10; i++) {
+            breaker.tryAcquire().onResponse(i % 2 == 0 ? 422 : 429);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0.0, breaker.getFailureRate(), 1e-9);
+    }
+
+    @Test
+    public void testOpensOnSlowCallRate() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker breaker = CircuitBreaker.builder()
+                .slidingWindowSize(4)
+                .minimumNumberOfCalls(4)
+                .slowCallDuration(1, TimeUnit.SECONDS)
+                .slowCallRateThreshold(75)
+                .ticker(now::get)
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            CircuitBreaker.Permit permit = breaker.tryAcquire();
+            now.addAndGet(2000 * MILLIS);
+            permit.onResponse(200);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        CircuitBreaker.Permit permit = breaker.tryAcquire();
+        now.addAndGet(1500 * MILLIS);
+        permit.onResponse(200);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenTrialsCloseOrReopen() {
+        AtomicLong now = new AtomicLong();
+        List<String> transitions = new ArrayList<>();
+        CircuitBreaker breaker = CircuitBreaker.builder()
+                .slidingWindowSize(2)
+                .minimumNumberOfCalls(2)
+                .waitDurationInOpenState(10, TimeUnit.SECONDS)
+                .permittedCallsInHalfOpenState(2)
+                .listener((from, to) -> transitions.add(from + "->" + to))
+                .ticker(now::get)
+                .build();
+
+        breaker.tryAcquire().onError();
+        breaker.tryAcquire().onError();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        now.addAndGet(10_000 * MILLIS);
+        CircuitBreaker.Permit first = breaker.tryAcquire();
+        CircuitBreaker.Permit second = breaker.tryAcquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+        first.onResponse(200);
+        second.onResponse(500);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        now.addAndGet(10_000 * MILLIS);
+        CircuitBreaker.Permit cancelled = breaker.tryAcquire();
+        cancelled.release();
+        breaker.tryAcquire().onResponse(200);
+        breaker.tryAcquire().onResponse(200);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        assertEquals(5, transitions.size());
+        assertEquals("CLOSED->OPEN", transitions.get(0));
+        assertEquals("OPEN->HALF_OPEN", transitions.get(1));
+        assertEquals("HALF_OPEN->OPEN", transitions.get(2));
+        assertEquals("OPEN->HALF_OPEN", transitions.get(3));
+        assertEquals("HALF_OPEN->CLOSED", transitions.get(4));
+    }
+
+    @Test
+    public void testFallbackDecisions() {
+        CircuitBreakerOpenException open = new CircuitBreakerOpenException("open");
+
+        GuardrailResponse pass = CircuitBreaker.builder().fallback(CircuitBreaker.Fallback.PASS).build().fallback(open);
+        assertEquals("pass", pass.getSuggestAction());
+        assertEquals("no_risk", pass.getOverallRiskLevel());
+
+        GuardrailResponse reject = CircuitBreaker.builder().fallback(CircuitBreaker.Fallback.REJECT).build()
+                .fallback(open);
+        assertEquals("reject", reject.getSuggestAction());
+        assertEquals("high_risk", reject.getOverallRiskLevel());
+
+        CircuitBreaker failing = CircuitBreaker.builder().build();
+        assertFalse(failing.hasFallbackResponse());
+        assertSame(open, assertThrows(CircuitBreakerOpenException.class, () -> failing.fallback(open)));
+    }
+
+    @Test
+    public void testImageChecksGetFallbackWhileOpen() throws Exception {
+        CircuitBreaker breaker = CircuitBreaker.builder()
+                .slidingWindowSize(2)
+                .minimumNumberOfCalls(2)
+                .fallback(CircuitBreaker.Fallback.REJECT)
+                .build();
+        breaker.tryAcquire().onError();
+        breaker.tryAcquire().onError();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Path file = Files.createTempFile("image", ".jpg");
+        // Nothing listens on the base URL, only the fallback can answer
+        try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                .baseUrl("http://127.0.0.1:1/v1")
+                .circuitBreaker(breaker)
+                .build()) {
+            Files.write(file, new byte[] {1, 2, 3});
+            assertEquals("reject", client.checkPromptImage("prompt", file.toString()).getSuggestAction());
+            assertEquals("reject", client.checkPromptImages("prompt",
+                    Collections.singletonList(file.toString())).getSuggestAction());
+        } finally {
+            Files.delete(file);
+        }
+        assertEquals(2, breaker.getNotPermittedCount());
+    }
+
+    @Test
+    public void testAsyncImageChecksGetFallbackWhileOpen() throws Exception {
+        CircuitBreaker breaker = CircuitBreaker.builder()
+                .slidingWindowSize(2)
+                .minimumNumberOfCalls(2)
+                .fallback(CircuitBreaker.Fallback.PASS)
+                .build();
+        breaker.tryAcquire().onError();
+        breaker.tryAcquire().onError();
+
+        Path file = Files.createTempFile("image", ".jpg");
+        try (AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("test-key")
+                .baseUrl("http://127.0.0.1:1/v1")
+                .circuitBreaker(breaker)
+                .build()) {
+            Files.write(file, new byte[] {1, 2, 3});
+            assertEquals("pass", client.checkPromptImageAsync("prompt", file.toString())
+                    .get(5, TimeUnit.SECONDS).getSuggestAction());
+        } finally {
+            Files.delete(file);
+        }
+        assertEquals(1, breaker.getNotPermittedCount());
+    }
+}
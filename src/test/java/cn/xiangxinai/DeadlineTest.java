@@ -0,0 +1,88 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.DeadlineExceededException;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class DeadlineTest {
+
+    private static final String OK_BODY = "{\"id\":\"ok\",\"overall_risk_level\":\"no_risk\",\"suggest_action\":\"pass\"}";
+
+    private MockWebServer server;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testDeadlineExpiringMidCallFails() {
+        server.enqueue(new MockResponse().setBody(OK_BODY).setHeadersDelay(2, TimeUnit.SECONDS));
+
+        try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                .baseUrl(server.url("/v1").toString())
+                .build()) {
+            long start = System.nanoTime();
+            assertThrows(DeadlineExceededException.class,
+                    () -> client.checkPrompt("hello", CallOptions.withTimeout(200, TimeUnit.MILLISECONDS)));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        }
+        // The deadline also covers retries, the timed-out call is not sent again
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testDeadlineLeavesNoTimeForBackoff() {
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+        }
+
+        try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                .baseUrl(server.url("/v1").toString())
+                .retryPolicy(RetryPolicy.builder().initialBackoff(500, TimeUnit.MILLISECONDS).jitter(0).build())
+                .build()) {
+            long start = System.nanoTime();
+            assertThrows(DeadlineExceededException.class,
+                    () -> client.checkPrompt("hello", CallOptions.withTimeout(300, TimeUnit.MILLISECONDS)));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testAsyncDeadlineExpiringMidCallFails() throws Exception {
+        server.enqueue(new MockResponse().setBody(OK_BODY).setHeadersDelay(2, TimeUnit.SECONDS));
+
+        try (AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("test-key")
+                .baseUrl(server.url("/v1").toString())
+                .build()) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> client.checkPromptAsync("hello",
+                    CallOptions.withTimeout(200, TimeUnit.MILLISECONDS)).get(1, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof DeadlineExceededException, e.getCause().toString());
+        }
+    }
+
+    @Test
+    public void testCallWithinDeadlineSucceeds() {
+        server.enqueue(new MockResponse().setBody(OK_BODY).setHeadersDelay(50, TimeUnit.MILLISECONDS));
+
+        try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                .baseUrl(server.url("/v1").toString())
+                .build()) {
+            assertEquals("ok", client.checkPrompt("hello", CallOptions.withTimeout(2, TimeUnit.SECONDS)).getId());
+        }
+    }
+}
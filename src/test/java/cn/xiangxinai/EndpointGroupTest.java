@@ -0,0 +1,133 @@
+package cn.xiangxinai;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class EndpointGroupTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testRoundRobinCyclesThroughReplicas() {
+        EndpointGroup group = EndpointGroup.builder()
+                .endpoint("http://a/v1/")
+                .endpoint("http://b/v1")
+                .endpoint("http://c/v1")
+                .strategy(LoadBalancingStrategy.roundRobin())
+                .build();
+
+        assertEquals("http://a/v1", group.select().getBaseUrl());
+        assertEquals("http://b/v1", group.select().getBaseUrl());
+        assertEquals("http://c/v1", group.select().getBaseUrl());
+        assertEquals("http://a/v1", group.select().getBaseUrl());
+    }
+
+    @Test
+    public void testLeastOutstandingAvoidsBusyReplica() {
+        EndpointGroup group = EndpointGroup.builder()
+                .endpoint("http://a")
+                .endpoint("http://b")
+                .strategy(LoadBalancingStrategy.leastOutstanding())
+                .build();
+        Endpoint a = group.getEndpoints().get(0);
+        a.onStart();
+        a.onStart();
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("http://b", group.select().getBaseUrl());
+        }
+    }
+
+    @Test
+    public void testPeakEwmaPrefersFasterReplica() {
+        AtomicLong now = new AtomicLong();
+        EndpointGroup group = EndpointGroup.builder()
+                .endpoint("http://fast")
+                .endpoint("http://slow")
+                .ticker(now::get)
+                .build();
+        List<Endpoint> endpoints = group.getEndpoints();
+
+        long fastStart = endpoints.get(0).onStart();
+        long slowStart = endpoints.get(1).onStart();
+        now.addAndGet(10 * MILLIS);
+        endpoints.get(0).onResponse(200, fastStart);
+        now.addAndGet(190 * MILLIS);
+        endpoints.get(1).onResponse(200, slowStart);
+        assertEquals(200 * MILLIS, endpoints.get(1).getEwmaLatencyNanos(), 1);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            counts.merge(group.select().getBaseUrl(), 1, Integer::sum);
+        }
+        assertEquals(100, counts.get("http://fast").intValue());
+    }
+
+    @Test
+    public void testFailingReplicaIsEjectedUntilEjectionTimeIsUp() {
+        AtomicLong now = new AtomicLong();
+        EndpointGroup group = EndpointGroup.builder()
+                .endpoint("http://a")
+                .endpoint("http://b")
+                .strategy(LoadBalancingStrategy.roundRobin())
+                .maxFailures(2)
+                .ejectionTime(30, TimeUnit.SECONDS)
+                .ticker(now::get)
+                .build();
+        Endpoint a = group.getEndpoints().get(0);
+
+        a.onStart();
+        a.onError();
+        long start = a.onStart();
+        a.onResponse(503, start);
+        assertTrue(a.isEjected());
+        assertEquals(0, a.getOutstandingRequests());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("http://b", group.select().getBaseUrl());
+        }
+
+        now.addAndGet(30_000 * MILLIS);
+        assertFalse(a.isEjected());
+
+        // Successes in between reset the count of consecutive failures
+        a.onStart();
+        a.onError();
+        start = a.onStart();
+        a.onResponse(200, start);
+        a.onStart();
+        a.onError();
+        assertFalse(a.isEjected());
+    }
+
+    @Test
+    public void testAllEjectedFallsBackToEveryReplica() {
+        EndpointGroup group = EndpointGroup.builder()
+                .endpoint("http://a")
+                .endpoint("http://b")
+                .maxFailures(1)
+                .build();
+        for (Endpoint endpoint : group.getEndpoints()) {
+            endpoint.onStart();
+            endpoint.onError();
+            assertTrue(endpoint.isEjected());
+        }
+        assertNotNull(group.select());
+
+        group.getEndpoints().get(0).restore();
+        assertEquals("http://a", group.select().getBaseUrl());
+    }
+
+    @Test
+    public void testBuilderValidation() {
+        assertThrows(IllegalArgumentException.class, () -> EndpointGroup.builder().build());
+        assertThrows(IllegalArgumentException.class, () -> EndpointGroup.builder().endpoint(" "));
+        assertThrows(IllegalArgumentException.class, () -> EndpointGroup.builder().maxFailures(0));
+        assertEquals(2, EndpointGroup.of("http://a", "http://b").getEndpoints().size());
+    }
+}
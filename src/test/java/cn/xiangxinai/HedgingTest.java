@@ -0,0 +1,134 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.DeadlineExceededException;
+import cn.xiangxinai.model.GuardrailResponse;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+public class HedgingTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testDelayFollowsPercentileWithinBounds() {
+        HedgingPolicy policy = HedgingPolicy.builder()
+                .delayPercentile(90)
+                .minDelay(5, TimeUnit.MILLISECONDS)
+                .maxDelay(500, TimeUnit.MILLISECONDS)
+                .build();
+        Hedger hedger = new Hedger(policy, () -> null, () -> 0);
+
+        // Not enough samples yet, the maximum delay applies
+        assertEquals(500 * MILLIS, hedger.hedgeDelayNanos());
+
+        for (int i = 1; i <= 100; i++) {
+            hedger.recordLatency(i * MILLIS);
+        }
+        // The percentile is recomputed every few samples, it may lag behind the latest ones
+        long delay = hedger.hedgeDelayNanos();
+        assertTrue(delay >= 70 * MILLIS && delay <= 100 * MILLIS, "unexpected delay: " + delay);
+
+        for (int i = 0; i < 2000; i++) {
+            hedger.recordLatency(MILLIS);
+        }
+        assertEquals(5 * MILLIS, hedger.hedgeDelayNanos());
+
+        for (int i = 0; i < 2000; i++) {
+            hedger.recordLatency(10_000 * MILLIS);
+        }
+        assertEquals(500 * MILLIS, hedger.hedgeDelayNanos());
+    }
+
+    @Test
+    public void testBudgetCapsHedges() {
+        Hedger hedger = new Hedger(HedgingPolicy.builder().budgetPercent(10).build(), () -> null, () -> 0);
+
+        assertFalse(hedger.tryAcquireHedge());
+        for (int i = 0; i < 100; i++) {
+            hedger.recordLatency(MILLIS);
+        }
+        int hedges = 0;
+        while (hedger.tryAcquireHedge()) {
+            hedges++;
+        }
+        assertEquals(10, hedges);
+        assertEquals(10, hedger.hedgeCount());
+
+        // Unused budget does not pile up without bound
+        for (int i = 0; i < 10_000; i++) {
+            hedger.recordLatency(MILLIS);
+        }
+        hedges = 0;
+        while (hedger.tryAcquireHedge()) {
+            hedges++;
+        }
+        assertEquals(10, hedges);
+    }
+
+    @Test
+    public void testSlowPromptCheckIsRacedByDuplicate() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(json("warm-up"));
+            server.enqueue(json("slow").setHeadersDelay(5, TimeUnit.SECONDS));
+            server.enqueue(json("hedge"));
+            server.start();
+
+            HedgingPolicy hedging = HedgingPolicy.builder()
+                    .maxDelay(50, TimeUnit.MILLISECONDS)
+                    .budgetPercent(100)
+                    .build();
+            try (AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("test-key")
+                    .baseUrl(server.url("/v1").toString())
+                    .maxRetries(0)
+                    .hedging(hedging)
+                    .build()) {
+                assertEquals("warm-up", client.checkPromptAsync("first").get(5, TimeUnit.SECONDS).getId());
+
+                long start = System.nanoTime();
+                GuardrailResponse response = client.checkPromptAsync("second").get(5, TimeUnit.SECONDS);
+                assertEquals("hedge", response.getId());
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            }
+            assertEquals(3, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testHedgeDoesNotOutliveCallDeadline() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(json("warm-up"));
+            server.enqueue(json("slow").setHeadersDelay(5, TimeUnit.SECONDS));
+            server.enqueue(json("slow hedge").setHeadersDelay(5, TimeUnit.SECONDS));
+            server.start();
+
+            HedgingPolicy hedging = HedgingPolicy.builder()
+                    .maxDelay(200, TimeUnit.MILLISECONDS)
+                    .budgetPercent(100)
+                    .build();
+            try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                    .baseUrl(server.url("/v1").toString())
+                    .maxRetries(0)
+                    .hedging(hedging)
+                    .build()) {
+                assertEquals("warm-up", client.checkPrompt("first").getId());
+
+                // The duplicate sent after 200 ms gets the 100 ms left, not another full 300 ms
+                long start = System.nanoTime();
+                assertThrows(DeadlineExceededException.class,
+                        () -> client.checkPrompt("second", CallOptions.withTimeout(300, TimeUnit.MILLISECONDS)));
+                assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(450));
+            }
+            assertEquals(3, server.getRequestCount());
+        }
+    }
+
+    private static MockResponse json(String id) {
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"id\":\"" + id + "\",\"overall_risk_level\":\"no_risk\",\"suggest_action\":\"pass\"}");
+    }
+}
@@ -0,0 +1,81 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.model.GuardrailResponse;
+import cn.xiangxinai.model.Message;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class Http2LoadTest {
+
+    private static final int CALLS = 500;
+
+    @Test
+    public void testConcurrentChecksMultiplexOverFewConnections() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.setProtocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+                    return new MockResponse()
+                            .setHeader("Content-Type", "application/json")
+                            .setBody("{\"id\":\"ok\",\"overall_risk_level\":\"no_risk\",\"suggest_action\":\"pass\"}")
+                            .setHeadersDelay(20, TimeUnit.MILLISECONDS);
+                }
+            });
+            server.start();
+
+            try (AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("test-key")
+                    .baseUrl(server.url("/v1").toString())
+                    .protocol(HttpProtocol.H2_PRIOR_KNOWLEDGE)
+                    .concurrency(ConcurrencyConfig.builder().maxRequests(CALLS).maxRequestsPerHost(CALLS).build())
+                    .build()) {
+                List<CompletableFuture<GuardrailResponse>> futures = new ArrayList<>();
+                for (int i = 0; i < CALLS; i++) {
+                    futures.add(client.checkConversationAsync(Arrays.asList(
+                            new Message("user", "question " + i),
+                            new Message("assistant", "answer " + i))));
+                }
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+                for (CompletableFuture<GuardrailResponse> future : futures) {
+                    assertEquals("ok", future.get().getId());
+                }
+            }
+
+            assertEquals(CALLS, server.getRequestCount());
+            // The first request on every connection has sequence number 0
+            int connections = 0;
+            for (int i = 0; i < CALLS; i++) {
+                RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+                assertNotNull(request);
+                if (request.getSequenceNumber() == 0) {
+                    connections++;
+                }
+            }
+            assertTrue(connections <= 4, "expected a few multiplexed connections, got " + connections);
+        }
+    }
+
+    @Test
+    public void testPriorKnowledgeRejectsHttpsBaseUrl() {
+        assertThrows(IllegalArgumentException.class, () -> AsyncXiangxinAIClient.builder("test-key")
+                .baseUrl("https://api.xiangxinai.cn/v1")
+                .protocol(HttpProtocol.H2_PRIOR_KNOWLEDGE)
+                .build());
+        assertThrows(IllegalArgumentException.class, () -> XiangxinAIClient.builder("test-key")
+                .endpoints(EndpointGroup.of("http://a/v1", "https://b/v1"))
+                .protocol(HttpProtocol.H2_PRIOR_KNOWLEDGE)
+                .build());
+    }
+}
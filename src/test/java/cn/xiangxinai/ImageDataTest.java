@@ -0,0 +1,84 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.model.GuardrailRequest;
+import cn.xiangxinai.model.Message;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class ImageDataTest {
+
+    @Test
+    public void testFileIsStreamedAsDataUri() throws Exception {
+        // Sizes around the encoder's chunk boundaries, including ones that need padding
+        for (int size : new int[] {0, 1, 2, 3, 3071, 3072, 3073, 100_001}) {
+            byte[] bytes = new byte[size];
+            new Random(size).nextBytes(bytes);
+            Path file = Files.createTempFile("image", ".jpg");
+            try {
+                Files.write(file, bytes);
+                String expected = dataUri(bytes);
+                assertEquals(expected, serializeUrl(ImageData.ofFile(file.toString(), Long.MAX_VALUE)), "size " + size);
+                assertEquals(expected, serializeUrl(ImageData.ofBytes(bytes)), "size " + size);
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testMissingFileFailsBeforeSending() {
+        assertThrows(NoSuchFileException.class, () -> ImageData.ofFile("/no/such/image.jpg", Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testMimeTypeIsDetected() throws Exception {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0};
+        byte[] webp = {'R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P'};
+        assertEquals("image/png", ImageData.ofBytes(png).getMimeType());
+        assertEquals("image/gif", ImageData.ofBytes("GIF89a".getBytes("US-ASCII")).getMimeType());
+        assertEquals("image/webp", ImageData.ofBytes(webp).getMimeType());
+        assertEquals("image/jpeg", ImageData.ofBytes(new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}).getMimeType());
+
+        Path file = Files.createTempFile("image", ".jpg");
+        try {
+            Files.write(file, png);
+            assertTrue(serializeUrl(ImageData.ofFile(file.toString(), Long.MAX_VALUE))
+                    .startsWith("data:image/png;base64,"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    static String dataUri(byte[] bytes) {
+        return "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(bytes);
+    }
+
+    static String serializeUrl(ImageData image) throws Exception {
+        Map<String, Object> imageUrl = new HashMap<>();
+        imageUrl.put("url", image);
+        Map<String, Object> imageContent = new HashMap<>();
+        imageContent.put("type", "image_url");
+        imageContent.put("image_url", imageUrl);
+        List<Object> content = new ArrayList<>();
+        content.add(imageContent);
+        GuardrailRequest request = new GuardrailRequest("model",
+                Collections.singletonList(new Message("user", content)));
+
+        String json = JsonCodec.defaultCodec().writerFor(request).writeValueAsString(request);
+        JsonNode node = new ObjectMapper().readTree(json);
+        return node.at("/messages/0/content/0/image_url/url").asText();
+    }
+}
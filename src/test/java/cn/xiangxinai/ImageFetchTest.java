@@ -0,0 +1,159 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.ValidationException;
+import cn.xiangxinai.exception.XiangxinAIException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ImageFetchTest {
+
+    private static final byte[] FAST_IMAGE = {1, 2, 3, 4};
+    private static final byte[] SLOW_IMAGE = {5, 6, 7};
+
+    private MockWebServer server;
+    private final BlockingQueue<RecordedRequest> apiRequests = new LinkedBlockingQueue<>();
+    private final AtomicInteger flakyAttempts = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                if (path.startsWith("/v1/")) {
+                    apiRequests.add(request);
+                    return new MockResponse()
+                            .setHeader("Content-Type", "application/json")
+                            .setBody("{\"id\":\"ok\",\"overall_risk_level\":\"no_risk\",\"suggest_action\":\"pass\"}");
+                }
+                if (request.getHeader("Authorization") != null) {
+                    return new MockResponse().setResponseCode(400);
+                }
+                switch (path) {
+                    case "/fast.jpg":
+                        return new MockResponse().setBody(new Buffer().write(FAST_IMAGE));
+                    case "/slow.jpg":
+                        return new MockResponse().setBody(new Buffer().write(SLOW_IMAGE))
+                                .setHeadersDelay(300, TimeUnit.MILLISECONDS);
+                    case "/flaky.jpg":
+                        return flakyAttempts.getAndIncrement() == 0
+                                ? new MockResponse().setResponseCode(503)
+                                : new MockResponse().setBody(new Buffer().write(FAST_IMAGE));
+                    case "/large.jpg":
+                        return new MockResponse().setBody(new Buffer().write(new byte[2048]));
+                    case "/hanging.jpg":
+                        return new MockResponse().setBody(new Buffer().write(FAST_IMAGE))
+                                .setHeadersDelay(5, TimeUnit.SECONDS);
+                    default:
+                        return new MockResponse().setResponseCode(404);
+                }
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testImagesAreDownloadedWithoutApiKeyAndSentInOrder() throws Exception {
+        try (AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("test-key")
+                .baseUrl(server.url("/v1").toString())
+                .build()) {
+            assertEquals("ok", client.checkPromptImagesAsync("prompt",
+                    Arrays.asList(image("/slow.jpg"), image("/fast.jpg"))).get(5, TimeUnit.SECONDS).getId());
+        }
+
+        JsonNode content = apiBody().at("/messages/0/content");
+        assertEquals(dataUri(SLOW_IMAGE), content.at("/1/image_url/url").asText());
+        assertEquals(dataUri(FAST_IMAGE), content.at("/2/image_url/url").asText());
+    }
+
+    @Test
+    public void testFailedDownloadIsRetried() throws Exception {
+        try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                .baseUrl(server.url("/v1").toString())
+                .retryPolicy(RetryPolicy.builder().initialBackoff(10, TimeUnit.MILLISECONDS).build())
+                .build()) {
+            assertEquals("ok", client.checkPromptImage("", image("/flaky.jpg")).getId());
+        }
+
+        assertEquals(2, flakyAttempts.get());
+        assertEquals(dataUri(FAST_IMAGE), apiBody().at("/messages/0/content/0/image_url/url").asText());
+    }
+
+    @Test
+    public void testLargeAndHangingImagesFailFast() throws Exception {
+        try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                .baseUrl(server.url("/v1").toString())
+                .images(ImageOptions.builder()
+                        .maxImageBytes(1024)
+                        .fetchTimeout(200, TimeUnit.MILLISECONDS)
+                        .fetchRetries(0)
+                        .build())
+                .build()) {
+            assertThrows(ValidationException.class, () -> client.checkPromptImage("", image("/large.jpg")));
+
+            long start = System.nanoTime();
+            assertThrows(XiangxinAIException.class, () -> client.checkPromptImage("", image("/hanging.jpg")));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        }
+        assertTrue(apiRequests.isEmpty());
+    }
+
+    @Test
+    public void testImagesAreFetchedOverHttp11WithPriorKnowledgeApi() throws Exception {
+        try (MockWebServer api = new MockWebServer()) {
+            api.setProtocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+            api.setDispatcher(server.getDispatcher());
+            api.start();
+
+            // The image server only speaks HTTP/1.1, prior knowledge would fail against it
+            try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                    .baseUrl(api.url("/v1").toString())
+                    .protocol(HttpProtocol.H2_PRIOR_KNOWLEDGE)
+                    .images(ImageOptions.builder().fetchRetries(0).build())
+                    .build()) {
+                assertEquals("ok", client.checkPromptImage("", image("/fast.jpg")).getId());
+            }
+        }
+
+        assertEquals(dataUri(FAST_IMAGE), apiBody().at("/messages/0/content/0/image_url/url").asText());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    private String image(String path) {
+        return server.url(path).toString();
+    }
+
+    private JsonNode apiBody() throws Exception {
+        RecordedRequest request = apiRequests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        return new ObjectMapper().readTree(request.getBody().readUtf8());
+    }
+
+    private static String dataUri(byte[] bytes) {
+        return "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,217 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.DeadlineExceededException;
+import cn.xiangxinai.exception.ValidationException;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ImageLoaderTest {
+
+    @Test
+    public void testImagesKeepInputOrder() throws Exception {
+        List<Path> files = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        try {
+            for (int i = 0; i < 10; i++) {
+                Path file = Files.createTempFile("image-" + i, ".jpg");
+                Files.write(file, new byte[] {(byte) i});
+                files.add(file);
+                paths.add(file.toString());
+            }
+            ImageLoader loader = loader(ImageOptions.builder().maxParallelism(3).build());
+
+            List<ImageData> images = loader.loadAll(paths);
+            assertEquals(10, images.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(ImageDataTest.dataUri(new byte[] {(byte) i}), ImageDataTest.serializeUrl(images.get(i)));
+            }
+        } finally {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testOversizedAndMissingImagesAreRejected() throws Exception {
+        Path file = Files.createTempFile("image", ".jpg");
+        try {
+            Files.write(file, new byte[1025]);
+            ImageLoader loader = loader(ImageOptions.builder().maxImageBytes(1024).build());
+
+            ValidationException tooLarge = assertThrows(ValidationException.class,
+                    () -> loader.loadAll(Arrays.asList(file.toString(), file.toString())));
+            assertTrue(tooLarge.getMessage().contains("larger than 1024 bytes"));
+            ValidationException missing = assertThrows(ValidationException.class,
+                    () -> loader.load("/no/such/image.jpg"));
+            assertEquals("Image file not found: /no/such/image.jpg", missing.getMessage());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testSlowImageHostHitsLoadTimeout() throws Exception {
+        // Accepts connections into its backlog but never answers
+        try (ServerSocket server = new ServerSocket(0)) {
+            Path file = Files.createTempFile("image", ".jpg");
+            try {
+                ImageLoader loader = loader(ImageOptions.builder()
+                        .loadTimeout(200, TimeUnit.MILLISECONDS)
+                        .build());
+                long start = System.nanoTime();
+                assertThrows(DeadlineExceededException.class, () -> loader.loadAll(Arrays.asList(
+                        file.toString(), "http://127.0.0.1:" + server.getLocalPort() + "/image.jpg")));
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testPassedThroughLinksAreSentAsTheyAre() throws Exception {
+        // Would hang the load if the link were downloaded
+        try (ServerSocket server = new ServerSocket(0)) {
+            String link = "http://127.0.0.1:" + server.getLocalPort() + "/image.jpg?size=large";
+            Path file = Files.createTempFile("image", ".jpg");
+            try {
+                Files.write(file, new byte[] {1, 2, 3});
+                ImageLoader loader = loader(ImageOptions.DEFAULT)
+                        .withOptions(ImageOptions.builder().passThroughLinks(true).build());
+
+                List<ImageData> images = loader.loadAll(Arrays.asList(link, file.toString(), link));
+                assertEquals(link, ImageDataTest.serializeUrl(images.get(0)));
+                assertEquals(ImageDataTest.dataUri(new byte[] {1, 2, 3}), ImageDataTest.serializeUrl(images.get(1)));
+                assertEquals(link, ImageDataTest.serializeUrl(images.get(2)));
+                assertEquals(link, ImageDataTest.serializeUrl(loader.load(link)));
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testImagesLoadOnSharedExecutorWithinParallelism() throws Exception {
+        List<Path> files = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        AtomicInteger submitted = new AtomicInteger();
+        try {
+            for (int i = 0; i < 10; i++) {
+                Path file = Files.createTempFile("image-" + i, ".jpg");
+                Files.write(file, new byte[] {(byte) i});
+                files.add(file);
+                paths.add(file.toString());
+            }
+            ExecutorService counting = new AbstractExecutorService() {
+                @Override
+                public void execute(Runnable command) {
+                    submitted.incrementAndGet();
+                    pool.execute(command);
+                }
+
+                @Override
+                public void shutdown() {
+                    throw new AssertionError("the shared pool must not be shut down by a load");
+                }
+
+                @Override
+                public List<Runnable> shutdownNow() {
+                    throw new AssertionError("the shared pool must not be shut down by a load");
+                }
+
+                @Override
+                public boolean isShutdown() {
+                    return false;
+                }
+
+                @Override
+                public boolean isTerminated() {
+                    return false;
+                }
+
+                @Override
+                public boolean awaitTermination(long timeout, TimeUnit unit) {
+                    return false;
+                }
+            };
+            // Downscaling makes local files worth loading in parallel
+            ImageOptions options = ImageOptions.builder().maxParallelism(3).maxDimension(64).build();
+            ImageLoader loader = new ImageLoader(options, null, () -> counting);
+
+            for (int round = 0; round < 2; round++) {
+                List<ImageData> images = loader.loadAll(paths);
+                for (int i = 0; i < 10; i++) {
+                    assertEquals(ImageDataTest.dataUri(new byte[] {(byte) i}), ImageDataTest.serializeUrl(images.get(i)));
+                }
+            }
+            assertEquals(6, submitted.get());
+        } finally {
+            pool.shutdownNow();
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testAsyncClientLoadsImagesOnItsOwnWorkers() throws Exception {
+        List<String> paths = new ArrayList<>();
+        List<Path> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < 6; i++) {
+                Path file = Files.createTempFile("image", ".jpg");
+                Files.write(file, new byte[] {(byte) i});
+                files.add(file);
+                paths.add(file.toString());
+            }
+            // Nothing listens on the base URL, the check fails once the images are loaded
+            try (AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("test-key")
+                    .baseUrl("http://127.0.0.1:1/v1")
+                    .maxRetries(0)
+                    .concurrency(ConcurrencyConfig.builder().maxRequests(2).build())
+                    // Downscaling moves the file reads off the calling thread
+                    .images(ImageOptions.builder().maxDimension(64).build())
+                    .build()) {
+                assertThrows(Exception.class, () -> client.checkPromptImagesAsync("prompt", paths,
+                        "Xiangxin-Guardrails-VL", null).get(5, TimeUnit.SECONDS));
+                assertTrue(workerThreads() >= 1 && workerThreads() <= 2, "worker threads: " + workerThreads());
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (workerThreads() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, workerThreads());
+        } finally {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static long workerThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("xiangxinai-worker-"))
+                .count();
+    }
+
+    private static ImageLoader loader(ImageOptions options) {
+        return new ImageLoader(options, new ImageFetcher(new OkHttpClient(), options, RetryPolicy.DEFAULT, () -> null),
+                ForkJoinPool::commonPool);
+    }
+}
@@ -0,0 +1,78 @@
+package cn.xiangxinai;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class ImageResizerTest {
+
+    @Test
+    public void testLargeImageIsDownscaledToJpeg() throws Exception {
+        ImageData original = ImageData.ofBytes(png(4000, 3000, BufferedImage.TYPE_INT_ARGB));
+        assertEquals("image/png", original.getMimeType());
+
+        ImageData resized = ImageResizer.resize(original, 1024, 0.8f);
+        assertEquals("image/jpeg", resized.getMimeType());
+        String url = ImageDataTest.serializeUrl(resized);
+        assertTrue(url.startsWith("data:image/jpeg;base64,"));
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(
+                Base64.getDecoder().decode(url.substring("data:image/jpeg;base64,".length()))));
+        assertEquals(1024, decoded.getWidth());
+        assertEquals(768, decoded.getHeight());
+    }
+
+    @Test
+    public void testSmallAndUndecodableImagesAreUnchanged() throws Exception {
+        ImageData small = ImageData.ofBytes(png(800, 600, BufferedImage.TYPE_INT_RGB));
+        assertSame(small, ImageResizer.resize(small, 1024, 0.8f));
+
+        ImageData unknown = ImageData.ofBytes(new byte[] {1, 2, 3, 4});
+        assertSame(unknown, ImageResizer.resize(unknown, 1024, 0.8f));
+
+        ImageData link = ImageData.ofLink("https://example.com/image.jpg");
+        assertSame(link, ImageResizer.resize(link, 1024, 0.8f));
+    }
+
+    @Test
+    public void testLoaderDownscalesLocalFiles() throws Exception {
+        Path file = Files.createTempFile("image", ".png");
+        try {
+            Files.write(file, png(300, 2000, BufferedImage.TYPE_INT_RGB));
+            ImageOptions options = ImageOptions.builder().maxDimension(500).jpegQuality(0.5f).build();
+            ImageLoader loader = new ImageLoader(options, null, ForkJoinPool::commonPool);
+
+            List<ImageData> images = loader.loadAll(Collections.singletonList(file.toString()));
+            assertEquals("image/jpeg", images.get(0).getMimeType());
+            BufferedImage decoded = ImageIO.read(images.get(0).open());
+            assertEquals(75, decoded.getWidth());
+            assertEquals(500, decoded.getHeight());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testInvalidOptionsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ImageOptions.builder().maxDimension(-1));
+        assertThrows(IllegalArgumentException.class, () -> ImageOptions.builder().jpegQuality(0));
+        assertThrows(IllegalArgumentException.class, () -> ImageOptions.builder().jpegQuality(1.5f));
+        assertEquals(0, ImageOptions.DEFAULT.getMaxDimension());
+    }
+
+    private static byte[] png(int width, int height, int type) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, type);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,105 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.model.GuardrailRequest;
+import cn.xiangxinai.model.GuardrailResponse;
+import cn.xiangxinai.model.Message;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class JsonCodecTest {
+
+    private static final String OK_BODY = "{\"id\":\"ok\",\"overall_risk_level\":\"no_risk\",\"suggest_action\":\"pass\"}";
+
+    @Test
+    public void testReadersAndWritersAreBuiltOnce() {
+        JsonCodec codec = JsonCodec.builder().build();
+        assertSame(codec.readerFor(GuardrailResponse.class), codec.readerFor(GuardrailResponse.class));
+        assertSame(codec.readerFor(Map.class), codec.readerFor(Map.class));
+        assertSame(codec.writerFor(new GuardrailRequest()), codec.writerFor(new GuardrailRequest()));
+        assertSame(codec.writerFor(Collections.emptyMap()), codec.writerFor(Collections.emptyMap()));
+        assertSame(JsonCodec.defaultCodec(), JsonCodec.defaultCodec());
+    }
+
+    @Test
+    public void testCodecRoundTripsModelClasses() throws Exception {
+        JsonCodec codec = JsonCodec.defaultCodec();
+        GuardrailResponse response = codec.readerFor(GuardrailResponse.class).readValue(OK_BODY);
+        assertEquals("ok", response.getId());
+        assertEquals("pass", response.getSuggestAction());
+
+        GuardrailRequest request = new GuardrailRequest("Xiangxin-Guardrails-Text",
+                Collections.singletonList(new Message("user", "hello")));
+        String json = codec.writerFor(request).writeValueAsString(request);
+        GuardrailRequest parsed = codec.readerFor(GuardrailRequest.class).readValue(json);
+        assertEquals("Xiangxin-Guardrails-Text", parsed.getModel());
+        assertEquals("hello", parsed.getMessages().get(0).getContent());
+    }
+
+    @Test
+    public void testAddModuleRejectsNull() {
+        assertThrows(IllegalArgumentException.class, () -> JsonCodec.builder().addModule(null));
+    }
+
+    @Test
+    public void testClientsUseConfiguredCodec() throws Exception {
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(Message.class, new UpperCaseMessageSerializer());
+        JsonCodec codec = JsonCodec.builder().addModule(module).build();
+        List<Message> messages = Collections.singletonList(new Message("user", "hello"));
+
+        MockWebServer server = new MockWebServer();
+        server.start();
+        try {
+            server.enqueue(new MockResponse().setBody(OK_BODY));
+            server.enqueue(new MockResponse().setBody(OK_BODY));
+
+            try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                    .baseUrl(server.url("/v1").toString())
+                    .codec(codec)
+                    .build();
+                 AsyncXiangxinAIClient asyncClient = AsyncXiangxinAIClient.builder("test-key")
+                    .baseUrl(server.url("/v1").toString())
+                    .codec(codec)
+                    .build()) {
+                assertEquals("ok", client.checkConversation(messages).getId());
+                assertEquals("ok", asyncClient.checkConversationAsync(messages).get(5, TimeUnit.SECONDS).getId());
+            }
+
+            for (int i = 0; i < 2; i++) {
+                String body = server.takeRequest(5, TimeUnit.SECONDS).getBody().readUtf8();
+                assertTrue(body.contains("{\"role\":\"user\",\"content\":\"HELLO\"}"), body);
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private static final class UpperCaseMessageSerializer extends StdSerializer<Message> {
+
+        private static final long serialVersionUID = 1L;
+
+        UpperCaseMessageSerializer() {
+            super(Message.class);
+        }
+
+        @Override
+        public void serialize(Message message, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("role", message.getRole());
+            generator.writeStringField("content", String.valueOf(message.getContent()).toUpperCase());
+            generator.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.ValidationException;
+import cn.xiangxinai.model.GuardrailRequest;
+import cn.xiangxinai.model.GuardrailResponse;
+import cn.xiangxinai.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class JsonStreamingTest {
+
+    private static final String OK_BODY = "{\"id\":\"ok\",\"overall_risk_level\":\"no_risk\",\"suggest_action\":\"pass\"}";
+
+    private MockWebServer server;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testStreamedBodyMatchesStringSerialization() throws Exception {
+        List<Message> messages = Arrays.asList(
+                new Message("user", "Quotes \" and \\ backslashes,\nnew lines\tand tabs"),
+                new Message("assistant", "中文内容 and emoji 😀 " + repeat("long answer ", 2000)));
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setBody(OK_BODY));
+        }
+
+        try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                .baseUrl(server.url("/v1").toString())
+                .build();
+             AsyncXiangxinAIClient asyncClient = AsyncXiangxinAIClient.builder("test-key")
+                .baseUrl(server.url("/v1").toString())
+                .build()) {
+            client.checkConversation(messages, "Xiangxin-Guardrails-Text", "user-1");
+            asyncClient.checkConversationAsync(messages, "Xiangxin-Guardrails-Text").get(5, TimeUnit.SECONDS);
+            client.checkPrompt("  trimmed prompt  ");
+        }
+
+        // The bodies as the clients serialized them to a String before they were streamed
+        GuardrailRequest request = new GuardrailRequest("Xiangxin-Guardrails-Text", new ArrayList<>(messages));
+        request.setExtraBody(new HashMap<>());
+        request.getExtraBody().put("xxai_app_user_id", "user-1");
+        RecordedRequest recorded = server.takeRequest(5, TimeUnit.SECONDS);
+        assertArrayEquals(new ObjectMapper().writeValueAsBytes(request), recorded.getBody().readByteArray());
+        assertTrue(recorded.getHeader("Content-Type").startsWith("application/json"));
+
+        GuardrailRequest asyncRequest = new GuardrailRequest("Xiangxin-Guardrails-Text", new ArrayList<>(messages));
+        assertArrayEquals(new ObjectMapper().writeValueAsBytes(asyncRequest),
+                server.takeRequest(5, TimeUnit.SECONDS).getBody().readByteArray());
+
+        Map<String, String> prompt = new HashMap<>();
+        prompt.put("input", "trimmed prompt");
+        assertArrayEquals(new ObjectMapper().writeValueAsBytes(prompt),
+                server.takeRequest(5, TimeUnit.SECONDS).getBody().readByteArray());
+    }
+
+    @Test
+    public void testLargeResponseIsParsedFromStream() throws Exception {
+        // Larger than the okio segment and Jackson buffer sizes, so parsing spans several reads
+        String answer = "中文回答 😀 " + repeat("\"quoted\" answer\n", 5000);
+        Map<String, Object> compliance = new HashMap<>();
+        compliance.put("risk_level", "high_risk");
+        compliance.put("categories", Arrays.asList("暴力犯罪", "Violent crime"));
+        Map<String, Object> result = new HashMap<>();
+        result.put("compliance", compliance);
+        Map<String, Object> response = new HashMap<>();
+        response.put("id", "large");
+        response.put("result", result);
+        response.put("overall_risk_level", "high_risk");
+        response.put("suggest_action", "replace");
+        response.put("suggest_answer", answer);
+        String json = new ObjectMapper().writeValueAsString(response);
+        server.enqueue(new MockResponse().setBody(json));
+        server.enqueue(new MockResponse().setBody(json).throttleBody(16 * 1024, 10, TimeUnit.MILLISECONDS));
+
+        try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                .baseUrl(server.url("/v1").toString())
+                .build();
+             AsyncXiangxinAIClient asyncClient = AsyncXiangxinAIClient.builder("test-key")
+                .baseUrl(server.url("/v1").toString())
+                .build()) {
+            GuardrailResponse[] parsed = {
+                    client.checkPrompt("hello"),
+                    asyncClient.checkPromptAsync("hello").get(5, TimeUnit.SECONDS)
+            };
+            for (GuardrailResponse guardrailResponse : parsed) {
+                assertEquals("large", guardrailResponse.getId());
+                assertEquals(answer, guardrailResponse.getSuggestAnswer());
+                assertEquals("high_risk", guardrailResponse.getResult().getCompliance().getRiskLevel());
+                assertEquals(Arrays.asList("暴力犯罪", "Violent crime"),
+                        guardrailResponse.getResult().getCompliance().getCategories());
+            }
+        }
+    }
+
+    @Test
+    public void testErrorBodyDetailIsReported() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            server.enqueue(new MockResponse().setResponseCode(422).setBody("{\"detail\":\"input too long\"}"));
+        }
+
+        try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                .baseUrl(server.url("/v1").toString())
+                .build();
+             AsyncXiangxinAIClient asyncClient = AsyncXiangxinAIClient.builder("test-key")
+                .baseUrl(server.url("/v1").toString())
+                .build()) {
+            ValidationException e = assertThrows(ValidationException.class, () -> client.checkPrompt("hello"));
+            assertEquals("Validation error: input too long", e.getMessage());
+
+            ExecutionException async = assertThrows(ExecutionException.class,
+                    () -> asyncClient.checkPromptAsync("hello").get(5, TimeUnit.SECONDS));
+            assertTrue(async.getCause() instanceof ValidationException, async.getCause().toString());
+            assertEquals("Validation error: input too long", async.getCause().getMessage());
+        }
+        assertEquals(2, server.getRequestCount());
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.XiangxinAIException;
+import cn.xiangxinai.model.GuardrailResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class MicroBatchingTest {
+
+    private MockWebServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    private AsyncXiangxinAIClient client(int maxBatchSize, long maxLingerMillis) {
+        return AsyncXiangxinAIClient.builder("test-key")
+                .baseUrl(server.url("/v1").toString())
+                .maxRetries(0)
+                .microBatching(MicroBatchConfig.builder()
+                        .maxBatchSize(maxBatchSize)
+                        .maxLinger(maxLingerMillis, TimeUnit.MILLISECONDS)
+                        .encoder(BatchEncoder.jsonArray("/guardrails/batch"))
+                        .build())
+                .build();
+    }
+
+    private static String result(String id, String action) {
+        return "{\"id\":\"" + id + "\",\"overall_risk_level\":\"no_risk\",\"suggest_action\":\"" + action + "\"}";
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+    }
+
+    @Test
+    public void testFullBatchIsSentAsOneCall() throws Exception {
+        server.enqueue(json("[" + result("r0", "pass") + "," + result("r1", "reject") + ","
+                + result("r2", "pass") + "]"));
+
+        try (AsyncXiangxinAIClient client = client(3, 10_000)) {
+            CompletableFuture<GuardrailResponse> first = client.checkPromptAsync("first");
+            CompletableFuture<GuardrailResponse> second = client.checkPromptAsync("second");
+            CompletableFuture<GuardrailResponse> third = client.checkPromptAsync("third");
+
+            // The batch is full, it must not wait for the 10 second linger
+            assertEquals("r0", first.get(5, TimeUnit.SECONDS).getId());
+            assertEquals("reject", second.get(5, TimeUnit.SECONDS).getSuggestAction());
+            assertEquals("r2", third.get(5, TimeUnit.SECONDS).getId());
+        }
+
+        assertEquals(1, server.getRequestCount());
+        RecordedRequest request = server.takeRequest();
+        assertEquals("/v1/guardrails/batch", request.getPath());
+        JsonNode body = new ObjectMapper().readTree(request.getBody().readUtf8());
+        assertTrue(body.isArray());
+        assertEquals(3, body.size());
+        assertEquals("second", body.get(1).get("messages").get(0).get("content").asText());
+    }
+
+    @Test
+    public void testLingerFlushesPartialBatch() throws Exception {
+        server.enqueue(json("[" + result("r0", "pass") + "," + result("r1", "pass") + "]"));
+
+        try (AsyncXiangxinAIClient client = client(32, 50)) {
+            CompletableFuture<GuardrailResponse> first = client.checkPromptAsync("first");
+            CompletableFuture<GuardrailResponse> second = client.checkPromptAsync("second");
+
+            assertEquals("r0", first.get(5, TimeUnit.SECONDS).getId());
+            assertEquals("r1", second.get(5, TimeUnit.SECONDS).getId());
+        }
+
+        assertEquals("/v1/guardrails/batch", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void testSingleCheckUsesRegularEndpoint() throws Exception {
+        server.enqueue(json(result("single", "pass")));
+
+        try (AsyncXiangxinAIClient client = client(32, 10)) {
+            assertEquals("single", client.checkPromptAsync("alone").get(5, TimeUnit.SECONDS).getId());
+        }
+
+        assertEquals("/v1/guardrails", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void testBatchFailureFailsEveryCaller() throws Exception {
+        server.enqueue(json("[" + result("r0", "pass") + "]"));
+
+        try (AsyncXiangxinAIClient client = client(2, 10_000)) {
+            CompletableFuture<GuardrailResponse> first = client.checkPromptAsync("first");
+            CompletableFuture<GuardrailResponse> second = client.checkPromptAsync("second");
+
+            ExecutionException error = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+            assertTrue(error.getCause() instanceof XiangxinAIException);
+            assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        }
+    }
+}
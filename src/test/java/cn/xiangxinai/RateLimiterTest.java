@@ -0,0 +1,188 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.RateLimitException;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RateLimiterTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testConfiguredRatePacesRequests() {
+        AtomicLong now = new AtomicLong();
+        RateLimiter limiter = RateLimiter.builder()
+                .permitsPerSecond(10)
+                .burst(1)
+                .ticker(now::get)
+                .build();
+
+        assertEquals(0, limiter.reserve(Deadline.NONE));
+        assertEquals(100 * MILLIS, limiter.reserve(Deadline.NONE));
+        assertEquals(200 * MILLIS, limiter.reserve(Deadline.NONE));
+        assertEquals(2, limiter.getThrottledCount());
+
+        now.addAndGet(1000 * MILLIS);
+        assertEquals(0, limiter.reserve(Deadline.NONE));
+    }
+
+    @Test
+    public void testUnlimitedByDefault() {
+        RateLimiter limiter = RateLimiter.builder().ticker(() -> 0).build();
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, limiter.reserve(Deadline.NONE));
+        }
+        assertTrue(Double.isInfinite(limiter.getPermitsPerSecond()));
+    }
+
+    @Test
+    public void testRetryAfterPausesLimiter() {
+        AtomicLong now = new AtomicLong();
+        RateLimiter limiter = RateLimiter.builder().ticker(now::get).build();
+
+        limiter.onServerHints(2000, -1, -1);
+        assertEquals(2000 * MILLIS, limiter.reserve(Deadline.NONE));
+
+        now.addAndGet(2000 * MILLIS);
+        assertEquals(0, limiter.reserve(Deadline.NONE));
+    }
+
+    @Test
+    public void testRemainingQuotaSetsRate() {
+        AtomicLong now = new AtomicLong();
+        RateLimiter limiter = RateLimiter.builder().ticker(now::get).build();
+
+        limiter.onServerHints(-1, 50, 10_000);
+        assertEquals(5.0, limiter.getPermitsPerSecond(), 1e-9);
+
+        // The configured rate is a ceiling that server hints cannot raise
+        RateLimiter capped = RateLimiter.builder().permitsPerSecond(2).ticker(now::get).build();
+        capped.onServerHints(-1, 50, 10_000);
+        assertEquals(2.0, capped.getPermitsPerSecond(), 1e-9);
+    }
+
+    @Test
+    public void testExhaustedQuotaPausesUntilReset() {
+        AtomicLong now = new AtomicLong();
+        RateLimiter limiter = RateLimiter.builder().ticker(now::get).build();
+
+        limiter.onServerHints(-1, 0, 3000);
+        assertEquals(3000 * MILLIS, limiter.reserve(Deadline.NONE));
+    }
+
+    @Test
+    public void testWaitBeyondMaxWaitIsRejected() {
+        AtomicLong now = new AtomicLong();
+        RateLimiter limiter = RateLimiter.builder()
+                .maxWait(1, TimeUnit.SECONDS)
+                .ticker(now::get)
+                .build();
+
+        limiter.onServerHints(5000, -1, -1);
+        assertEquals(-1, limiter.reserve(Deadline.NONE));
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testNonAdaptiveLimiterIgnoresHints() {
+        RateLimiter limiter = RateLimiter.builder().adaptive(false).ticker(() -> 0).build();
+
+        limiter.onServerHints(5000, 0, 3000);
+        assertEquals(0, limiter.reserve(Deadline.NONE));
+        assertTrue(Double.isInfinite(limiter.getPermitsPerSecond()));
+    }
+
+    @Test
+    public void testUserOverBudgetIsShed() {
+        AtomicLong now = new AtomicLong();
+        RateLimiter limiter = RateLimiter.builder()
+                .perUserPermitsPerSecond(1)
+                .perUserBurst(2)
+                .ticker(now::get)
+                .build();
+
+        assertTrue(limiter.tryAcquireUser("abuser"));
+        assertTrue(limiter.tryAcquireUser("abuser"));
+        assertFalse(limiter.tryAcquireUser("abuser"));
+        // Other users and calls without a user ID keep their own budgets
+        assertTrue(limiter.tryAcquireUser("regular"));
+        assertTrue(limiter.tryAcquireUser(null));
+        assertEquals(1, limiter.getUserRejectedCount());
+
+        now.addAndGet(1000 * MILLIS);
+        assertTrue(limiter.tryAcquireUser("abuser"));
+        assertFalse(limiter.tryAcquireUser("abuser"));
+    }
+
+    @Test
+    public void testAsyncImageChecksChargeUserBudget() throws Exception {
+        RateLimiter limiter = RateLimiter.builder()
+                .perUserPermitsPerSecond(1)
+                .perUserBurst(1)
+                .ticker(() -> 0)
+                .build();
+
+        Path file = Files.createTempFile("image", ".jpg");
+        try (AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("test-key")
+                .baseUrl("http://127.0.0.1:1/v1")
+                .maxRetries(0)
+                .rateLimiter(limiter)
+                .build()) {
+            Files.write(file, new byte[] {1, 2, 3});
+            // The first check is charged and sent, it fails only because nothing listens on the port
+            ExecutionException sent = assertThrows(ExecutionException.class,
+                    () -> client.checkPromptImageAsync("prompt", file.toString(), "Xiangxin-Guardrails-VL", "abuser")
+                            .get(5, TimeUnit.SECONDS));
+            assertFalse(sent.getCause() instanceof RateLimitException);
+
+            ExecutionException shed = assertThrows(ExecutionException.class,
+                    () -> client.checkPromptImageAsync("prompt", file.toString(), "Xiangxin-Guardrails-VL", "abuser")
+                            .get(5, TimeUnit.SECONDS));
+            assertTrue(shed.getCause() instanceof RateLimitException, shed.getCause().toString());
+        } finally {
+            Files.delete(file);
+        }
+        assertEquals(1, limiter.getUserRejectedCount());
+    }
+
+    @Test
+    public void testTrackedUsersAreBounded() {
+        RateLimiter limiter = RateLimiter.builder()
+                .perUserPermitsPerSecond(1)
+                .maxTrackedUsers(1000)
+                .ticker(() -> 0)
+                .build();
+
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(limiter.tryAcquireUser("user-" + i));
+        }
+        assertTrue(limiter.getTrackedUserCount() <= 1024, "tracked: " + limiter.getTrackedUserCount());
+        assertEquals(0, RateLimiter.builder().build().getTrackedUserCount());
+    }
+
+    @Test
+    public void testHeaderParsing() {
+        assertEquals(120_000, RateLimitHeaders.retryAfterMillis("120"));
+        assertEquals(-1, RateLimitHeaders.retryAfterMillis(null));
+        assertEquals(-1, RateLimitHeaders.retryAfterMillis("soon"));
+
+        String date = ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(60).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        long fromDate = RateLimitHeaders.retryAfterMillis(date);
+        assertTrue(fromDate > 55_000 && fromDate <= 60_000, "unexpected wait: " + fromDate);
+
+        assertEquals(1500, RateLimitHeaders.resetMillis("1.5"));
+        long epochReset = RateLimitHeaders.resetMillis(String.valueOf(System.currentTimeMillis() / 1000 + 30));
+        assertTrue(epochReset > 25_000 && epochReset <= 30_000, "unexpected reset: " + epochReset);
+        assertEquals(-1, RateLimitHeaders.parseLong("-3"));
+    }
+}
@@ -0,0 +1,103 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.model.GuardrailRequest;
+import cn.xiangxinai.model.Message;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSource;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Collections;
+
+public class RequestCompressionTest {
+
+    @Test
+    public void testSizeProbeStopsAtThreshold() throws Exception {
+        GuardrailRequest request = new GuardrailRequest("model",
+                Collections.singletonList(new Message("user", repeat('a', 10_000))));
+        JsonRequestBody body = new JsonRequestBody(JsonCodec.defaultCodec(), request);
+
+        assertTrue(body.isAtLeast(0));
+        assertTrue(body.isAtLeast(1024));
+        assertTrue(body.isAtLeast(10_000));
+        assertFalse(body.isAtLeast(20_000));
+        assertTrue(new JsonRequestBody(JsonCodec.defaultCodec(), null).isAtLeast(2));
+        assertFalse(new JsonRequestBody(JsonCodec.defaultCodec(), null).isAtLeast(3));
+    }
+
+    @Test
+    public void testBuilderValidation() {
+        assertEquals(8 * 1024, RequestCompression.gzip().getMinSize());
+        assertThrows(IllegalArgumentException.class, () -> RequestCompression.builder().minSize(-1));
+        assertThrows(IllegalArgumentException.class, () -> RequestCompression.builder().level(0));
+        assertThrows(IllegalArgumentException.class, () -> RequestCompression.builder().level(10));
+    }
+
+    @Test
+    public void testLargeBodiesAreGzippedSmallOnesAreNot() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(json("large"));
+            server.enqueue(json("small"));
+            server.start();
+
+            try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                    .baseUrl(server.url("/v1").toString())
+                    .compression(RequestCompression.builder().minSize(4096).build())
+                    .build()) {
+                String content = repeat('x', 100_000);
+                client.checkPrompt(content);
+                client.checkPrompt("hello");
+            }
+
+            RecordedRequest large = server.takeRequest();
+            assertEquals("gzip", large.getHeader("Content-Encoding"));
+            assertTrue(large.getBodySize() < 10_000);
+            Buffer inflated = new Buffer();
+            inflated.writeAll(new GzipSource(large.getBody()));
+            assertTrue(inflated.readUtf8().contains(repeat('x', 100_000)));
+
+            RecordedRequest small = server.takeRequest();
+            assertNull(small.getHeader("Content-Encoding"));
+            assertTrue(small.getBody().readUtf8().contains("hello"));
+        }
+    }
+
+    @Test
+    public void testUnsupportedMediaTypeFallsBackToUncompressed() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setResponseCode(415));
+            server.enqueue(json("first"));
+            server.enqueue(json("second"));
+            server.start();
+
+            try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                    .baseUrl(server.url("/v1").toString())
+                    .compression(RequestCompression.builder().minSize(0).build())
+                    .build()) {
+                assertEquals("first", client.checkPrompt("hello").getId());
+                assertEquals("second", client.checkPrompt("again").getId());
+            }
+
+            assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+            assertNull(server.takeRequest().getHeader("Content-Encoding"));
+            assertNull(server.takeRequest().getHeader("Content-Encoding"));
+        }
+    }
+
+    private static MockResponse json(String id) {
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"id\":\"" + id + "\",\"overall_risk_level\":\"no_risk\",\"suggest_action\":\"pass\"}");
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
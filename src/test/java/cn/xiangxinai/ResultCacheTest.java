@@ -0,0 +1,82 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.model.GuardrailResponse;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ResultCacheTest {
+
+    private static RequestKey key(String scope, String input) throws IOException {
+        Map<String, String> requestData = new HashMap<>();
+        requestData.put("input", input);
+        return RequestKey.of(JsonCodec.defaultCodec(), scope, "/guardrails/input", requestData);
+    }
+
+    private static GuardrailResponse response(String id) {
+        GuardrailResponse response = new GuardrailResponse();
+        response.setId(id);
+        response.setSuggestAction("pass");
+        return response;
+    }
+
+    @Test
+    public void testHitAndMissCounters() throws IOException {
+        ResultCache cache = ResultCache.builder().build();
+
+        assertNull(cache.get(key("tenant", "hello")));
+        cache.put(key("tenant", "hello"), response("r1"));
+
+        GuardrailResponse cached = cache.get(key("tenant", "hello"));
+        assertNotNull(cached);
+        assertEquals("r1", cached.getId());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testKeyIncludesScopeAndContent() throws IOException {
+        assertEquals(key("tenant-a", "hello"), key("tenant-a", "hello"));
+        assertNotEquals(key("tenant-a", "hello"), key("tenant-b", "hello"));
+        assertNotEquals(key("tenant-a", "hello"), key("tenant-a", "hello!"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws IOException {
+        ResultCache cache = ResultCache.builder().maximumSize(2).build();
+
+        cache.put(key("tenant", "a"), response("a"));
+        cache.put(key("tenant", "b"), response("b"));
+        // Touch "a" so that "b" becomes the eldest entry
+        assertNotNull(cache.get(key("tenant", "a")));
+        cache.put(key("tenant", "c"), response("c"));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNotNull(cache.get(key("tenant", "a")));
+        assertNull(cache.get(key("tenant", "b")));
+        assertNotNull(cache.get(key("tenant", "c")));
+    }
+
+    @Test
+    public void testEntriesExpireAfterTtl() throws IOException {
+        AtomicLong now = new AtomicLong();
+        ResultCache cache = ResultCache.builder()
+                .expireAfterWrite(1, TimeUnit.SECONDS)
+                .ticker(now::get)
+                .build();
+
+        cache.put(key("tenant", "hello"), response("r1"));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertNotNull(cache.get(key("tenant", "hello")));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertNull(cache.get(key("tenant", "hello")));
+        assertEquals(0, cache.size());
+    }
+}
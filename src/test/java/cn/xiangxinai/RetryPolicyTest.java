@@ -0,0 +1,111 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.RateLimitException;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testExponentialBackoffIsCapped() {
+        RetryPolicy policy = RetryPolicy.builder()
+                .initialBackoff(100, TimeUnit.MILLISECONDS)
+                .maxBackoff(1, TimeUnit.SECONDS)
+                .multiplier(2.0)
+                .jitter(0.0)
+                .build();
+
+        assertEquals(100, policy.backoffMillis(0));
+        assertEquals(200, policy.backoffMillis(1));
+        assertEquals(800, policy.backoffMillis(3));
+        assertEquals(1000, policy.backoffMillis(4));
+        assertEquals(1000, policy.backoffMillis(100));
+    }
+
+    @Test
+    public void testJitterOnlyShortensDelay() {
+        RetryPolicy policy = RetryPolicy.builder()
+                .initialBackoff(1000, TimeUnit.MILLISECONDS)
+                .jitter(0.5)
+                .build();
+
+        boolean varied = false;
+        long first = policy.backoffMillis(0);
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.backoffMillis(0);
+            assertTrue(delay > 500 && delay <= 1000, "delay out of range: " + delay);
+            varied |= delay != first;
+        }
+        assertTrue(varied);
+    }
+
+    @Test
+    public void testMaxTotalDelay() {
+        RetryPolicy policy = RetryPolicy.builder()
+                .maxTotalDelay(3, TimeUnit.SECONDS)
+                .build();
+
+        assertTrue(policy.allowsTotalDelay(3000));
+        assertFalse(policy.allowsTotalDelay(3001));
+        assertTrue(RetryPolicy.DEFAULT.allowsTotalDelay(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testInvalidSettingsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> RetryPolicy.builder().jitter(1.5));
+        assertThrows(IllegalArgumentException.class, () -> RetryPolicy.builder().multiplier(0.5));
+        assertThrows(IllegalArgumentException.class,
+                () -> RetryPolicy.builder().initialBackoff(-1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRetryAfterBeyondMaxBackoffIsNotWaitedFor() {
+        RetryPolicy policy = RetryPolicy.builder()
+                .initialBackoff(100, TimeUnit.MILLISECONDS)
+                .maxBackoff(2, TimeUnit.SECONDS)
+                .jitter(0.0)
+                .build();
+
+        assertEquals(100, policy.retryDelayMillis(0, 0));
+        assertEquals(1500, policy.retryDelayMillis(0, 1500));
+        assertEquals(2000, policy.retryDelayMillis(0, 2000));
+        assertEquals(-1, policy.retryDelayMillis(0, 2001));
+        assertEquals(-1, RetryPolicy.DEFAULT.retryDelayMillis(0, TimeUnit.HOURS.toMillis(1)));
+    }
+
+    @Test
+    public void testLargeRetryAfterFailsFast() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            for (int i = 0; i < 2; i++) {
+                server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "3600"));
+            }
+            server.start();
+
+            try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                    .baseUrl(server.url("/v1").toString())
+                    .maxRetries(3)
+                    .build()) {
+                long start = System.nanoTime();
+                RateLimitException e = assertThrows(RateLimitException.class, () -> client.checkPrompt("hello"));
+                assertEquals(TimeUnit.HOURS.toMillis(1), e.getRetryAfterMillis());
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            }
+
+            try (AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("test-key")
+                    .baseUrl(server.url("/v1").toString())
+                    .maxRetries(3)
+                    .build()) {
+                ExecutionException e = assertThrows(ExecutionException.class,
+                        () -> client.checkPromptAsync("hello").get(5, TimeUnit.SECONDS));
+                assertTrue(e.getCause() instanceof RateLimitException);
+                assertEquals(TimeUnit.HOURS.toMillis(1), ((RateLimitException) e.getCause()).getRetryAfterMillis());
+            }
+            assertEquals(2, server.getRequestCount());
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package cn.xiangxinai;
+
+import cn.xiangxinai.exception.DeadlineExceededException;
+import cn.xiangxinai.exception.XiangxinAIException;
+import cn.xiangxinai.model.GuardrailResponse;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+
+    private static RequestKey key(String input) throws IOException {
+        Map<String, String> requestData = new HashMap<>();
+        requestData.put("input", input);
+        return RequestKey.of(JsonCodec.defaultCodec(), "tenant", "/guardrails/input", requestData);
+    }
+
+    private static GuardrailResponse response(String id) {
+        GuardrailResponse response = new GuardrailResponse();
+        response.setId(id);
+        return response;
+    }
+
+    @Test
+    public void testIdenticalAsyncRequestsShareOneCall() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<GuardrailResponse> network = new CompletableFuture<>();
+
+        CompletableFuture<GuardrailResponse> first = singleFlight.executeAsync(key("viral"), () -> {
+            calls.incrementAndGet();
+            return network;
+        });
+        CompletableFuture<GuardrailResponse> second = singleFlight.executeAsync(key("viral"), () -> {
+            calls.incrementAndGet();
+            return network;
+        });
+
+        assertEquals(1, calls.get());
+        assertEquals(1, singleFlight.size());
+
+        network.complete(response("r1"));
+        assertEquals("r1", first.get(1, TimeUnit.SECONDS).getId());
+        assertEquals("r1", second.get(1, TimeUnit.SECONDS).getId());
+        assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    public void testCancellingOneCallerDoesNotAffectOthers() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CompletableFuture<GuardrailResponse> network = new CompletableFuture<>();
+
+        CompletableFuture<GuardrailResponse> first = singleFlight.executeAsync(key("viral"), () -> network);
+        CompletableFuture<GuardrailResponse> second = singleFlight.executeAsync(key("viral"), () -> network);
+
+        first.cancel(true);
+        network.complete(response("r1"));
+        assertEquals("r1", second.get(1, TimeUnit.SECONDS).getId());
+    }
+
+    @Test
+    public void testCancelledSingleCallerCancelsNetworkCall() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CompletableFuture<GuardrailResponse> network = new CompletableFuture<>();
+
+        CompletableFuture<GuardrailResponse> only = singleFlight.executeAsync(key("viral"), () -> network);
+        only.cancel(true);
+
+        assertTrue(network.isCancelled());
+        assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    public void testNetworkCallIsCancelledWithLastCaller() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<GuardrailResponse> network = new CompletableFuture<>();
+
+        CompletableFuture<GuardrailResponse> first = singleFlight.executeAsync(key("viral"), () -> network);
+        CompletableFuture<GuardrailResponse> second = singleFlight.executeAsync(key("viral"), () -> network);
+        first.cancel(true);
+        assertFalse(network.isCancelled());
+        second.cancel(true);
+        assertTrue(network.isCancelled());
+
+        // The cancelled call is not joined, the next identical request sends its own
+        CompletableFuture<GuardrailResponse> third = singleFlight.executeAsync(key("viral"), () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(response("r2"));
+        });
+        assertEquals("r2", third.get(1, TimeUnit.SECONDS).getId());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testDifferentRequestsAreNotCoalesced() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.executeAsync(key("a"), () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        singleFlight.executeAsync(key("b"), () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testBlockingCallersShareResultAndFailure() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<GuardrailResponse> leader = executor.submit(() -> singleFlight.execute(key("viral"), () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new XiangxinAIException("boom");
+            }, Deadline.NONE));
+            assertTrue(started.await(1, TimeUnit.SECONDS));
+
+            Future<GuardrailResponse> follower = executor.submit(() -> singleFlight.execute(key("viral"), () -> {
+                calls.incrementAndGet();
+                return response("unexpected");
+            }, Deadline.NONE));
+            // Give the follower time to join the in-flight call before it fails
+            Thread.sleep(100);
+            release.countDown();
+
+            Exception leaderError = assertThrows(Exception.class, () -> leader.get(1, TimeUnit.SECONDS));
+            Exception followerError = assertThrows(Exception.class, () -> follower.get(1, TimeUnit.SECONDS));
+            assertTrue(leaderError.getCause() instanceof XiangxinAIException);
+            assertTrue(followerError.getCause() instanceof XiangxinAIException);
+            assertEquals(1, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFollowerIsNotFailedByLeaderDeadline() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<GuardrailResponse> leader = executor.submit(() -> singleFlight.execute(key("viral"), () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new DeadlineExceededException("leader deadline");
+            }, Deadline.after(50, TimeUnit.MILLISECONDS)));
+            assertTrue(started.await(1, TimeUnit.SECONDS));
+
+            Future<GuardrailResponse> follower = executor.submit(() -> singleFlight.execute(key("viral"), () -> {
+                calls.incrementAndGet();
+                return response("own");
+            }, Deadline.NONE));
+            Thread.sleep(100);
+            release.countDown();
+
+            Exception leaderError = assertThrows(Exception.class, () -> leader.get(1, TimeUnit.SECONDS));
+            assertTrue(leaderError.getCause() instanceof DeadlineExceededException);
+            assertEquals("own", follower.get(1, TimeUnit.SECONDS).getId());
+            assertEquals(2, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFollowerDeadlineBoundsItsWait() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CompletableFuture<GuardrailResponse> network = new CompletableFuture<>();
+        singleFlight.executeAsync(key("viral"), () -> network);
+
+        // A blocking follower of a slow call gives up at its own deadline, the shared call keeps running
+        assertThrows(DeadlineExceededException.class, () -> singleFlight.execute(key("viral"),
+                () -> response("unexpected"), Deadline.after(50, TimeUnit.MILLISECONDS)));
+        assertFalse(network.isDone());
+        assertEquals(1, singleFlight.size());
+    }
+
+    @Test
+    public void testAsyncFollowerIsNotFailedByLeaderDeadline() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CompletableFuture<GuardrailResponse> network = new CompletableFuture<>();
+
+        CompletableFuture<GuardrailResponse> leader = singleFlight.executeAsync(key("viral"), () -> network);
+        CompletableFuture<GuardrailResponse> follower = singleFlight.executeAsync(key("viral"),
+                () -> CompletableFuture.completedFuture(response("own")));
+
+        network.completeExceptionally(new DeadlineExceededException("leader deadline"));
+        ExecutionException leaderError = assertThrows(ExecutionException.class, () -> leader.get(1, TimeUnit.SECONDS));
+        assertTrue(leaderError.getCause() instanceof DeadlineExceededException);
+        assertEquals("own", follower.get(1, TimeUnit.SECONDS).getId());
+    }
+}
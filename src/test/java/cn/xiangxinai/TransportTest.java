@@ -0,0 +1,111 @@
+package cn.xiangxinai;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class TransportTest {
+
+    private static final String OK_BODY = "{\"id\":\"ok\",\"overall_risk_level\":\"no_risk\",\"suggest_action\":\"pass\"}";
+
+    private MockWebServer server;
+    private XiangxinAITransport transport;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        transport = XiangxinAITransport.builder().build();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        transport.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void testClientsShareOneConnectionPool() throws Exception {
+        server.enqueue(new MockResponse().setBody(OK_BODY));
+        server.enqueue(new MockResponse().setBody(OK_BODY));
+
+        try (XiangxinAIClient tenantA = XiangxinAIClient.builder("tenant-a-key")
+                .baseUrl(server.url("/v1").toString())
+                .transport(transport)
+                .build();
+             AsyncXiangxinAIClient tenantB = AsyncXiangxinAIClient.builder("tenant-b-key")
+                .baseUrl(server.url("/v1").toString())
+                .transport(transport)
+                .build()) {
+            tenantA.checkPrompt("hello");
+            assertEquals(1, tenantB.getIdleConnectionCount());
+            tenantB.checkPromptAsync("hello").get(5, TimeUnit.SECONDS);
+        }
+
+        // The second tenant's call reuses the connection opened by the first, each with its own key
+        assertEquals(1, server.getConnectionCount());
+        assertEquals("Bearer tenant-a-key", server.takeRequest(5, TimeUnit.SECONDS).getHeader("Authorization"));
+        assertEquals("Bearer tenant-b-key", server.takeRequest(5, TimeUnit.SECONDS).getHeader("Authorization"));
+    }
+
+    @Test
+    public void testClosingOneClientKeepsSharedTransportOpen() throws Exception {
+        server.enqueue(new MockResponse().setBody(OK_BODY));
+        server.enqueue(new MockResponse().setBody(OK_BODY));
+        server.enqueue(new MockResponse().setBody(OK_BODY));
+
+        try (AsyncXiangxinAIClient tenantB = AsyncXiangxinAIClient.builder("tenant-b-key")
+                .baseUrl(server.url("/v1").toString())
+                .transport(transport)
+                .build()) {
+            try (XiangxinAIClient tenantA = XiangxinAIClient.builder("tenant-a-key")
+                    .baseUrl(server.url("/v1").toString())
+                    .transport(transport)
+                    .build()) {
+                tenantA.checkPrompt("hello");
+            }
+
+            // Neither the dispatcher nor the pooled connection went away with the closed client
+            assertFalse(transport.httpClient().dispatcher().executorService().isShutdown());
+            assertEquals(1, tenantB.getIdleConnectionCount());
+
+            try (XiangxinAIClient tenantC = XiangxinAIClient.builder("tenant-c-key")
+                    .baseUrl(server.url("/v1").toString())
+                    .transport(transport)
+                    .build()) {
+                assertEquals("ok", tenantC.checkPrompt("hello").getId());
+            }
+            assertEquals("ok", tenantB.checkPromptAsync("hello").get(5, TimeUnit.SECONDS).getId());
+        }
+        assertEquals(1, server.getConnectionCount());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void testClosedClientLeavesTransportRunning() {
+        XiangxinAIClient tenantA = XiangxinAIClient.builder("tenant-a-key").transport(transport).build();
+        AsyncXiangxinAIClient tenantB = AsyncXiangxinAIClient.builder("tenant-b-key").transport(transport).build();
+        tenantA.close();
+        tenantB.close();
+
+        assertFalse(transport.httpClient().dispatcher().executorService().isShutdown());
+        assertFalse(transport.scheduler().isShutdown());
+    }
+
+    @Test
+    public void testClosingTransportShutsDownSharedResources() {
+        // The timer thread is created on first use
+        ScheduledExecutorService scheduler = transport.scheduler();
+        transport.close();
+
+        assertTrue(transport.httpClient().dispatcher().executorService().isShutdown());
+        assertTrue(scheduler.isShutdown());
+        assertEquals(0, transport.httpClient().connectionPool().idleConnectionCount());
+    }
+}
@@ -0,0 +1,84 @@
+package cn.xiangxinai;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+public class WarmUpTest {
+
+    @Test
+    public void testWarmUpOpensConnectionsReusedByChecks() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+                    // Slow enough that the warm-up calls overlap and each one needs its own connection
+                    return new MockResponse()
+                            .setHeader("Content-Type", "application/json")
+                            .setBody("{\"id\":\"ok\",\"overall_risk_level\":\"no_risk\",\"suggest_action\":\"pass\"}")
+                            .setHeadersDelay(200, TimeUnit.MILLISECONDS);
+                }
+            });
+            server.start();
+
+            try (XiangxinAIClient client = XiangxinAIClient.builder("test-key")
+                    .baseUrl(server.url("/v1").toString())
+                    .protocol(HttpProtocol.HTTP_1_1)
+                    .build()) {
+                assertEquals(4, client.warmUp(4));
+                assertEquals(4, client.getIdleConnectionCount());
+                for (int i = 0; i < 4; i++) {
+                    RecordedRequest ping = server.takeRequest(1, TimeUnit.SECONDS);
+                    assertEquals("/v1/guardrails/health", ping.getPath());
+                    assertEquals(0, ping.getSequenceNumber());
+                }
+
+                client.checkPrompt("hello");
+                assertTrue(server.takeRequest(1, TimeUnit.SECONDS).getSequenceNumber() > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testKeepWarmPingsInBackground() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+                    return new MockResponse().setBody("{\"status\":\"healthy\"}");
+                }
+            });
+            server.start();
+
+            try (AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("test-key")
+                    .baseUrl(server.url("/v1").toString())
+                    .keepWarm(2, 50, TimeUnit.MILLISECONDS)
+                    .build()) {
+                RecordedRequest ping = server.takeRequest(2, TimeUnit.SECONDS);
+                assertNotNull(ping);
+                assertEquals("/v1/guardrails/health", ping.getPath());
+                assertNotNull(server.takeRequest(2, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test
+    public void testWarmUpOfUnreachableHostCountsNoAnswers() throws Exception {
+        try (AsyncXiangxinAIClient client = AsyncXiangxinAIClient.builder("test-key")
+                .baseUrl("http://127.0.0.1:1/v1")
+                .maxRetries(0)
+                .build()) {
+            assertEquals(0, client.warmUpAsync(2).get(10, TimeUnit.SECONDS).intValue());
+            assertThrows(IllegalArgumentException.class, () -> client.warmUpAsync(0));
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> XiangxinAIClient.builder("test-key").keepWarm(0, 1, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class,
+                () -> XiangxinAIClient.builder("test-key").keepWarm(1, 0, TimeUnit.SECONDS));
+    }
+}